@@ -0,0 +1,234 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  ARRIVALFIELD
+ *  This class is called to find, for every vertex, the earliest time at which
+ *  any of a group of agents can get there. Agents of the same speed are searched
+ *  for together, in one Dijkstra search over the vertices that starts from all of
+ *  them at once; the time is then the distance divided by the speed. Agents of
+ *  different speeds each need a search of their own, as a slower agent that gets
+ *  somewhere first may still be overtaken further on.
+ *  The searches only run as far as the questions asked so far require, and carry
+ *  on where they stopped when a vertex further away is asked for.
+ *
+ */
+
+package environment;
+
+import global.Globals;
+import java.util.Arrays;
+import pacman.Agent;
+import util.IndexedMinHeap;
+
+public class ArrivalField {
+
+    private final MazeGraph graph;
+    private int search = 1;                 // Entries stamped with an earlier search are not valid anymore
+    private int numGroups = 0;
+    // For each group of agents with the same speed and headstart, a search of its own
+    private double[] speeds = new double[0];
+    private double[] headstarts = new double[0];
+    private int[][] distance = new int[0][];        // For each vertex, the distance from the nearest agent of the group
+    private int[][] reached = new int[0][];         // For each vertex, the search in which 'distance' was last set
+    private int[][] closed = new int[0][];          // For each vertex, the search in which its distance became final
+    private IndexedMinHeap[] openSets = new IndexedMinHeap[0];
+    // Scratch space for the breadth-first search out of the spawn area, reused between searches
+    private int spawnSearch = 0;
+    private int[] spawnVisited = null;      // For each maze position, the search in which it was last reached
+    private int[] spawnSteps = null;        // For each maze position, the steps from the start of the search
+    private int[] spawnQueue = null;
+
+    public ArrivalField(MazeGraph graph) {
+        this.graph = graph;
+    }
+
+    public MazeGraph getGraph() {
+        return graph;
+    }
+
+    // Forgets all agents
+    public void clear() {
+        for (int g = 0; g < numGroups; g++) {
+            openSets[g].clear();
+        }
+        numGroups = 0;
+        search++;
+    }
+
+    // Adds an agent, starting from its position x1,y1. The headstart is added
+    // to every distance before it is divided by the speed of the agent.
+    public void add(Environment e, Agent agent, double headstart) {
+        int g = group(agent.speed, headstart);
+        short x = (short) agent.x1;
+        short y = (short) agent.y1;
+        if (anyVertex(e.findEnclosingVertices(x, y))) {
+            start(g, e, x, y, 0);
+            return;
+        }
+
+        // Ghosts still in the spawn area are not on a hallway. They start from the
+        // nearest positions that are, found by a breadth-first search out of the spawn area.
+        int numPositions = e.mazeWidth * e.mazeHeight;
+        if (spawnVisited == null || spawnVisited.length != numPositions) {
+            spawnVisited = new int[numPositions];
+            spawnSteps = new int[numPositions];
+            spawnQueue = new int[numPositions];
+            spawnSearch = 0;
+        }
+        spawnSearch++;
+        if (spawnSearch == Integer.MAX_VALUE) {
+            Arrays.fill(spawnVisited, 0);
+            spawnSearch = 1;
+        }
+        int head = 0, tail = 0;
+        spawnVisited[x * e.mazeHeight + y] = spawnSearch;
+        spawnSteps[x * e.mazeHeight + y] = 0;
+        spawnQueue[tail++] = x * e.mazeHeight + y;
+        while (head < tail) {
+            int position = spawnQueue[head++];
+            short px = (short) (position / e.mazeHeight);
+            short py = (short) (position % e.mazeHeight);
+            int dist = spawnSteps[position];
+            if (dist > 0 && anyVertex(e.findEnclosingVertices(px, py))) {
+                start(g, e, px, py, dist);
+                continue;
+            }
+            for (int n = 0; n < 4; n++) {
+                int nx = px + ((n == 0) ? 1 : (n == 1) ? -1 : 0);
+                int ny = py + ((n == 2) ? -1 : (n == 3) ? 1 : 0);
+                if (nx >= 0 && nx < e.mazeWidth && ny >= 0 && ny < e.mazeHeight && e.maze[nx][ny] != Globals.MAZE_WALL
+                        && spawnVisited[nx * e.mazeHeight + ny] != spawnSearch) {
+                    spawnVisited[nx * e.mazeHeight + ny] = spawnSearch;
+                    spawnSteps[nx * e.mazeHeight + ny] = dist + 1;
+                    spawnQueue[tail++] = nx * e.mazeHeight + ny;
+                }
+            }
+        }
+    }
+
+    private void start(int g, Environment e, short x, short y, int steps) {
+        // The vertices enclosing the position are reached first
+        int[] vertices = e.findEnclosingVertices(x, y);
+        short[] distances = e.findEnclosingDistances(x, y);
+        for (int i = 0; i < vertices.length; i++) {
+            if (vertices[i] >= 0 && distances[i] >= 0) {
+                reach(g, vertices[i], steps + distances[i]);
+            }
+        }
+    }
+
+    // Returns the earliest time at which an agent can be at the vertex, or infinity if none can get there
+    public double getTime(int vertex) {
+        double time = Double.POSITIVE_INFINITY;
+        for (int g = 0; g < numGroups; g++) {
+            time = Math.min(time, arrival(g, vertex, time));
+        }
+        return time;
+    }
+
+    // Returns whether an agent can be at the vertex sooner than the given time.
+    // Only searches as far as needed to answer this, which is less than getTime may need.
+    public boolean arrivesBefore(int vertex, double time) {
+        for (int g = 0; g < numGroups; g++) {
+            if (arrival(g, vertex, time) < time) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double arrival(int g, int vertex, double limit) {
+        // Continues the search of the group until the vertex is closed,
+        // or until every vertex left would be reached at the limit or later
+        int[] dist = distance[g];
+        IndexedMinHeap openSet = openSets[g];
+        while (closed[g][vertex] != search && !openSet.isEmpty()) {
+            if (time(g, openSet.getKey(openSet.peek())) >= limit) {
+                break;
+            }
+            int current = openSet.poll();
+            closed[g][current] = search;
+            int lastEdge = graph.lastEdge(current);
+            for (int edge = graph.firstEdge(current); edge < lastEdge; edge++) {
+                int next = graph.getEdgeTarget(edge);
+                if (closed[g][next] != search) {
+                    reach(g, next, dist[current] + graph.getEdgeLength(edge));
+                }
+            }
+        }
+        return (closed[g][vertex] == search) ? time(g, dist[vertex]) : Double.POSITIVE_INFINITY;
+    }
+
+    private double time(int g, int dist) {
+        return (dist + headstarts[g]) / speeds[g];
+    }
+
+    private void reach(int g, int vertex, int dist) {
+        if (reached[g][vertex] != search) {
+            reached[g][vertex] = search;
+            distance[g][vertex] = dist;
+            openSets[g].add(vertex, dist);
+        } else if (dist < distance[g][vertex] && openSets[g].contains(vertex)) {
+            distance[g][vertex] = dist;
+            openSets[g].decreaseKey(vertex, dist);
+        }
+    }
+
+    private boolean anyVertex(int[] vertices) {
+        for (int vertex : vertices) {
+            if (vertex >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int group(double speed, double headstart) {
+        for (int g = 0; g < numGroups; g++) {
+            if (speeds[g] == speed && headstarts[g] == headstart) {
+                return g;
+            }
+        }
+        if (numGroups == speeds.length) {
+            // The arrays of earlier groups are kept, and reused by later searches
+            int capacity = speeds.length + 4;
+            speeds = Arrays.copyOf(speeds, capacity);
+            headstarts = Arrays.copyOf(headstarts, capacity);
+            distance = Arrays.copyOf(distance, capacity);
+            reached = Arrays.copyOf(reached, capacity);
+            closed = Arrays.copyOf(closed, capacity);
+            openSets = Arrays.copyOf(openSets, capacity);
+            int numVertices = graph.getNumVertices();
+            for (int g = numGroups; g < capacity; g++) {
+                distance[g] = new int[numVertices];
+                reached[g] = new int[numVertices];
+                closed[g] = new int[numVertices];
+                openSets[g] = new IndexedMinHeap(numVertices);
+            }
+        }
+        speeds[numGroups] = speed;
+        headstarts[numGroups] = headstart;
+        numGroups++;
+        return numGroups - 1;
+    }
+}
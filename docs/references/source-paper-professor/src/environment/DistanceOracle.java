@@ -0,0 +1,251 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  DISTANCEORACLE
+ *  This class is called to hold the shortest path lengths between every pair
+ *  of walkable maze positions, split by the first move that is made.
+ *  It is built once per maze, after which a path query is a few array reads.
+ *
+ */
+
+package environment;
+
+import global.Globals;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class DistanceOracle {
+
+    private final int width;
+    private final int height;
+    private final int numCells;
+    private final int[] cellIndex;       // Maps a maze position (x * height + y) to a cell number, -1 for walls
+    private final short[] distances;     // For each pair of cells and each first action, the path length, or -1
+
+    public DistanceOracle(short[][] maze, int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        // Number all walkable positions
+        cellIndex = new int[width * height];
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (maze[x][y] != Globals.MAZE_WALL) {
+                    cellIndex[x * height + y] = count;
+                    count++;
+                } else {
+                    cellIndex[x * height + y] = -1;
+                }
+            }
+        }
+        numCells = count;
+
+        // Store which cell each action leads to
+        int[][] moves = new int[numCells][4];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int cell = cellIndex[x * height + y];
+                if (cell != -1) {
+                    for (short action = 0; action < 4; action++) {
+                        moves[cell][action] = findMove(maze, x, y, action);
+                    }
+                }
+            }
+        }
+
+        // For each cell and each action, run a breadth-first search from the cell the action leads to.
+        // The starting cell is blocked, so that a path never turns back through where it started.
+        distances = new short[numCells * numCells * 4];
+        short[] dist = new short[numCells];
+        int[] queue = new int[numCells];
+
+        for (int source = 0; source < numCells; source++) {
+            for (short action = 0; action < 4; action++) {
+                int first = moves[source][action];
+                if (first == -1) {
+                    for (int target = 0; target < numCells; target++) {
+                        distances[(source * numCells + target) * 4 + action] = -1;
+                    }
+                    continue;
+                }
+
+                for (int i = 0; i < numCells; i++) {
+                    dist[i] = -1;
+                }
+                dist[source] = 0;
+                dist[first] = 1;
+                int head = 0, tail = 0;
+                queue[tail++] = first;
+
+                while (head < tail) {
+                    int current = queue[head++];
+                    for (int a = 0; a < 4; a++) {
+                        int next = moves[current][a];
+                        if (next != -1 && dist[next] == -1) {
+                            dist[next] = (short) (dist[current] + 1);
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+
+                dist[source] = -1;
+                for (int target = 0; target < numCells; target++) {
+                    distances[(source * numCells + target) * 4 + action] = dist[target];
+                }
+            }
+        }
+    }
+
+    // Reads an oracle stored by write(), from a compiled maze
+    public DistanceOracle(ByteBuffer in) {
+        width = in.getInt();
+        height = in.getInt();
+        numCells = in.getInt();
+        cellIndex = MazeImage.readInts(in);
+        distances = MazeImage.readShorts(in);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(numCells);
+        MazeImage.writeInts(out, cellIndex);
+        MazeImage.writeShorts(out, distances);
+    }
+
+    // Returns the number of walkable positions in a maze,
+    // which decides the size of the oracle (four shorts per pair of positions).
+    public static int countCells(short[][] maze, int width, int height) {
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (maze[x][y] != Globals.MAZE_WALL) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int findMove(short[][] maze, int x, int y, short action) {
+        // Returns the cell reached by performing an action at (x,y), or -1 if it is not possible.
+        // Moving past the edge of the maze teleports to the opposite edge.
+        int newX = x, newY = y;
+        switch (action) {
+            case Globals.ACTION_LEFT:
+                newX = (x == 0) ? width - 1 : x - 1;
+                break;
+            case Globals.ACTION_RIGHT:
+                newX = (x == width - 1) ? 0 : x + 1;
+                break;
+            case Globals.ACTION_UP:
+                newY = (y == 0) ? height - 1 : y - 1;
+                break;
+            case Globals.ACTION_DOWN:
+                newY = (y == height - 1) ? 0 : y + 1;
+                break;
+        }
+
+        if (maze[newX][newY] == Globals.MAZE_WALL) {
+            return -1;
+        }
+
+        // The spawn area can only be entered from within, or through the ghosts' first stop
+        if (maze[newX][newY] == Globals.MAZE_GHOST_SPAWN_AREA
+                && maze[x][y] != Globals.MAZE_GHOST_SPAWN_AREA
+                && maze[x][y] != Globals.MAZE_GHOST_SPAWN_POINT
+                && maze[x][y] != Globals.MAZE_GHOST_FIRST_STOP) {
+            return -1;
+        }
+
+        return cellIndex[newX * height + newY];
+    }
+
+    private int cell(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        return cellIndex[x * height + y];
+    }
+
+    // Returns the length of the shortest path from (x1,y1) to (x2,y2) that starts
+    // with the given action, or -1 if there is no such path.
+    public short distance(int x1, int y1, short action, int x2, int y2) {
+        int source = cell(x1, y1);
+        int target = cell(x2, y2);
+        if (source == -1 || target == -1) {
+            return -1;
+        }
+        return distances[(source * numCells + target) * 4 + action];
+    }
+
+    // Returns the length of the shortest path from (x1,y1) to (x2,y2), or -1 if there is no path.
+    public short distance(int x1, int y1, int x2, int y2) {
+        int source = cell(x1, y1);
+        int target = cell(x2, y2);
+        if (source == -1 || target == -1) {
+            return -1;
+        }
+        if (source == target) {
+            return 0;
+        }
+
+        int base = (source * numCells + target) * 4;
+        short shortest = -1;
+        for (int action = 0; action < 4; action++) {
+            short d = distances[base + action];
+            if (d != -1 && (shortest == -1 || d < shortest)) {
+                shortest = d;
+            }
+        }
+        return shortest;
+    }
+
+    // Returns the first move on the shortest path from (x1,y1) to (x2,y2),
+    // or -1 if there is no path or both points are the same.
+    public short firstMove(int x1, int y1, int x2, int y2) {
+        int source = cell(x1, y1);
+        int target = cell(x2, y2);
+        if (source == -1 || target == -1 || source == target) {
+            return -1;
+        }
+
+        int base = (source * numCells + target) * 4;
+        short shortest = -1;
+        short move = -1;
+        for (short action = 0; action < 4; action++) {
+            short d = distances[base + action];
+            if (d != -1 && (shortest == -1 || d < shortest)) {
+                shortest = d;
+                move = action;
+            }
+        }
+        return move;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+}
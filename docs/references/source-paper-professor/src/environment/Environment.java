@@ -34,29 +34,67 @@ import global.Globals;
 import pacman.Agent;
 import gui.Visualize;
 import util.ASTARresult;
+import util.CopyableRandom;
+import util.IndexedMinHeap;
+import util.PillSearchResult;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.Random;
 
 public class Environment {
 
     // Status variables
     public boolean gameLoaded = false;
+    public boolean compiled = false;        // Whether the maze was loaded from a compiled file, with all its tables
     public boolean gameEnded = false;
     public boolean gameLost = false;
     public int pillsLeft, powerPillsLeft;
     public int steps;                       // Number of network runs
     public boolean justPowerpill = false;   // Whether Ms. Pac-man ate a powerpill in the last run
-    public static boolean justPill = false;        // Whether Ms. Pac-Man ate a pill in the last run.
+    public boolean justPill = false;        // Whether Ms. Pac-Man ate a pill in the last run.
     // Maze storage variables
     public short[][] maze;                  // Contains static maze objects, such as walls and pills
     public int[][] visMaze;                 // Contains itemID's for the visualisation, corresponding to maze positions
     public Visualize vis = null;
-    public HashMap<Integer, Vertex> vertices = new HashMap<Integer, Vertex>();
-    // A map containing vertices, which are intersections and corners in the maze
+    private boolean visualise = Globals.showVisualisation;  // Whether the maze is shown when it is loaded, see the constructors
+    public MazeGraph graph = null;          // The vertices, which are intersections and corners in the maze, and the hallways between them
+    public MazeSegments segments = null;    // The hallway each maze position lies on, and how far along it
+    private boolean[] closedSegments = null; // For each segment, whether its positions can only be left along it
+    private byte[] moveMasks = null;        // For each maze position (x * mazeHeight + y), a bit (1 << action) for every possible action
+    private short[][] legalMoves = null;    // For each maze position, the possible actions, in the order possibleActions lists them
+    private boolean[] vertexCells = null;   // Whether the maze position (x * mazeHeight + y) is a vertex, once 'graph' is set
+    private int[][] enclosingVertices = null;     // For each walkable maze position, the vertices enclosing it
+    private short[][] enclosingDistances = null;  // For each walkable maze position, the distance to each enclosing vertex
+    public short[][] vertexDistance = null;  // Shortest path length between each pair of vertices, -1 if unreachable
+    public short[][] vertexNextHop = null;   // Second vertex on the shortest path between each pair of vertices
+    public DistanceOracle distanceOracle = null;  // Shortest paths between all maze positions, if the maze is small enough
+    public Landmarks landmarks = null;      // Distances to a few landmark vertices, guiding A* when there is no table of all paths
+    public MazeHierarchy hierarchy = null;  // Clusters of the maze, for planning paths when there is no table of all paths
+    public MazeBitboard bitboard = null;    // The walls and pills as layers of bits, for breadth-first searches over the whole maze at once
+    public PillField pillField = null;      // For each maze position, the steps to the nearest pill or power pill, kept up to date by eatItem
+    public PillField powerPillField = null; // For each maze position, the steps to the nearest power pill, only kept if Globals.powerPillsFromField asks for it
+    public PillCounts pillCounts = null;    // The pills left on every hallway of the maze, once 'segments' is set
+    // Scratch space for A*, reused between searches.
+    // Every game has its own, so that games sharing a maze can search at the same time.
+    private IndexedMinHeap astarOpenSet = null;
+    private int[] astarGScore;
+    private int[] astarHScore;              // Lower bound on the distance to the goal, from the landmarks
+    private int[] astarCameFrom;
+    private int[] astarVisited;             // Holds the number of the search in which a vertex was last reached
+    private int[] astarClosed;              // Holds the number of the search in which a vertex was last closed
+    private int astarSearch = 0;
+    // Scratch space for the search for the nearest pills, indexed by (x * mazeHeight + y) * 4 + first move
+    private short[] pillSearchDistance;
+    private int[] pillSearchVisited;        // Holds the number of the search in which a state was last reached
+    private int[] pillSearchQueue;
+    private IndexedMinHeap pillSearchJumps; // The states reached by crossing a hallway without pills, by distance
+    private int pillSearch = 0;
     String mazeName;
     public int mazeWidth, mazeHeight;
     public int totalPills, totalPowerPills;
@@ -64,18 +102,79 @@ public class Environment {
     int[] firstStop = new int[2];           // X and Y position of the ghost goto point
     //these are the coordinates of the corners of the maze 
     short[][] mazeCornerPoints;
+    double[] ghostSpeeds;                   // Speed of each ghost relative to Ms. Pac-Man, as listed in the maze file
     // Agent variables
-    static Agent[] ghosts;
-    public static short numGhosts;
-    public static Agent PacMan;
-    public static short globalGhostState = Globals.startingGhostState;
+    Agent[] ghosts;
+    public short numGhosts;
+    public Agent PacMan;
+    public short globalGhostState = Globals.startingGhostState;
+    private CopyableRandom generator = new CopyableRandom();  // Decides the moves of ghosts in the random state
+    private int startMarker = -1;           // Maze position (x * mazeHeight + y) still marked as Ms. Pac-Man's start, -1 once she has left it
 
     /*
      * CONSTRUCTOR
      */
     public Environment(String filename) {
+        this(filename, Globals.showVisualisation);
+    }
+
+    public Environment(String filename, boolean visualise) {
+        // Only shows the maze if asked to, whatever Globals.showVisualisation says,
+        // so that a maze can be loaded without a window, see MazeRepository.
+        this.visualise = visualise;
         mazeName = filename;
-        readMaze(this.mazeName);
+        // A compiled maze that cannot be used is passed over for the maze it was compiled from
+        if (MazeImage.isCompiled(filename)) {
+            if (!readCompiled(filename)) {
+                readMaze(MazeImage.sourceName(filename));
+            }
+        } else if (!Globals.useCompiledMazes || !MazeImage.hasCompiled(filename)
+                || !readCompiled(MazeImage.compiledName(filename))) {
+            readMaze(this.mazeName);
+        }
+    }
+
+    public Environment(Environment maze) {
+        // Starts a new game on a maze that was loaded before, see MazeRepository.
+        // The layout and every table built from it are shared between the games;
+        // only the grid, which loses its pills during a game, is copied.
+        shareLayout(maze);
+
+        short[][] grid = new short[maze.mazeWidth][];
+        for (int x = 0; x < maze.mazeWidth; x++) {
+            grid[x] = maze.maze[x].clone();
+        }
+        setMaze(grid, maze.mazeWidth, maze.mazeHeight, maze.ghostSpeeds, maze.mazeCornerPoints);
+        bitboard = new MazeBitboard(maze.bitboard);
+        pillField = new PillField(maze.pillField, bitboard);
+        powerPillField = (maze.powerPillField != null) ? new PillField(maze.powerPillField, bitboard) : null;
+        pillCounts = (maze.pillCounts != null) ? new PillCounts(maze.pillCounts) : null;
+        pillsLeft = maze.pillsLeft;
+        powerPillsLeft = maze.powerPillsLeft;
+        finishLoading();
+    }
+
+    private Environment() {
+        // Used by fork, which fills in the rest
+    }
+
+    private void shareLayout(Environment maze) {
+        mazeName = maze.mazeName;
+        compiled = maze.compiled;
+        graph = maze.graph;
+        segments = maze.segments;
+        closedSegments = maze.closedSegments;
+        moveMasks = maze.moveMasks;
+        legalMoves = maze.legalMoves;
+        vertexCells = maze.vertexCells;
+        enclosingVertices = maze.enclosingVertices;
+        enclosingDistances = maze.enclosingDistances;
+        vertexDistance = maze.vertexDistance;
+        vertexNextHop = maze.vertexNextHop;
+        distanceOracle = maze.distanceOracle;
+        landmarks = maze.landmarks;
+        // The hierarchy shares its clusters, but every game gets its own scratch space for searching them
+        hierarchy = (maze.hierarchy != null) ? new MazeHierarchy(maze.hierarchy) : null;
     }
 
     /*
@@ -93,6 +192,11 @@ public class Environment {
         return this.ghosts;
     }
 
+    // Seeds the choices of the ghosts, so that a game can be played again with the same result
+    public void setSeed(long seed) {
+        generator.setSeed(seed);
+    }
+
     /*
      * INITIALIZATION
      */
@@ -104,147 +208,523 @@ public class Environment {
                 String[] headerParts = header.split(",");
                 int width = Integer.parseInt(headerParts[0]);
                 int height = Integer.parseInt(headerParts[1]);
-                this.maze = new short[width][height];
-                this.visMaze = new int[width][height];
-                int pacX = 0, pacY = 0;
-                this.pillsLeft = 0;
-                this.powerPillsLeft = 0;
-                this.steps = 1;
-                int itemID = 0;
-                if (Globals.showVisualisation == true) {
-                    vis = new Visualize(width, height);
-                }
+                short[][] grid = new short[width][height];
                 for (short y = 0; y < height; y++) {
                     String[] dataParts = in.readLine().split(",");
                     for (short x = 0; x < width; x++) {
-                        this.maze[x][y] = Short.parseShort(dataParts[x]);
-
-                        if (Globals.showVisualisation == true) {
-                            if (this.maze[x][y] != Globals.MAZE_PACMAN) {
-                                itemID = vis.addItem(maze[x][y], x, y, x, y, 0);
-                            }
-                            if (this.maze[x][y] == Globals.MAZE_WALL) {
-                                visMaze[x][y] = itemID;
-                            }
-                            if (this.maze[x][y] == Globals.MAZE_PILL) {
-                                visMaze[x][y] = itemID;
-                            }
-                            if (this.maze[x][y] == Globals.MAZE_POWER_PILL) {
-                                visMaze[x][y] = itemID;
-                            }
-                        }
-
-                        if (this.maze[x][y] == Globals.MAZE_PILL || this.maze[x][y] == Globals.MAZE_POWER_PILL) {
-                            this.pillsLeft++;
-                        }
-                        if (this.maze[x][y] == Globals.MAZE_POWER_PILL) {
-                            this.powerPillsLeft++;
-                        }
-                        if (this.maze[x][y] == Globals.MAZE_PACMAN) {
-                            pacX = x;
-                            pacY = y;
-                        }
-                        if (this.maze[x][y] == Globals.MAZE_GHOST_SPAWN_POINT) {
-                            spawnPoint[0] = x;
-                            spawnPoint[1] = y;
-                        }
-                        if (this.maze[x][y] == Globals.MAZE_GHOST_FIRST_STOP) {
-                            firstStop[0] = x;
-                            firstStop[1] = y;
-                        }
+                        grid[x][y] = Short.parseShort(dataParts[x]);
                     }
                 }
-                this.mazeHeight = height;
-                this.mazeWidth = width;
 
+                double[] speeds = null;
                 if (in.ready() == true && in.readLine().startsWith("[Ghost]")) {
                     header = in.readLine();
-                    short id = 0;
-                    numGhosts = Short.parseShort(header);
-                    ghosts = new Agent[numGhosts];
-                    for (int i = 0; i < numGhosts; i++) {
-                        if (Globals.showVisualisation == true) {
-                            itemID = vis.addItem(Globals.MAZE_GHOST, spawnPoint[0], spawnPoint[1], spawnPoint[0], spawnPoint[1], 0);
-                        }
-                        ghosts[i] = new Agent(spawnPoint[0], spawnPoint[1], Globals.pacmanSpeed * Double.parseDouble(in.readLine()), itemID, Globals.MAZE_GHOST, true);
-                        ghosts[i].setId(id);
-                        id++;
+                    speeds = new double[Short.parseShort(header)];
+                    for (int i = 0; i < speeds.length; i++) {
+                        speeds[i] = Double.parseDouble(in.readLine());
                     }
                 }
 
+                short[][] scatter = null;
                 if (in.ready() == true && in.readLine().startsWith("[Scatter]")) {
-                    mazeCornerPoints = new short[numGhosts][2];
-                    for (int i = 0; i < numGhosts; i++) {
+                    scatter = new short[(speeds != null) ? speeds.length : numGhosts][2];
+                    for (int i = 0; i < scatter.length; i++) {
                         String[] scatterParts = in.readLine().split(",");
-                        mazeCornerPoints[i][0] = (short) Integer.parseInt(scatterParts[0]);
-                        mazeCornerPoints[i][1] = (short) Integer.parseInt(scatterParts[1]);
+                        scatter[i][0] = (short) Integer.parseInt(scatterParts[0]);
+                        scatter[i][1] = (short) Integer.parseInt(scatterParts[1]);
                     }
                 }
 
-                if (Globals.showVisualisation == true) {
-                    itemID = vis.addItem(0, pacX, pacY, pacX, pacY, 0);
+                setMaze(grid, width, height, speeds, scatter);
+                setMoves();
+                setBitboard();
+            }
+            finishLoading();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void setMaze(short[][] grid, int width, int height, double[] speeds, short[][] scatter) {
+        // Places the items, the ghosts and Ms. Pac-Man of a maze that was read from file.
+        // The ghosts are only placed if the maze lists their speeds.
+        this.maze = grid;
+        this.visMaze = new int[width][height];
+        this.ghostSpeeds = speeds;
+        int pacX = 0, pacY = 0;
+        this.steps = 1;
+        int itemID = 0;
+        if (visualise == true) {
+            vis = new Visualize(width, height);
+        }
+        for (short y = 0; y < height; y++) {
+            for (short x = 0; x < width; x++) {
+                if (vis != null) {
+                    if (this.maze[x][y] != Globals.MAZE_PACMAN) {
+                        itemID = vis.addItem(maze[x][y], x, y, x, y, 0);
+                    }
+                    if (this.maze[x][y] == Globals.MAZE_WALL) {
+                        visMaze[x][y] = itemID;
+                    }
+                    if (this.maze[x][y] == Globals.MAZE_PILL) {
+                        visMaze[x][y] = itemID;
+                    }
+                    if (this.maze[x][y] == Globals.MAZE_POWER_PILL) {
+                        visMaze[x][y] = itemID;
+                    }
+                }
+
+                if (this.maze[x][y] == Globals.MAZE_PACMAN) {
+                    pacX = x;
+                    pacY = y;
+                    startMarker = x * height + y;
+                }
+                if (this.maze[x][y] == Globals.MAZE_GHOST_SPAWN_POINT) {
+                    spawnPoint[0] = x;
+                    spawnPoint[1] = y;
+                }
+                if (this.maze[x][y] == Globals.MAZE_GHOST_FIRST_STOP) {
+                    firstStop[0] = x;
+                    firstStop[1] = y;
                 }
-                PacMan = new Agent(pacX, pacY, Globals.pacmanSpeed, itemID, Globals.MAZE_PACMAN, false);
             }
+        }
+        this.mazeHeight = height;
+        this.mazeWidth = width;
 
-            if (Globals.showVisualisation == true) {
-                vis.updateVisualisation();
+        if (speeds != null) {
+            short id = 0;
+            numGhosts = (short) speeds.length;
+            ghosts = new Agent[numGhosts];
+            for (int i = 0; i < numGhosts; i++) {
+                if (vis != null) {
+                    itemID = vis.addItem(Globals.MAZE_GHOST, spawnPoint[0], spawnPoint[1], spawnPoint[0], spawnPoint[1], 0);
+                }
+                ghosts[i] = new Agent(spawnPoint[0], spawnPoint[1], Globals.pacmanSpeed * speeds[i], itemID, Globals.MAZE_GHOST, true);
+                ghosts[i].setId(id);
+                id++;
             }
+        }
+
+        if (scatter != null) {
+            mazeCornerPoints = scatter;
+        }
+
+        if (vis != null) {
+            itemID = vis.addItem(0, pacX, pacY, pacX, pacY, 0);
+        }
+        PacMan = new Agent(pacX, pacY, Globals.pacmanSpeed, itemID, Globals.MAZE_PACMAN, false);
+    }
+
+    private void setBitboard() {
+        bitboard = new MazeBitboard(maze, mazeWidth, mazeHeight);
+        pillField = new PillField(bitboard, bitboard.getPills());
+        if (Globals.enablePowerPillInput && Globals.powerPillsFromField) {
+            powerPillField = new PillField(bitboard, bitboard.getPowerPills());
+        }
+        pillsLeft = bitboard.count(bitboard.getPills());
+        powerPillsLeft = bitboard.count(bitboard.getPowerPills());
+    }
 
-            totalPills = pillsLeft;
-            totalPowerPills = powerPillsLeft;
+    private void finishLoading() {
+        if (vis != null) {
+            vis.updateVisualisation();
+        }
 
-            gameLoaded = true;
+        totalPills = pillsLeft;
+        totalPowerPills = powerPillsLeft;
 
+        gameLoaded = true;
+    }
+
+    public final boolean readCompiled(String filename) {
+        // Loads a maze written by writeCompiled. The grid and every table built from it are
+        // copied straight out of the memory-mapped file, so nothing has to be parsed or preprocessed.
+        // Returns false, leaving the environment untouched, if the file cannot be read, is damaged,
+        // or was compiled with other table settings (see MazeImage); the source should be read instead.
+        int width, height;
+        short[][] grid, scatter, distances, nextHops, enclosingDist;
+        double[] speeds;
+        byte[] masks;
+        MazeGraph mazeGraph;
+        MazeSegments mazeSegments;
+        boolean[] cellIsVertex;
+        int[][] enclosing;
+        Landmarks mazeLandmarks;
+        MazeHierarchy mazeHierarchy;
+        DistanceOracle oracle;
+        try {
+            ByteBuffer in = MazeImage.map(filename);
+            width = in.getInt();
+            height = in.getInt();
+            short[] cells = MazeImage.readShorts(in);
+            if (width <= 0 || height <= 0 || cells.length != width * height) {
+                throw new IOException(filename + " holds a grid of " + cells.length + " positions for a maze of " + width + "x" + height);
+            }
+            grid = new short[width][];
+            for (int x = 0; x < width; x++) {
+                grid[x] = Arrays.copyOfRange(cells, x * height, (x + 1) * height);
+            }
+            speeds = (in.get() != 0) ? MazeImage.readDoubles(in) : null;
+            scatter = (in.get() != 0) ? MazeImage.readShortTable(in) : null;
+            masks = MazeImage.readBytes(in);
+            mazeGraph = new MazeGraph(in);
+            mazeSegments = new MazeSegments(mazeGraph, in);
+            cellIsVertex = MazeImage.readBooleans(in);
+            enclosing = MazeImage.readIntTable(in);
+            enclosingDist = MazeImage.readShortTable(in);
+            distances = null;
+            nextHops = null;
+            if (in.get() != 0) {
+                distances = MazeImage.readShortTable(in);
+                nextHops = MazeImage.readShortTable(in);
+            }
+            mazeLandmarks = (in.get() != 0) ? new Landmarks(mazeGraph, in) : null;
+            mazeHierarchy = (in.get() != 0) ? new MazeHierarchy(mazeGraph, mazeLandmarks, in) : null;
+            oracle = (in.get() != 0) ? new DistanceOracle(in) : null;
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println(e.getMessage() + ", reading the maze itself");
+            return false;
+        } catch (RuntimeException e) {
+            // A damaged file runs out early, or holds lengths that make no sense
+            System.err.println(filename + " is damaged (" + e + "), reading the maze itself");
+            return false;
+        }
+
+        setMaze(grid, width, height, speeds, scatter);
+        moveMasks = masks;
+        setLegalMoves();
+        setBitboard();
+        graph = mazeGraph;
+        segments = mazeSegments;
+        closedSegments = findClosedSegments();
+        pillCounts = new PillCounts(segments, bitboard);
+        vertexCells = cellIsVertex;
+        enclosingVertices = enclosing;
+        enclosingDistances = enclosingDist;
+        vertexDistance = distances;
+        vertexNextHop = nextHops;
+        landmarks = mazeLandmarks;
+        hierarchy = mazeHierarchy;
+        distanceOracle = oracle;
+        compiled = true;
+        finishLoading();
+        return true;
+    }
+
+    public void writeCompiled(String filename) throws IOException {
+        // Writes the maze, as it was loaded, together with every table that PacMan.initialize built for it.
+        // Should be called before the game starts, as the grid is written as it is.
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            MazeImage.writeHeader(out);
+            out.writeInt(mazeWidth);
+            out.writeInt(mazeHeight);
+            short[] cells = new short[mazeWidth * mazeHeight];
+            for (int x = 0; x < mazeWidth; x++) {
+                System.arraycopy(maze[x], 0, cells, x * mazeHeight, mazeHeight);
+            }
+            MazeImage.writeShorts(out, cells);
+            out.writeBoolean(ghostSpeeds != null);
+            if (ghostSpeeds != null) {
+                MazeImage.writeDoubles(out, ghostSpeeds);
+            }
+            out.writeBoolean(mazeCornerPoints != null);
+            if (mazeCornerPoints != null) {
+                MazeImage.writeShortTable(out, mazeCornerPoints);
+            }
+
+            MazeImage.writeBytes(out, moveMasks);
+            graph.write(out);
+            segments.write(out);
+            MazeImage.writeBooleans(out, vertexCells);
+            MazeImage.writeIntTable(out, enclosingVertices);
+            MazeImage.writeShortTable(out, enclosingDistances);
+            out.writeBoolean(vertexDistance != null);
+            if (vertexDistance != null) {
+                MazeImage.writeShortTable(out, vertexDistance);
+                MazeImage.writeShortTable(out, vertexNextHop);
+            }
+            out.writeBoolean(landmarks != null);
+            if (landmarks != null) {
+                landmarks.write(out);
+            }
+            out.writeBoolean(hierarchy != null);
+            if (hierarchy != null) {
+                hierarchy.write(out);
+            }
+            out.writeBoolean(distanceOracle != null);
+            if (distanceOracle != null) {
+                distanceOracle.write(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public void setMoves() {
+        // Stores the possible actions for every maze position.
+        // Walls and the spawn area never change, so neither do the possible actions.
+        moveMasks = new byte[mazeWidth * mazeHeight];
+
+        for (int x = 0; x < mazeWidth; x++) {
+            for (int y = 0; y < mazeHeight; y++) {
+                int mask = 0;
+                if (maze[x][y] != Globals.MAZE_WALL) {
+                    // right
+                    if (x < mazeWidth - 1 && maze[x + 1][y] != Globals.MAZE_WALL && maze[x + 1][y] != Globals.MAZE_GHOST_SPAWN_AREA) {
+                        mask |= 1 << Globals.ACTION_RIGHT;
+                    }
+                    // left
+                    if (x > 0 && maze[x - 1][y] != Globals.MAZE_WALL && maze[x - 1][y] != Globals.MAZE_GHOST_SPAWN_AREA) {
+                        mask |= 1 << Globals.ACTION_LEFT;
+                    }
+                    // up
+                    if (y > 0 && maze[x][y - 1] != Globals.MAZE_WALL && maze[x][y - 1] != Globals.MAZE_GHOST_SPAWN_AREA) {
+                        mask |= 1 << Globals.ACTION_UP;
+                    }
+                    // down
+                    if (y < mazeHeight - 1 && maze[x][y + 1] != Globals.MAZE_WALL && maze[x][y + 1] != Globals.MAZE_GHOST_SPAWN_AREA) {
+                        mask |= 1 << Globals.ACTION_DOWN;
+                    }
+                }
+                moveMasks[x * mazeHeight + y] = (byte) mask;
+            }
+        }
+        setLegalMoves();
+    }
+
+    private void setLegalMoves() {
+        // Lists the actions of every move mask, in the order possibleActions lists them
+        legalMoves = new short[moveMasks.length][];
+        short[] order = {Globals.ACTION_RIGHT, Globals.ACTION_LEFT, Globals.ACTION_UP, Globals.ACTION_DOWN};
+        for (int position = 0; position < moveMasks.length; position++) {
+            int mask = moveMasks[position];
+            short[] moves = new short[Integer.bitCount(mask)];
+            int count = 0;
+            for (int i = 0; i < order.length; i++) {
+                if ((mask & (1 << order[i])) != 0) {
+                    moves[count] = order[i];
+                    count++;
+                }
+            }
+            legalMoves[position] = moves;
         }
     }
 
     public void setVertices() {
-        // fills 'vertices' with all vertices contained in the maze        
-        int id = 0;
+        // fills 'graph' with all vertices contained in the maze,
+        // and for each vertex its neighbors and corresponding distance
+        ArrayList<short[]> positions = new ArrayList<short[]>();
+        int[] ids = new int[mazeWidth * mazeHeight];
+        Arrays.fill(ids, -1);
+
+        // The maze layout never changes, so whether a position is a vertex
+        // only has to be worked out once.
+        boolean[] cells = new boolean[mazeWidth * mazeHeight];
+        for (short x = 0; x < mazeWidth; x++) {
+            for (short y = 0; y < mazeHeight; y++) {
+                cells[x * mazeHeight + y] = checkVertex(x, y);
+            }
+        }
+        vertexCells = cells;
 
         for (short x = 0; x < mazeWidth - 1; x++) {
             for (short y = 0; y < mazeHeight; y++) {
                 if (isVertex(x, y)) {
-                    Vertex v = new Vertex((short) id, x, y);
-                    vertices.put(id, v);
-                    id++;
+                    ids[x * mazeHeight + y] = positions.size();
+                    short[] position = {x, y};
+                    positions.add(position);
+                }
+            }
+        }
+
+        int numvertices = positions.size();
+        short[] vertexX = new short[numvertices];
+        short[] vertexY = new short[numvertices];
+        int[][][] neighbors = new int[numvertices][][];
+        for (int i = 0; i < numvertices; i++) {
+            vertexX[i] = positions.get(i)[0];
+            vertexY[i] = positions.get(i)[1];
+        }
+
+        // While walking the hallways, number them and the positions on them
+        int[] cellSegment = new int[mazeWidth * mazeHeight];
+        short[] cellOffset = new short[mazeWidth * mazeHeight];
+        Arrays.fill(cellSegment, -1);
+        ArrayList<int[]> segmentList = new ArrayList<int[]>();
+        for (int i = 0; i < numvertices; i++) {
+            neighbors[i] = findNeighborVertices(vertexX[i], vertexY[i], ids, cellSegment, cellOffset, segmentList);
+        }
+
+        graph = new MazeGraph(mazeWidth, mazeHeight, vertexX, vertexY, neighbors);
+
+        int numsegments = segmentList.size();
+        int[] segmentStart = new int[numsegments];
+        int[] segmentEnd = new int[numsegments];
+        short[] segmentLength = new short[numsegments];
+        for (int i = 0; i < numsegments; i++) {
+            segmentStart[i] = segmentList.get(i)[0];
+            segmentEnd[i] = segmentList.get(i)[1];
+            segmentLength[i] = (short) segmentList.get(i)[2];
+        }
+        segments = new MazeSegments(graph, mazeWidth, mazeHeight, cellSegment, cellOffset, segmentStart, segmentEnd, segmentLength);
+        closedSegments = findClosedSegments();
+        pillCounts = new PillCounts(segments, bitboard);
+
+        // Find the enclosing vertices of every walkable position once,
+        // so that path queries never have to walk the hallways again.
+        int[][] enclosing = new int[mazeWidth * mazeHeight][];
+        short[][] enclosingDist = new short[mazeWidth * mazeHeight][];
+        for (short x = 0; x < mazeWidth; x++) {
+            for (short y = 0; y < mazeHeight; y++) {
+                if (maze[x][y] != Globals.MAZE_WALL) {
+                    int[] found = walkEnclosingVertices(x, y);
+                    short[] dist = new short[found.length];
+                    for (int i = 0; i < found.length; i++) {
+                        dist[i] = found[i] < 0 ? -1 : distance(x, y, graph.getX(found[i]), graph.getY(found[i]));
+                    }
+                    enclosing[x * mazeHeight + y] = found;
+                    enclosingDist[x * mazeHeight + y] = dist;
+                }
+            }
+        }
+        enclosingVertices = enclosing;
+        enclosingDistances = enclosingDist;
+    }
+
+    public void setVertexDistances() {
+        // Runs Dijkstra from every vertex to fill the all-pairs distance and next-hop tables,
+        // so that path queries between vertices no longer need a search.
+        // The maze never changes during a game, so this only has to be done once.
+        int numvertices = graph.getNumVertices();
+        if (numvertices > Globals.maxTableVertices) {
+            vertexDistance = null;
+            vertexNextHop = null;
+            return;
+        }
+
+        vertexDistance = new short[numvertices][numvertices];
+        vertexNextHop = new short[numvertices][numvertices];
+
+        int[] dist = new int[numvertices];
+        boolean[] settled = new boolean[numvertices];
+        PriorityQueue<int[]> openSet = new PriorityQueue<int[]>(16, new Comparator<int[]>() {
+
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : (a[0] > b[0] ? 1 : 0);
+            }
+        });
+
+        for (int source = 0; source < numvertices; source++) {
+            short[] nextHop = vertexNextHop[source];
+            for (int i = 0; i < numvertices; i++) {
+                dist[i] = Integer.MAX_VALUE;
+                settled[i] = false;
+                nextHop[i] = -1;
+            }
+            dist[source] = 0;
+            openSet.add(new int[]{0, source});
+
+            while (!openSet.isEmpty()) {
+                int current = openSet.poll()[1];
+                if (settled[current]) {
+                    continue;
+                }
+                settled[current] = true;
+
+                for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                    int neighbor = graph.getEdgeTarget(edge);
+                    int tentative = dist[current] + graph.getEdgeLength(edge);
+                    if (!settled[neighbor] && tentative < dist[neighbor]) {
+                        dist[neighbor] = tentative;
+                        // Remember through which neighbor of the source this vertex was reached
+                        nextHop[neighbor] = (current == source) ? (short) neighbor : nextHop[current];
+                        openSet.add(new int[]{tentative, neighbor});
+                    }
                 }
             }
+
+            for (int i = 0; i < numvertices; i++) {
+                vertexDistance[source][i] = (short) (dist[i] == Integer.MAX_VALUE ? -1 : dist[i]);
+            }
         }
     }
 
-    public void setNeigborVertices() {
-        // for each vertex, find neighbors and corresponding distance
-        for (int i = 0; i < vertices.size(); i++) {
-            short[][] neighborvertices = findNeighborVertices(vertices.get(i));
-            vertices.get(i).setNeighbors(neighborvertices);
+    public void setHierarchy() {
+        // Divides the maze into clusters, and stores the distances between the entrances of each.
+        // These are only needed when the maze is too large for the table of distances between all vertices.
+        // The landmarks, if any, should be set first, as they guide the search over the clusters too.
+        if (vertexDistance != null || Globals.hierarchicalPaths == false
+                || graph.getNumVertices() < Globals.minHierarchyVertices) {
+            hierarchy = null;
+            return;
         }
+        hierarchy = new MazeHierarchy(graph, mazeWidth, mazeHeight, Globals.clusterSize, landmarks);
+    }
+
+    public void setLandmarks() {
+        // Chooses the landmarks that give A* its heuristic. These are only needed
+        // when the maze is too large for the table of distances between all vertices.
+        if (vertexDistance != null || Globals.numLandmarks <= 0) {
+            landmarks = null;
+            return;
+        }
+        landmarks = new Landmarks(graph, Globals.numLandmarks);
+    }
+
+    public void setDistanceOracle() {
+        // Builds the distance oracle, which holds the shortest path lengths between
+        // all maze positions. Path queries can then skip the vertices altogether.
+        if (DistanceOracle.countCells(maze, mazeWidth, mazeHeight) > Globals.maxOracleCells) {
+            distanceOracle = null;
+            return;
+        }
+        distanceOracle = new DistanceOracle(maze, mazeWidth, mazeHeight);
     }
 
     /*
      * PATH FINDING
      */
+    public short cellDistance(short x1, short y1, short x2, short y2) {
+        // Returns only the length of the shortest path from x1,y1 to x2,y2.
+        // Without the distance oracle, the hallway segments and the table of distances between
+        // vertices give the answer without searching; otherwise the path is searched for.
+        if (distanceOracle != null) {
+            return distanceOracle.distance(x1, y1, x2, y2);
+        }
+        if (vertexDistance != null && segments != null && segments.covers(x1, y1) && segments.covers(x2, y2)) {
+            return segments.distance(x1, y1, x2, y2, vertexDistance);
+        }
+        return findShortestPath(x1, y1, x2, y2, null)[0];
+    }
+
     public short[] findShortestPath(short x1, short y1, short x2, short y2, int[] blacklist) {
-        // Uses repeated A* to find the shortest path from x1,y1 to x2,y2.
+        // Finds the shortest path from x1,y1 to x2,y2, using the distance oracle
+        // or otherwise the paths between the enclosing vertices.
         // Returns an array with the distance and the first move starting from x1,y1.        
         short[] result = new short[2];
         int currentPath;
         short shortestPath = -1;
-        short fullPath = -1;
-        Vertex startVertex, endVertex;
-        ASTARresult best = new ASTARresult();
-        ASTARresult astar;
 
         if (x1 == x2 && y1 == y2) {
             return result;
         }
 
+        // If the distance oracle is available, the path can simply be looked up.
+        if (distanceOracle != null && blacklist == null) {
+            result[0] = distanceOracle.distance(x1, y1, x2, y2);
+            result[1] = distanceOracle.firstMove(x1, y1, x2, y2);
+            return result;
+        }
+
         // Find the enclosing vertices for the start and end point
         int startvertices[] = findEnclosingVertices(x1, y1);
         int endvertices[] = findEnclosingVertices(x2, y2);
+        short startdistances[] = findEnclosingDistances(x1, y1);
+        short enddistances[] = findEnclosingDistances(x2, y2);
 
         // Check how many of the start vertices are also end vertices
         int countStartEnd = 0;
@@ -288,43 +768,43 @@ public class Environment {
         } else if (countStartEnd > 0) {
             result[0] = distance(x1, y1, x2, y2);
 
-            endVertex = vertices.get(startvertices[same]);
+            int endVertex = startvertices[same];
             
             // Find out if teleporting would be quicker.
-            boolean teleport = (Math.abs(endVertex.getX() - x1)) > (mazeWidth / 2);
+            boolean teleport = (Math.abs(graph.getX(endVertex) - x1)) > (mazeWidth / 2);
 
             // Calculate the first move to be made
-            if (endVertex.getX() > x1 && teleport) {
+            if (graph.getX(endVertex) > x1 && teleport) {
                 result[1] = Globals.ACTION_LEFT;
-            } else if (endVertex.getX() < x1 && teleport) {
+            } else if (graph.getX(endVertex) < x1 && teleport) {
                 result[1] = Globals.ACTION_RIGHT;
-            } else if (endVertex.getX() < x1) {
+            } else if (graph.getX(endVertex) < x1) {
                 result[1] = Globals.ACTION_LEFT;
-            } else if (endVertex.getX() > x1) {
+            } else if (graph.getX(endVertex) > x1) {
                 result[1] = Globals.ACTION_RIGHT;
-            } else if (endVertex.getY() < y1) {
+            } else if (graph.getY(endVertex) < y1) {
                 result[1] = Globals.ACTION_UP;
-            } else if (endVertex.getY() > y1) {
+            } else if (graph.getY(endVertex) > y1) {
                 result[1] = Globals.ACTION_DOWN;
             }
 
             return result;
 
         } else {
-            // Loop through the vertices and perform A*.
+            // Loop through the vertices and look up the shortest path between them.
+            int bestStart = -1, bestNext = -1;
             for (int i = 0; i < startvertices.length; i++) {
                 for (int j = 0; j < endvertices.length; j++) {
-                    astar = ASTAR(startvertices[i], endvertices[j], blacklist);
-                    if (astar.totalPathSize >= 0) {
-                        // Calculate the full path length based on A* and distance to relevant vertices.
-                        startVertex = vertices.get(startvertices[i]);
-                        endVertex = vertices.get(endvertices[j]);
-                        currentPath = astar.totalPathSize + distance(x1, y1, (short) startVertex.getX(), (short) startVertex.getY()) + distance(x2, y2, (short) endVertex.getX(), (short) endVertex.getY());
+                    int[] path = findVertexPath(startvertices[i], endvertices[j], blacklist);
+                    if (path[0] >= 0) {
+                        // Calculate the full path length based on the vertex path and distance to relevant vertices.
+                        currentPath = path[0] + startdistances[i] + enddistances[j];
 
                         // Store this path if it is the shortest one yet.
-                        if (astar.totalPathSize >= 0 && (currentPath < shortestPath || shortestPath == -1)) {
+                        if (currentPath < shortestPath || shortestPath == -1) {
                             shortestPath = (short) currentPath;
-                            best = astar;
+                            bestStart = startvertices[i];
+                            bestNext = path[1];
                         }
                     }
                 }
@@ -335,15 +815,15 @@ public class Environment {
                 result[0] = shortestPath;
                 int startX, startY;
 
-                startVertex = vertices.get((int) best.reconstructedPath.get(0));
+                int startVertex = bestStart;
 
                 // If we started on the exact spot of the first vertex in our path...
-                if (startVertex.getX() == x1 && startVertex.getY() == y1) {
+                if (graph.getX(startVertex) == x1 && graph.getY(startVertex) == y1) {
                     // move towards second vertex
-                    if (best.reconstructedPath.size() > 1) {
-                        startVertex = vertices.get((int) best.reconstructedPath.get(1));
-                        startX = startVertex.getX();
-                        startY = startVertex.getY();
+                    if (bestNext != -1) {
+                        startVertex = bestNext;
+                        startX = graph.getX(startVertex);
+                        startY = graph.getY(startVertex);
                     } else {
                         // Or if there is no second vertex, calculate the move by using
                         // the direct path to the goal.
@@ -352,8 +832,8 @@ public class Environment {
                     }
                 } else {
                     // Or if neither if this applies, just move towards the first vertex in the path
-                    startX = startVertex.getX();
-                    startY = startVertex.getY();
+                    startX = graph.getX(startVertex);
+                    startY = graph.getY(startVertex);
                 }
 
                 // We have now established a certain (x,y)-point in the maze,
@@ -387,14 +867,13 @@ public class Environment {
     }
 
     public short[] findAllPaths(short x1, short y1, short x2, short y2) {
-        // Uses repeated A* to find the paths from x1,y1 to x2,y2.
+        // Finds the paths from x1,y1 to x2,y2, using the distance oracle
+        // or otherwise the paths between the enclosing vertices.
         // An array will be returned containing the shortest path for every moving position.
         // If that value is -1, no path was found.
         short[] result = new short[4];
         int currentPath;
         short[] shortestPath = new short[4];
-        Vertex startVertex, endVertex;
-        ASTARresult astar;
 
         for (int i = 0; i < 4; i++) {
             shortestPath[i] = -1;
@@ -405,9 +884,19 @@ public class Environment {
             return result;
         }
 
+        // If the distance oracle is available, the path for every first move can simply be looked up.
+        if (distanceOracle != null) {
+            for (short i = 0; i < 4; i++) {
+                result[i] = distanceOracle.distance(x1, y1, i, x2, y2);
+            }
+            return result;
+        }
+
         // Find the enclosing vertices for the start and end point
         int startvertices[] = findEnclosingVertices(x1, y1);
         int endvertices[] = findEnclosingVertices(x2, y2);
+        short startdistances[] = findEnclosingDistances(x1, y1);
+        short enddistances[] = findEnclosingDistances(x2, y2);
 
         // Check how many of the start vertices are also end vertices
         int countStartEnd = 0;
@@ -437,10 +926,10 @@ public class Environment {
             return result;
 
             // If not all start vertices are also end vertices, then start and goal are seperated by at least one vertex.
-            // This means there are multiple acceptable paths, and we should use A* to find them.
+            // This means there are multiple acceptable paths, and we should look up each of them.
 
         } else {
-            // Loop through the vertices and perform A*.
+            // Loop through the vertices and look up the paths between them.
             for (int i = 0; i < startvertices.length; i++) {
                 for (int j = 0; j < endvertices.length; j++) {
                     int[] blacklist = new int[startvertices.length - 1];
@@ -451,26 +940,27 @@ public class Environment {
                             l++;
                         }
                     }
-                    astar = ASTAR(startvertices[i], endvertices[j], blacklist);
-                    if (astar.totalPathSize >= 0) {
-                        // Calculate the full path length based on A* and distance to relevant vertices.
-                        startVertex = vertices.get(startvertices[i]);
-                        endVertex = vertices.get(endvertices[j]);
-                        currentPath = astar.totalPathSize + distance(x1, y1, (short) startVertex.getX(), (short) startVertex.getY()) + distance(x2, y2, (short) endVertex.getX(), (short) endVertex.getY());
+                    int[] path = findVertexPath(startvertices[i], endvertices[j], blacklist);
+                    if (path[0] >= 0) {
+                        // Calculate the full path length based on the vertex path and distance to relevant vertices.
+                        int startVertex = startvertices[i];
+                        currentPath = path[0] + startdistances[i] + enddistances[j];
 
                         short direction = -1;
-                        short position = 0;
                         short orientationx = 0;
                         short orientationy = 0;
-                        if (vertices.get((int) astar.reconstructedPath.get(0)).getX() == x1 && vertices.get((int) astar.reconstructedPath.get(0)).getY() == y1) {
-                            position++;
-                        }
-                        if (position >= astar.reconstructedPath.size()) {
-                            orientationx = x2;
-                            orientationy = y2;
+                        if (graph.getX(startVertex) == x1 && graph.getY(startVertex) == y1) {
+                            // We are standing on the first vertex, so orientate on the second one
+                            if (path[1] == -1) {
+                                orientationx = x2;
+                                orientationy = y2;
+                            } else {
+                                orientationx = graph.getX(path[1]);
+                                orientationy = graph.getY(path[1]);
+                            }
                         } else {
-                            orientationx = vertices.get((int) astar.reconstructedPath.get(position)).getX();
-                            orientationy = vertices.get((int) astar.reconstructedPath.get(position)).getY();
+                            orientationx = graph.getX(startVertex);
+                            orientationy = graph.getY(startVertex);
                         }
 
                         if (orientationx < x1) {
@@ -493,115 +983,325 @@ public class Environment {
         return result;
     }
 
-    private ASTARresult ASTAR(int startID, int goalID, int[] blacklist) {
-        // A* implementation
-        Vertex current;
-        int numvertices = vertices.size();
-        Comparator<Vertex> comparator = new VertexComparator();
+    public PillSearchResult findNearestPills(short x1, short y1) {
+        // Finds the nearest pill and power pill for every first move from x1,y1, in a single search.
+        // Every position is reached once for each first move; as all steps have length one,
+        // positions come out of the queue in order of distance, just like in Dijkstra's algorithm.
+        // Just like the distance oracle, paths never turn back through x1,y1,
+        // and moving past the edge of the maze teleports to the opposite edge.
+        // A hallway without pills is crossed in one go: its far end is put on a second queue,
+        // ordered by distance, and the two queues are emptied in order of distance together.
+        PillSearchResult result = new PillSearchResult();
+        int numStates = mazeWidth * mazeHeight * 4;
+
+        // (re)allocate the scratch space if the maze has changed
+        if (pillSearchVisited == null || pillSearchVisited.length != numStates) {
+            pillSearchDistance = new short[numStates];
+            pillSearchVisited = new int[numStates];
+            pillSearchQueue = new int[numStates];
+            pillSearchJumps = new IndexedMinHeap(numStates);
+            pillSearch = 0;
+        }
+        pillSearch++;
+        if (pillSearch == Integer.MAX_VALUE) {
+            Arrays.fill(pillSearchVisited, 0);
+            pillSearch = 1;
+        }
+        int search = pillSearch;
+
+        int start = x1 * mazeHeight + y1;
+        // Hallways are not crossed in one go if x1,y1 lies on them, as that would pass through it
+        int startSegment = (segments != null) ? segments.getSegment(x1, y1) : -1;
+        IndexedMinHeap jumps = pillSearchJumps;
+        int head = 0, tail = 0;
+        for (short action = 0; action < 4; action++) {
+            pillSearchVisited[start * 4 + action] = search;
+            int next = findNextPosition(x1, y1, action);
+            if (next != -1 && next != start) {
+                int state = next * 4 + action;
+                pillSearchVisited[state] = search;
+                pillSearchDistance[state] = 1;
+                pillSearchQueue[tail++] = state;
+            }
+        }
 
-        // Resulting class, which will contain distance and path.
-        ASTARresult result = new ASTARresult();
+        while (head < tail || !jumps.isEmpty()) {
+            int state;
+            if (!jumps.isEmpty() && (head == tail || jumps.getKey(jumps.peek()) <= pillSearchDistance[pillSearchQueue[head]])) {
+                int key = jumps.getKey(jumps.peek());
+                state = jumps.poll();
+                if (pillSearchVisited[state] == search) {
+                    // Already reached through the maze, at least as soon
+                    continue;
+                }
+                pillSearchVisited[state] = search;
+                pillSearchDistance[state] = (short) key;
+            } else {
+                state = pillSearchQueue[head++];
+            }
+            short action = (short) (state & 3);
+            int position = state >> 2;
+            short distance = pillSearchDistance[state];
+            int x = position / mazeHeight;
+            int y = position % mazeHeight;
+
+            if (maze[x][y] == Globals.MAZE_PILL || maze[x][y] == Globals.MAZE_POWER_PILL) {
+                result.addPill(action, distance, position);
+            }
+            if (maze[x][y] == Globals.MAZE_POWER_PILL) {
+                result.addPowerPill(action, distance, position);
+            }
 
-        Vertex start = vertices.get(startID);
+            // Once both kinds of pills were found after this first move, nothing farther is needed.
+            // When no power pills are left, there is no need to look for them.
+            if (result.pillDistance[action] != -1 && result.pillDistance[action] < distance
+                    && (powerPillsLeft == 0 || result.powerPillDistance[action] != -1 && result.powerPillDistance[action] < distance)) {
+                continue;
+            }
 
-        // set of tentative nodes
-        PriorityQueue<Vertex> openSet = new PriorityQueue<Vertex>(10, comparator);
+            int segment = (closedSegments != null) ? segments.getSegment(x, y) : -1;
+            if (segment != -1 && segment != startSegment && closedSegments[segment] && pillCounts.getSegmentPills(segment) == 0) {
+                // Nothing to find on this hallway, so go straight to both of its ends.
+                // The end it was entered from was reached before, and is passed over.
+                int offset = segments.getOffset(x, y);
+                jump(segments.getSegmentStart(segment), action, distance + offset, search);
+                jump(segments.getSegmentEnd(segment), action, distance + segments.getSegmentLength(segment) - offset, search);
+                continue;
+            }
 
-        // map of navigated nodes
-        short[] cameFrom = new short[numvertices];
+            for (short a = 0; a < 4; a++) {
+                int next = findNextPosition(x, y, a);
+                if (next == -1) {
+                    continue;
+                }
+                int nextState = next * 4 + action;
+                if (pillSearchVisited[nextState] != search) {
+                    pillSearchVisited[nextState] = search;
+                    pillSearchDistance[nextState] = (short) (distance + 1);
+                    pillSearchQueue[tail++] = nextState;
+                }
+            }
+        }
+        return result;
+    }
 
-        // little house keeping 
-        boolean[] inClosedSet = new boolean[numvertices];
-        boolean[] inOpenSet = new boolean[numvertices];
+    private void jump(int vertex, short action, int distance, int search) {
+        // Puts the state at a vertex on the queue of hallway crossings,
+        // unless it was reached before or is already on it at no greater distance
+        int state = (graph.getX(vertex) * mazeHeight + graph.getY(vertex)) * 4 + action;
+        if (pillSearchVisited[state] == search) {
+            return;
+        }
+        if (!pillSearchJumps.contains(state)) {
+            pillSearchJumps.add(state, distance);
+        } else if (distance < pillSearchJumps.getKey(state)) {
+            pillSearchJumps.decreaseKey(state, distance);
+        }
+    }
 
-        // initializations, for reconstructing path later..
-        for (int i = 0; i < numvertices; i++) {
-            cameFrom[i] = -1;
-            inClosedSet[i] = false;
-            inOpenSet[i] = false;
-            if (blacklist != null) {
-                for (int j = 0; j < blacklist.length; j++) {
-                    if (i == blacklist[j]) {
-                        inClosedSet[i] = true;
+    private boolean[] findClosedSegments() {
+        // A segment is closed if every position on it can only be left for the positions
+        // next to it on the segment, or for the vertices at its ends. Such a segment can be
+        // crossed without visiting its positions, when it holds no pills.
+        boolean[] closed = new boolean[segments.getNumSegments()];
+        Arrays.fill(closed, true);
+        for (int x = 0; x < mazeWidth; x++) {
+            for (int y = 0; y < mazeHeight; y++) {
+                int segment = segments.getSegment(x, y);
+                if (segment == -1 || !closed[segment]) {
+                    continue;
+                }
+                int offset = segments.getOffset(x, y);
+                int length = segments.getSegmentLength(segment);
+                for (short a = 0; a < 4; a++) {
+                    int next = findNextPosition(x, y, a);
+                    if (next == -1) {
+                        continue;
+                    }
+                    int nextX = next / mazeHeight;
+                    int nextY = next % mazeHeight;
+                    int nextSegment = segments.getSegment(nextX, nextY);
+                    boolean along;
+                    if (nextSegment != -1) {
+                        along = nextSegment == segment && Math.abs(segments.getOffset(nextX, nextY) - offset) == 1;
+                    } else {
+                        int vertex = graph.getVertex(nextX, nextY);
+                        along = offset == 1 && vertex == segments.getSegmentStart(segment)
+                                || offset == length - 1 && vertex == segments.getSegmentEnd(segment);
+                    }
+                    if (!along) {
+                        closed[segment] = false;
                     }
                 }
             }
         }
+        return closed;
+    }
 
-        // individual node scores
-        int[] g_score = new int[numvertices];
-        int[] h_score = new int[numvertices];
-        int[] f_score = new int[numvertices];
+    private int findNextPosition(int x, int y, short action) {
+        // Returns the maze position (x * mazeHeight + y) reached by performing an action at (x,y),
+        // or -1 if it is not possible. These are the same moves the distance oracle uses.
+        int newX = x, newY = y;
+        switch (action) {
+            case Globals.ACTION_LEFT:
+                newX = (x == 0) ? mazeWidth - 1 : x - 1;
+                break;
+            case Globals.ACTION_RIGHT:
+                newX = (x == mazeWidth - 1) ? 0 : x + 1;
+                break;
+            case Globals.ACTION_UP:
+                newY = (y == 0) ? mazeHeight - 1 : y - 1;
+                break;
+            case Globals.ACTION_DOWN:
+                newY = (y == mazeHeight - 1) ? 0 : y + 1;
+                break;
+        }
 
-        // get x and y values of goal and start node
-        short xStart = vertices.get(startID).getX();
-        short yStart = vertices.get(startID).getY();
-        short xGoal = vertices.get(goalID).getX();
-        short yGoal = vertices.get(goalID).getY();
+        if (maze[newX][newY] == Globals.MAZE_WALL) {
+            return -1;
+        }
 
-        // set initial values
-        g_score[startID] = 0;
-        h_score[startID] = distance(xStart, yStart, xGoal, yGoal);
-        f_score[startID] = g_score[startID] + h_score[startID];
-        start.setF_score(f_score[startID]);
+        // The spawn area can only be entered from within, or through the ghosts' first stop
+        if (maze[newX][newY] == Globals.MAZE_GHOST_SPAWN_AREA
+                && maze[x][y] != Globals.MAZE_GHOST_SPAWN_AREA
+                && maze[x][y] != Globals.MAZE_GHOST_SPAWN_POINT
+                && maze[x][y] != Globals.MAZE_GHOST_FIRST_STOP) {
+            return -1;
+        }
+
+        return newX * mazeHeight + newY;
+    }
+
+    private int[] findVertexPath(int startID, int goalID, int[] blacklist) {
+        // Returns the length of the shortest path between two vertices and the second vertex
+        // on that path (-1 if start and goal are the same), or a length of -1 if there is no path.
+        // The distance tables are used whenever they are available and the tabled path
+        // does not cross a blacklisted vertex. Without tables, the path is planned over
+        // the clusters of the maze if they are available. Otherwise we fall back to A*.
+        int[] result = {-1, -1};
+
+        if (vertexDistance != null && !crossesBlacklist(startID, goalID, blacklist)) {
+            result[0] = vertexDistance[startID][goalID];
+            if (result[0] >= 0 && startID != goalID) {
+                result[1] = vertexNextHop[startID][goalID];
+            }
+            return result;
+        }
+
+        if (hierarchy != null) {
+            return hierarchy.findPath(startID, goalID, blacklist);
+        }
+
+        ASTARresult astar = ASTAR(startID, goalID, blacklist);
+        if (astar.totalPathSize >= 0) {
+            result[0] = astar.totalPathSize;
+            if (astar.reconstructedPath.length > 1) {
+                result[1] = astar.reconstructedPath[1];
+            }
+        }
+        return result;
+    }
+
+    private boolean crossesBlacklist(int startID, int goalID, int[] blacklist) {
+        // Walks the next-hop table from start to goal,
+        // and checks whether any of the vertices on the way are blacklisted.
+        if (blacklist == null || blacklist.length == 0) {
+            return false;
+        }
+
+        int current = startID;
+        while (true) {
+            for (int i = 0; i < blacklist.length; i++) {
+                if (blacklist[i] == current) {
+                    return true;
+                }
+            }
+            if (current == goalID || vertexNextHop[current][goalID] == -1) {
+                return false;
+            }
+            current = vertexNextHop[current][goalID];
+        }
+    }
+
+    private ASTARresult ASTAR(int startID, int goalID, int[] blacklist) {
+        // A* implementation
+        // Nodes are ordered by their distance from the start plus a lower bound on the distance
+        // to the goal, taken from the landmarks. Without landmarks the bound is zero,
+        // and nodes are ordered by their distance from the start alone.
+        // The bound never shrinks by more than an edge's length along that edge,
+        // so a node never has to be reopened once it is closed.
+        int numvertices = graph.getNumVertices();
+
+        // Resulting class, which will contain distance and path.
+        ASTARresult result = new ASTARresult();
+
+        // (re)allocate the scratch space if the maze has changed
+        if (astarOpenSet == null || astarOpenSet.capacity() != numvertices) {
+            astarOpenSet = new IndexedMinHeap(numvertices);
+            astarGScore = new int[numvertices];
+            astarHScore = new int[numvertices];
+            astarCameFrom = new int[numvertices];
+            astarVisited = new int[numvertices];
+            astarClosed = new int[numvertices];
+            astarSearch = 0;
+        }
+
+        // Instead of clearing the scratch arrays, every search gets its own number.
+        // A vertex only counts as reached or closed if it carries the current number.
+        astarSearch++;
+        if (astarSearch == Integer.MAX_VALUE) {
+            Arrays.fill(astarVisited, 0);
+            Arrays.fill(astarClosed, 0);
+            astarSearch = 1;
+        }
+        int search = astarSearch;
+        IndexedMinHeap openSet = astarOpenSet;
+        openSet.clear();
+
+        if (blacklist != null) {
+            for (int j = 0; j < blacklist.length; j++) {
+                astarClosed[blacklist[j]] = search;
+            }
+        }
 
         // add start node to openset
-        openSet.add(start);
-        inOpenSet[startID] = true;
+        astarGScore[startID] = 0;
+        astarCameFrom[startID] = -1;
+        astarVisited[startID] = search;
+        openSet.add(startID, 0);
 
-        while (openSet.size() > 0) {
-            // retrieve node with lowest f_score from open set
-            current = openSet.peek();
-            short currentID = current.getID();
+        while (!openSet.isEmpty()) {
+            // retrieve node with lowest score from open set
+            int currentID = openSet.poll();
 
             if (currentID == goalID) {
-                result.totalPathSize = (short) g_score[currentID];
-                result.reconstructedPath = reconstructPath(cameFrom, currentID);
+                result.totalPathSize = (short) astarGScore[currentID];
+                result.reconstructedPath = reconstructPath(astarCameFrom, currentID);
                 return (result);
             }
 
-            // little housekeeping
-            inClosedSet[currentID] = true;
-            openSet.remove(current);
-            inOpenSet[currentID] = false;
+            astarClosed[currentID] = search;
 
             // get neighbor nodes from current
-            short[][] neighborNodes = current.getNeighbors();
-            int neighbor;
-
-            for (int i = 0; i < neighborNodes.length; i++) {
-                neighbor = neighborNodes[i][0];
+            for (int edge = graph.firstEdge(currentID); edge < graph.lastEdge(currentID); edge++) {
+                int neighbor = graph.getEdgeTarget(edge);
 
-                if (inClosedSet[neighbor]) {
+                if (astarClosed[neighbor] == search) {
                     continue;
                 }
 
-                int tentative_g_score = g_score[currentID] + neighborNodes[i][1];
-                boolean betterScore;
-
-                if (!inOpenSet[neighbor]) {
-                    betterScore = true;
-                } else if (tentative_g_score < g_score[neighbor]) {
-                    betterScore = true;
-                } else {
-                    betterScore = false;
-                }
-
-                if (betterScore) {
-                    cameFrom[neighbor] = currentID;
-                    g_score[neighbor] = tentative_g_score;
-                    f_score[neighbor] = g_score[neighbor] + h_score[neighbor];
-
-                    Vertex v = vertices.get(neighbor);
-                    if (!inOpenSet[neighbor]) {
-                        v.setF_score(f_score[neighbor]);
-                        inOpenSet[neighbor] = true;
-                        openSet.add(v);
-                    } else {
-                        openSet.remove(v);
-                        v.setF_score(f_score[neighbor]);
-                        openSet.add(v);
-                    }
+                int tentative_g_score = astarGScore[currentID] + graph.getEdgeLength(edge);
+
+                if (astarVisited[neighbor] != search) {
+                    astarVisited[neighbor] = search;
+                    astarCameFrom[neighbor] = currentID;
+                    astarGScore[neighbor] = tentative_g_score;
+                    astarHScore[neighbor] = (landmarks == null) ? 0 : landmarks.lowerBound(neighbor, goalID);
+                    openSet.add(neighbor, tentative_g_score + astarHScore[neighbor]);
+                } else if (tentative_g_score < astarGScore[neighbor]) {
+                    astarCameFrom[neighbor] = currentID;
+                    astarGScore[neighbor] = tentative_g_score;
+                    openSet.decreaseKey(neighbor, tentative_g_score + astarHScore[neighbor]);
                 }
             }
         }
@@ -609,16 +1309,19 @@ public class Environment {
         return new ASTARresult();
     }
 
-    private ArrayList<Short> reconstructPath(short[] cameFrom, short current) {
-        ArrayList<Short> path = new ArrayList<Short>();
-        if (cameFrom[current] != -1) {
-            path = reconstructPath(cameFrom, cameFrom[current]);
-            path.add(current);
-            return path;
-        } else {
-            path.add(current);
-            return path;
+    private int[] reconstructPath(int[] cameFrom, int current) {
+        // Follows cameFrom back to the start, and returns the path from start to current.
+        int length = 0;
+        for (int i = current; i != -1; i = cameFrom[i]) {
+            length++;
+        }
+
+        int[] path = new int[length];
+        for (int i = current; i != -1; i = cameFrom[i]) {
+            length--;
+            path[length] = i;
         }
+        return path;
     }
 
     public short distance(short xStart, short yStart, short xGoal, short yGoal) {
@@ -681,8 +1384,6 @@ public class Environment {
         short x = (short) ghosts[ghostId].getX1();
         short y = (short) ghosts[ghostId].getY1();
 
-        Random generator = new Random();
-
         if (maze[x][y] == Globals.MAZE_GHOST_SPAWN_AREA || maze[x][y] == Globals.MAZE_GHOST_SPAWN_POINT) {
             getGhost(ghostId).setVisType(Globals.MAZE_GHOST); // Set the proper image in the visualisation
 
@@ -759,14 +1460,14 @@ public class Environment {
                     getGhost(ghostId).setVisType(Globals.MAZE_FRIGHT_GHOST);
                     if (isVertex(x, y)) {
                         res = findShortestPath(x, y, PacManX, PacManY, null);
-                        ArrayList<Short> pa = possibleActions(x, y);
-                        if (pa.contains(oppositeDirection(res[1]))) {
+                        short[] pa = getLegalMoves(x, y);
+                        if (canMove(x, y, oppositeDirection(res[1]))) {
                             dir = oppositeDirection(res[1]);
                         } else {
                             dir = res[1];
                             while (dir == res[1]) {
                                 //random number generator
-                                dir = pa.get(generator.nextInt(pa.size()));
+                                dir = pa[generator.nextInt(pa.length)];
                             }
                         }
                     } else {
@@ -790,10 +1491,10 @@ public class Environment {
                      * directions.
                      */
 
-                    ArrayList<Short> pa = possibleActions(x, y);
+                    short[] pa = getLegalMoves(x, y);
                         
-                    if (isVertex(x, y) || !pa.contains(getGhost(ghostId).direction)) {
-                        dir = pa.get((short) generator.nextInt(pa.size()));
+                    if (isVertex(x, y) || !canMove(x, y, getGhost(ghostId).direction)) {
+                        dir = pa[generator.nextInt(pa.length)];
                     } else {
                         dir = getGhost(ghostId).getDirection();
                     }
@@ -830,10 +1531,10 @@ public class Environment {
                 boolean b = (characteristics[i][1] == characteristics[j][1]);
                 boolean c = (characteristics[i][2] == characteristics[j][2]);
                 if ((a && b) && c) {
-                    ArrayList<Short> pa = possibleActions(characteristics[i][0], characteristics[i][1]);
-                    for (int k = 0; k < pa.size(); k++) {
-                        if (pa.get(k) != characteristics[i][2]) {
-                            ghosts[i].setDirection(pa.get(k));
+                    short[] pa = getLegalMoves(characteristics[i][0], characteristics[i][1]);
+                    for (int k = 0; k < pa.length; k++) {
+                        if (pa[k] != characteristics[i][2]) {
+                            ghosts[i].setDirection(pa[k]);
                             break;
                         }
                     }
@@ -846,7 +1547,15 @@ public class Environment {
      * VERTEX FUNCTIONS
      */
     public boolean isVertex(short x, short y) {
-        ArrayList pa = possibleActions(x, y);
+        if (vertexCells != null) {
+            return vertexCells[x * mazeHeight + y];
+        }
+        return checkVertex(x, y);
+    }
+
+    private boolean checkVertex(short x, short y) {
+        int pa = getMoveMask(x, y);
+        int count = Integer.bitCount(pa);
 
         // ignore spawn point area
         if (maze[x][y] == Globals.MAZE_GHOST_SPAWN_AREA) {
@@ -857,16 +1566,16 @@ public class Environment {
         if (maze[x][y] == Globals.MAZE_GHOST_FIRST_STOP) {
             return true;
         }
-        if (pa.size() >= 3) {
+        if (count >= 3) {
             return true;
         } else {
-            if (pa.size() == 2) {
+            if (count == 2) {
                 // top 
-                if (pa.contains(Globals.ACTION_DOWN) && !pa.contains(Globals.ACTION_UP)) {
+                if ((pa & (1 << Globals.ACTION_DOWN)) != 0 && (pa & (1 << Globals.ACTION_UP)) == 0) {
                     return true;
                 }
                 // bottom
-                if (pa.contains(Globals.ACTION_UP) && !pa.contains(Globals.ACTION_DOWN)) {
+                if ((pa & (1 << Globals.ACTION_UP)) != 0 && (pa & (1 << Globals.ACTION_DOWN)) == 0) {
                     return true;
                 }
             }
@@ -874,18 +1583,26 @@ public class Environment {
         return false;
     }
 
-    public short[][] findNeighborVertices(Vertex location) {
-        // returns an array containing id's from neighbouring vertices
-        ArrayList<short[]> neighborvertices = new ArrayList<short[]>();
-        ArrayList<Short> pa = possibleActions(location.getX(), location.getY());
-        short x = location.getX();
-        short y = location.getY();
+    private int[][] findNeighborVertices(short locationX, short locationY, int[] ids,
+            int[] cellSegment, short[] cellOffset, ArrayList<int[]> segmentList) {
+        // returns an array containing id's from neighbouring vertices,
+        // with the distance and direction towards them.
+        // 'ids' maps each maze position (x * mazeHeight + y) to the id of the vertex there.
+        // Hallways that have not been walked before are added to 'segmentList' as {start, end, length},
+        // and the positions on them are stored in 'cellSegment' and 'cellOffset'.
+        ArrayList<int[]> neighborvertices = new ArrayList<int[]>();
+        ArrayList<Integer> walked = new ArrayList<Integer>();
+        short[] pa = getLegalMoves(locationX, locationY);
+        short x = locationX;
+        short y = locationY;
 
         int currentAction;
-        Vertex temp = location.clone();
 
-        for (int i = 0; i < pa.size(); i++) {
-            currentAction = pa.get(i);
+        for (int i = 0; i < pa.length; i++) {
+            currentAction = pa[i];
+            int steps = 0;
+            boolean wrapped = false;
+            walked.clear();
             do {
                 if (currentAction == Globals.ACTION_DOWN) {
                     y++;
@@ -897,40 +1614,55 @@ public class Environment {
                     x--;
                     if (x == 0) {
                         x = (short) (mazeWidth - 2);
+                        wrapped = true;
                     }
                 }
                 if (currentAction == Globals.ACTION_RIGHT) {
                     x++;
                     if (x == (mazeWidth - 1)) {
                         x = 0;
+                        wrapped = true;
                     }
                 }
-
-                temp.setX(x);
-                temp.setY(y);
+                steps++;
+                if (!isVertex(x, y)) {
+                    walked.add(x * mazeHeight + y);
+                }
             } while (!isVertex(x, y));
 
-            // find corresponding vertex id
-            short id = 0;
-            for (int j = 0; j < vertices.size(); j++) {
-                if (vertices.get(j).equals(temp)) {
-                    id = vertices.get(j).getID();
+            // Store the hallway as a new segment, unless it was already walked from its other end.
+            // Hallways through the tunnels are left out, as their steps do not match the vertex distances.
+            if (!wrapped && !walked.isEmpty() && cellSegment[walked.get(0)] == -1 && ids[x * mazeHeight + y] != -1) {
+                int segment = segmentList.size();
+                for (int j = 0; j < walked.size(); j++) {
+                    cellSegment[walked.get(j)] = segment;
+                    cellOffset[walked.get(j)] = (short) (j + 1);
                 }
+                int[] newSegment = {ids[locationX * mazeHeight + locationY], ids[x * mazeHeight + y], steps};
+                segmentList.add(newSegment);
+            }
+
+            // find corresponding vertex id
+            int id = 0;
+            if (ids[x * mazeHeight + y] != -1) {
+                id = ids[x * mazeHeight + y];
             }
 
-            // find distance to original node
-            short dist = distance(location.getX(), location.getY(), temp.getX(), temp.getY());
+            // find distance to original node.
+            // A hallway is straight, so its length is the number of steps walked, or for a hallway
+            // through a tunnel, the way around the maze (the walk skips the positions on the edge).
+            short dist = wrapped ? (short) (mazeWidth - Math.abs(x - locationX)) : (short) steps;
 
             // add new element to neighborList
-            short neighbor[] = {id, dist, (short) currentAction};
+            int neighbor[] = {id, dist, currentAction};
             neighborvertices.add(neighbor);
 
             // reset currentLocation to interest point
-            x = location.getX();
-            y = location.getY();
+            x = locationX;
+            y = locationY;
         }
 
-        short[][] neighborList = new short[neighborvertices.size()][];
+        int[][] neighborList = new int[neighborvertices.size()][];
         for (int i = 0; i < neighborvertices.size(); i++) {
             neighborList[i] = neighborvertices.get(i);
         }
@@ -938,8 +1670,30 @@ public class Environment {
     }
 
     public int[] findEnclosingVertices(short x, short y) {
-        ArrayList<Short> pa = possibleActions(x, y);
+        // Returns the vertex at (x,y), or otherwise the vertices found by following
+        // the hallway (x,y) is part of in each direction.
+        // The returned array is shared between calls, and should not be changed.
+        if (enclosingVertices != null && enclosingVertices[x * mazeHeight + y] != null) {
+            return enclosingVertices[x * mazeHeight + y];
+        }
+        return walkEnclosingVertices(x, y);
+    }
+
+    public short[] findEnclosingDistances(short x, short y) {
+        // Returns the distance from (x,y) to each of the vertices returned by findEnclosingVertices.
+        // The returned array is shared between calls, and should not be changed.
+        if (enclosingDistances != null && enclosingDistances[x * mazeHeight + y] != null) {
+            return enclosingDistances[x * mazeHeight + y];
+        }
+        int[] found = walkEnclosingVertices(x, y);
+        short[] dist = new short[found.length];
+        for (int i = 0; i < found.length; i++) {
+            dist[i] = found[i] < 0 ? -1 : distance(x, y, graph.getX(found[i]), graph.getY(found[i]));
+        }
+        return dist;
+    }
 
+    private int[] walkEnclosingVertices(short x, short y) {
         if (isVertex(x, y)) {
             int[] result = {getKey(x, y)};
             return result;
@@ -1073,51 +1827,42 @@ public class Environment {
 
     public int getKey(int x, int y) {
         // returns the key that belongs to the vertex located at (x,y)
-        // only available if 'vertices' is set.
-        Vertex v = new Vertex((short) x, (short) y);
-        for (int i = 0; i < vertices.size(); i++) {
-            if (vertices.get(i).equals(v)) {
-                return vertices.get(i).getID();
-            }
-        }
-        return -1;
+        // only available if 'graph' is set.
+        return graph.getVertex(x, y);
     }
 
     /*
      * OTHER
      */
     public ArrayList<Short> possibleActions(int x, int y) {
+        // Returns a new list with the possible actions at (x,y).
+        // Code that runs every step should use getLegalMoves or canMove instead, which do not allocate.
         ArrayList<Short> possibleActions = new ArrayList<Short>();
 
         if (x < 0 || y < 0) {
             System.out.println(x + "," + y);
         }
 
-        if (maze[x][y] == Globals.MAZE_WALL) {
-            return possibleActions;
-        }
-
-        // right
-        if (x < mazeWidth - 1 && maze[x + 1][y] != Globals.MAZE_WALL && maze[x + 1][y] != Globals.MAZE_GHOST_SPAWN_AREA) {
-            possibleActions.add(Globals.ACTION_RIGHT);
-        }
-
-        // left
-        if (x > 0 && maze[x - 1][y] != Globals.MAZE_WALL && maze[x - 1][y] != Globals.MAZE_GHOST_SPAWN_AREA) {
-            possibleActions.add(Globals.ACTION_LEFT);
+        short[] moves = getLegalMoves(x, y);
+        for (int i = 0; i < moves.length; i++) {
+            possibleActions.add(moves[i]);
         }
+        return possibleActions;
+    }
 
-        // up
-        if (y > 0 && maze[x][y - 1] != Globals.MAZE_WALL && maze[x][y - 1] != Globals.MAZE_GHOST_SPAWN_AREA) {
-            possibleActions.add(Globals.ACTION_UP);
-        }
+    public short[] getLegalMoves(int x, int y) {
+        // Returns the possible actions at (x,y), in the order right, left, up, down.
+        // The returned array is shared between calls, and should not be changed.
+        return legalMoves[x * mazeHeight + y];
+    }
 
-        // down
-        if (y < mazeHeight - 1 && maze[x][y + 1] != Globals.MAZE_WALL && maze[x][y + 1] != Globals.MAZE_GHOST_SPAWN_AREA) {
-            possibleActions.add(Globals.ACTION_DOWN);
-        }
+    public int getMoveMask(int x, int y) {
+        // Returns a bit (1 << action) for every possible action at (x,y)
+        return moveMasks[x * mazeHeight + y];
+    }
 
-        return possibleActions;
+    public boolean canMove(int x, int y, short action) {
+        return (moveMasks[x * mazeHeight + y] & (1 << action)) != 0;
     }
 
     public short ghostCollision() {
@@ -1200,13 +1945,15 @@ public class Environment {
             powerPillsLeft--;
         }
 
-        // Update environment after eating item
-        if (maze[x][y] > 0) {
-            this.maze[x][y] = 0;
+        // Update environment after eating item.
+        // Other markers, such as the ghosts' first stop, are part of the maze layout
+        // that the vertices were built from, and should stay.
+        if (maze[x][y] == Globals.MAZE_PILL || maze[x][y] == Globals.MAZE_POWER_PILL || maze[x][y] == Globals.MAZE_PACMAN) {
+            removeItem(x, y);
         }
 
-        // Update visualization
-        if (visMaze[x][y] > 0) {
+        // Update visualization, unless this is a copy of the game made to look ahead
+        if (vis != null && visMaze[x][y] > 0) {
             if (maze[x][y] != Globals.MAZE_WALL) {
                 vis.editItem(visMaze[x][y], 0, x, y, x, y, 0);
             }
@@ -1216,19 +1963,160 @@ public class Environment {
         return eatReward;
     }
 
+    private void removeItem(int x, int y) {
+        if (maze[x][y] == Globals.MAZE_PACMAN) {
+            startMarker = -1;
+        } else if (pillCounts != null) {
+            pillCounts.remove(x, y);
+        }
+        this.maze[x][y] = 0;
+        bitboard.removeItem(x, y);
+        pillField.remove(x, y);
+        if (powerPillField != null) {
+            powerPillField.remove(x, y);
+        }
+    }
+
+    private void putBackItem(int x, int y, boolean powerPill) {
+        if (pillCounts != null) {
+            pillCounts.add(x, y);
+        }
+        this.maze[x][y] = powerPill ? Globals.MAZE_POWER_PILL : Globals.MAZE_PILL;
+        bitboard.addItem(x, y, powerPill);
+        pillField.add(x, y);
+        if (powerPill && powerPillField != null) {
+            powerPillField.add(x, y);
+        }
+    }
+
+    /*
+     * SNAPSHOTS
+     */
+    // Saves everything that changes while the game is played: which pills are left, the agents,
+    // the ghost behaviour and the state of the random choices of the ghosts.
+    // The grid and the distance fields are not saved, as the pills left are enough to restore them.
+    public EnvironmentSnapshot snapshot() {
+        EnvironmentSnapshot snapshot = new EnvironmentSnapshot();
+        snapshot.pills = bitboard.getPills().clone();
+        snapshot.powerPills = bitboard.getPowerPills().clone();
+        snapshot.pillsLeft = pillsLeft;
+        snapshot.powerPillsLeft = powerPillsLeft;
+        snapshot.startMarker = startMarker;
+        snapshot.gameEnded = gameEnded;
+        snapshot.gameLost = gameLost;
+        snapshot.justPowerpill = justPowerpill;
+        snapshot.justPill = justPill;
+        snapshot.globalGhostState = globalGhostState;
+        snapshot.pacMan = new Agent(PacMan);
+        snapshot.ghosts = new Agent[numGhosts];
+        for (int i = 0; i < numGhosts; i++) {
+            snapshot.ghosts[i] = new Agent(ghosts[i]);
+        }
+        snapshot.generator = new CopyableRandom(generator);
+        return snapshot;
+    }
+
+    // Returns the game to a snapshot of it, taken earlier or later in the same game.
+    // Only the items eaten or put back since the snapshot are changed in the grid and the distance fields,
+    // so restoring takes time in the size of the pill layers, not of the maze.
+    // The visualisation is not updated, and a StepContext used for the game should be reset.
+    public void restore(EnvironmentSnapshot snapshot) {
+        long[] pills = bitboard.getPills();
+        for (int i = 0; i < pills.length; i++) {
+            long eaten = snapshot.pills[i] & ~pills[i];
+            long extra = pills[i] & ~snapshot.pills[i];
+            while (eaten != 0) {
+                int index = (i << 6) + Long.numberOfTrailingZeros(eaten);
+                int x = bitboard.indexX(index);
+                int y = bitboard.indexY(index);
+                putBackItem(x, y, bitboard.get(snapshot.powerPills, x, y));
+                eaten &= eaten - 1;
+            }
+            while (extra != 0) {
+                int index = (i << 6) + Long.numberOfTrailingZeros(extra);
+                removeItem(bitboard.indexX(index), bitboard.indexY(index));
+                extra &= extra - 1;
+            }
+        }
+        if (startMarker != snapshot.startMarker) {
+            if (snapshot.startMarker != -1) {
+                maze[snapshot.startMarker / mazeHeight][snapshot.startMarker % mazeHeight] = Globals.MAZE_PACMAN;
+            } else {
+                maze[startMarker / mazeHeight][startMarker % mazeHeight] = 0;
+            }
+            startMarker = snapshot.startMarker;
+        }
+
+        pillsLeft = snapshot.pillsLeft;
+        powerPillsLeft = snapshot.powerPillsLeft;
+        gameEnded = snapshot.gameEnded;
+        gameLost = snapshot.gameLost;
+        justPowerpill = snapshot.justPowerpill;
+        justPill = snapshot.justPill;
+        globalGhostState = snapshot.globalGhostState;
+        PacMan.copy(snapshot.pacMan);
+        for (int i = 0; i < numGhosts; i++) {
+            ghosts[i].copy(snapshot.ghosts[i]);
+        }
+        generator.setState(snapshot.generator);
+    }
+
+    // Returns a copy of the game as it is now, which can be played on by itself, for example from
+    // another thread. The layout and its tables are shared, as in a new game from the MazeRepository;
+    // the pills, their distance fields, the agents and the random choices of the ghosts are copied.
+    // The copy is not shown in the visualisation.
+    public Environment fork() {
+        Environment copy = new Environment();
+        copy.shareLayout(this);
+        copy.maze = new short[mazeWidth][];
+        for (int x = 0; x < mazeWidth; x++) {
+            copy.maze[x] = maze[x].clone();
+        }
+        copy.visMaze = visMaze;
+        copy.mazeWidth = mazeWidth;
+        copy.mazeHeight = mazeHeight;
+        copy.spawnPoint = spawnPoint;
+        copy.firstStop = firstStop;
+        copy.mazeCornerPoints = mazeCornerPoints;
+        copy.ghostSpeeds = ghostSpeeds;
+        copy.steps = steps;
+        copy.totalPills = totalPills;
+        copy.totalPowerPills = totalPowerPills;
+        copy.gameLoaded = gameLoaded;
+
+        copy.bitboard = new MazeBitboard(bitboard);
+        copy.pillField = new PillField(pillField, copy.bitboard);
+        copy.powerPillField = (powerPillField != null) ? new PillField(powerPillField, copy.bitboard) : null;
+        copy.pillCounts = (pillCounts != null) ? new PillCounts(pillCounts) : null;
+        copy.PacMan = new Agent(PacMan);
+        copy.numGhosts = numGhosts;
+        copy.ghosts = new Agent[numGhosts];
+        for (int i = 0; i < numGhosts; i++) {
+            copy.ghosts[i] = new Agent(ghosts[i]);
+        }
+        copy.generator = new CopyableRandom(generator);
+        copy.startMarker = startMarker;
+        copy.pillsLeft = pillsLeft;
+        copy.powerPillsLeft = powerPillsLeft;
+        copy.gameEnded = gameEnded;
+        copy.gameLost = gameLost;
+        copy.justPowerpill = justPowerpill;
+        copy.justPill = justPill;
+        copy.globalGhostState = globalGhostState;
+        return copy;
+    }
+
     /*
      * PRINT FUNCTIONS
      */
     public void printVertices() {
-        for (int i = 0; i < vertices.size(); i++) {
-            short id = vertices.get(i).getID();
-            short x = vertices.get(i).getX();
-            short y = vertices.get(i).getY();
+        for (int i = 0; i < graph.getNumVertices(); i++) {
+            short x = graph.getX(i);
+            short y = graph.getY(i);
 
             vis.addItem(Globals.MAZE_GHOST, x, y, x, y, 0);
-            short[][] neighbors = vertices.get(i).getNeighbors();
-            for (int j = 0; j < neighbors.length; j++) {
-                System.out.print(neighbors[j][0] + "(" + neighbors[j][1] + "), ");
+            for (int edge = graph.firstEdge(i); edge < graph.lastEdge(i); edge++) {
+                System.out.print(graph.getEdgeTarget(edge) + "(" + graph.getEdgeLength(edge) + "), ");
             }
         }
     }
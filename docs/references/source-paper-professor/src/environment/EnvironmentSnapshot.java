@@ -1,10 +1,10 @@
-/*  
+/*
  *  Ms. Pac-Man Framework
- * 
+ *
  *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
  *  Department of Artificial Intelligence, University of Groningen.
- * 
- * 
+ *
+ *
  *  This program is free software: you can redistribute it and/or modify
  *  it under the terms of the GNU General Public License as published by
  *  the Free Software Foundation, either version 3 of the License, or
@@ -18,28 +18,36 @@
  *  You should have received a copy of the GNU General Public License
  *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *
- * 
+ *
  * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
- * 
- *  VERTEXCOMPARATOR
- *  This class is called to compare two vertices.
- * 
+ *
+ *  ENVIRONMENTSNAPSHOT
+ *  This class is called to hold the state of a game at one moment, as saved by
+ *  Environment.snapshot, so that the game can be returned to it with restore.
+ *  It holds only what changes during a game: the pill layers of the bitboard,
+ *  the agents, the ghost behaviour and the state of the random generator.
+ *  A snapshot can be restored any number of times, but only into the game it was taken from.
+ *
  */
 
 package environment;
 
-import java.util.Comparator;
+import pacman.Agent;
+import util.CopyableRandom;
+
+public class EnvironmentSnapshot {
 
-public class VertexComparator implements Comparator<Vertex> {
+    long[] pills;                   // The pills and power pills left, as in MazeBitboard
+    long[] powerPills;
+    int pillsLeft, powerPillsLeft;
+    int startMarker;
+    boolean gameEnded, gameLost;
+    boolean justPowerpill, justPill;
+    short globalGhostState;
+    Agent pacMan;
+    Agent[] ghosts;
+    CopyableRandom generator;
 
-    @Override
-    public int compare(Vertex a, Vertex b) {
-        if (a.getF_score() < b.getF_score()) {
-            return -1;
-        } else if (a.getF_score() > b.getF_score()) {
-            return 1;
-        } else {
-            return 0;
-        }
+    EnvironmentSnapshot() {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  LANDMARKS
+ *  This class is called to hold the distances between a few landmark vertices
+ *  and all other vertices of a maze. By the triangle inequality, these give a lower
+ *  bound on the distance between any two vertices, which A* uses as its heuristic
+ *  on mazes that are too large for a table of all distances.
+ *
+ */
+
+package environment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import util.IndexedMinHeap;
+
+public class Landmarks {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int[] landmarks;           // Vertex ID of each landmark
+    private final int[][] fromLandmark;      // For each landmark, the distance from it to every vertex
+    private final int[][] toLandmark;        // For each landmark, the distance from every vertex to it
+    private final MazeGraph graph;
+
+    // Chooses up to 'count' landmarks, each as far as possible from the ones chosen before,
+    // which places them around the edges of the maze where they give the best bounds.
+    public Landmarks(MazeGraph graph, int count) {
+        this.graph = graph;
+        int numvertices = graph.getNumVertices();
+        count = Math.min(count, numvertices);
+
+        // The edges of the graph are directed, so distances towards a landmark
+        // are found by searching the reversed graph.
+        int[] reverseOffset = new int[numvertices + 1];
+        for (int edge = 0; edge < graph.getNumEdges(); edge++) {
+            reverseOffset[graph.getEdgeTarget(edge) + 1]++;
+        }
+        for (int v = 0; v < numvertices; v++) {
+            reverseOffset[v + 1] += reverseOffset[v];
+        }
+        int[] reverseSource = new int[graph.getNumEdges()];
+        int[] reverseLength = new int[graph.getNumEdges()];
+        int[] fill = new int[numvertices];
+        for (int v = 0; v < numvertices; v++) {
+            for (int edge = graph.firstEdge(v); edge < graph.lastEdge(v); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                int slot = reverseOffset[target] + fill[target];
+                reverseSource[slot] = v;
+                reverseLength[slot] = graph.getEdgeLength(edge);
+                fill[target]++;
+            }
+        }
+
+        landmarks = new int[count];
+        fromLandmark = new int[count][];
+        toLandmark = new int[count][];
+        IndexedMinHeap openSet = new IndexedMinHeap(numvertices);
+
+        // The distance of every vertex to the nearest landmark chosen so far.
+        // The first landmark is the vertex farthest from an arbitrary one.
+        int[] nearest = new int[numvertices];
+        if (count > 0) {
+            dijkstra(0, openSet, nearest, null, null, null);
+            landmarks[0] = farthest(nearest);
+            for (int v = 0; v < numvertices; v++) {
+                nearest[v] = UNREACHABLE;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                landmarks[i] = farthest(nearest);
+            }
+            fromLandmark[i] = new int[numvertices];
+            toLandmark[i] = new int[numvertices];
+            dijkstra(landmarks[i], openSet, fromLandmark[i], null, null, null);
+            dijkstra(landmarks[i], openSet, toLandmark[i], reverseOffset, reverseSource, reverseLength);
+            for (int v = 0; v < numvertices; v++) {
+                if (fromLandmark[i][v] < nearest[v]) {
+                    nearest[v] = fromLandmark[i][v];
+                }
+            }
+        }
+    }
+
+    // Reads the landmarks stored by write(), from a compiled maze
+    public Landmarks(MazeGraph graph, ByteBuffer in) {
+        this.graph = graph;
+        landmarks = MazeImage.readInts(in);
+        fromLandmark = MazeImage.readIntTable(in);
+        toLandmark = MazeImage.readIntTable(in);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        MazeImage.writeInts(out, landmarks);
+        MazeImage.writeIntTable(out, fromLandmark);
+        MazeImage.writeIntTable(out, toLandmark);
+    }
+
+    private int farthest(int[] distances) {
+        // Returns the vertex with the largest distance.
+        // Vertices that cannot be reached at all come first, so that every part of the maze gets a landmark.
+        int best = 0;
+        for (int v = 1; v < distances.length; v++) {
+            if (distances[v] > distances[best]) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private void dijkstra(int source, IndexedMinHeap openSet, int[] dist,
+            int[] reverseOffset, int[] reverseSource, int[] reverseLength) {
+        // Fills 'dist' with the distance from the source to every vertex,
+        // or from every vertex to the source if the reversed edges are given.
+        for (int v = 0; v < dist.length; v++) {
+            dist[v] = UNREACHABLE;
+        }
+        openSet.clear();
+        dist[source] = 0;
+        openSet.add(source, 0);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            int first = (reverseOffset == null) ? graph.firstEdge(current) : reverseOffset[current];
+            int last = (reverseOffset == null) ? graph.lastEdge(current) : reverseOffset[current + 1];
+            for (int edge = first; edge < last; edge++) {
+                int neighbor = (reverseOffset == null) ? graph.getEdgeTarget(edge) : reverseSource[edge];
+                int length = (reverseOffset == null) ? graph.getEdgeLength(edge) : reverseLength[edge];
+                int tentative = dist[current] + length;
+                if (tentative < dist[neighbor]) {
+                    if (dist[neighbor] == UNREACHABLE) {
+                        openSet.add(neighbor, tentative);
+                    } else {
+                        openSet.decreaseKey(neighbor, tentative);
+                    }
+                    dist[neighbor] = tentative;
+                }
+            }
+        }
+    }
+
+    public int getNumLandmarks() {
+        return landmarks.length;
+    }
+
+    public int getLandmark(int i) {
+        return landmarks[i];
+    }
+
+    // Returns a lower bound on the length of the shortest path from one vertex to another.
+    // For every landmark L, d(v,goal) >= d(L,goal) - d(L,v) and d(v,goal) >= d(v,L) - d(goal,L).
+    public int lowerBound(int vertex, int goal) {
+        int bound = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            int[] from = fromLandmark[i];
+            int[] to = toLandmark[i];
+            if (from[vertex] != UNREACHABLE && from[goal] != UNREACHABLE && from[goal] - from[vertex] > bound) {
+                bound = from[goal] - from[vertex];
+            }
+            if (to[vertex] != UNREACHABLE && to[goal] != UNREACHABLE && to[vertex] - to[goal] > bound) {
+                bound = to[vertex] - to[goal];
+            }
+        }
+        return bound;
+    }
+}
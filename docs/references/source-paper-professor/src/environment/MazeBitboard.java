@@ -0,0 +1,366 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEBITBOARD
+ *  This class is called to hold the maze as layers of bits, one bit per position.
+ *  Every row of the maze is stored in one or more longs, bit x % 64 of word x / 64.
+ *  A breadth-first search then expands a whole frontier at once, by shifting the rows
+ *  left, right, up and down, instead of queuing positions one at a time.
+ *
+ */
+
+package environment;
+
+import global.Globals;
+import java.util.Arrays;
+
+public class MazeBitboard {
+
+    private final int width;
+    private final int height;
+    private final int words;                 // Number of longs per row
+    private final long lastWordMask;         // The bits of the last word of a row that lie inside the maze
+    private final long[] walls;              // Layer of all walls
+    private final long[] passable;           // Layer of all positions that can be entered from anywhere, which leaves out the spawn area
+    private final long[] spawnArea;          // Layer of the spawn area, which can only be entered from within or through its gate
+    private final long[] spawnGate;          // Layer of the positions the spawn area can be entered from
+    private final long[] pills;              // Layer of all pills and power pills still in the maze
+    private final long[] powerPills;         // Layer of all power pills still in the maze
+    // Scratch layers for the searches
+    private final long[] frontier;
+    private final long[] next;
+    private final long[] visited;
+    private final long[] gateFrontier;
+    private final long[] singleSource;
+    private final long[] singleBlocked;
+
+    public MazeBitboard(short[][] maze, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) / 64;
+        this.lastWordMask = (width % 64 == 0) ? -1L : (1L << (width % 64)) - 1;
+
+        walls = newLayer();
+        passable = newLayer();
+        spawnArea = newLayer();
+        spawnGate = newLayer();
+        pills = newLayer();
+        powerPills = newLayer();
+        frontier = newLayer();
+        next = newLayer();
+        visited = newLayer();
+        gateFrontier = newLayer();
+        singleSource = newLayer();
+        singleBlocked = newLayer();
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                short item = maze[x][y];
+                if (item == Globals.MAZE_WALL) {
+                    set(walls, x, y);
+                } else if (item == Globals.MAZE_GHOST_SPAWN_AREA) {
+                    set(spawnArea, x, y);
+                } else {
+                    set(passable, x, y);
+                }
+                if (item == Globals.MAZE_GHOST_SPAWN_AREA || item == Globals.MAZE_GHOST_SPAWN_POINT
+                        || item == Globals.MAZE_GHOST_FIRST_STOP) {
+                    set(spawnGate, x, y);
+                }
+                if (item == Globals.MAZE_PILL || item == Globals.MAZE_POWER_PILL) {
+                    set(pills, x, y);
+                }
+                if (item == Globals.MAZE_POWER_PILL) {
+                    set(powerPills, x, y);
+                }
+            }
+        }
+    }
+
+    public MazeBitboard(MazeBitboard board) {
+        // Copies the pills of another board; the layers of the layout never change, and are shared
+        this.width = board.width;
+        this.height = board.height;
+        this.words = board.words;
+        this.lastWordMask = board.lastWordMask;
+
+        walls = board.walls;
+        passable = board.passable;
+        spawnArea = board.spawnArea;
+        spawnGate = board.spawnGate;
+        pills = board.pills.clone();
+        powerPills = board.powerPills.clone();
+        frontier = newLayer();
+        next = newLayer();
+        visited = newLayer();
+        gateFrontier = newLayer();
+        singleSource = newLayer();
+        singleBlocked = newLayer();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Returns an empty layer the size of the maze
+    public long[] newLayer() {
+        return new long[height * words];
+    }
+
+    public void set(long[] layer, int x, int y) {
+        layer[y * words + (x >> 6)] |= 1L << (x & 63);
+    }
+
+    public void clear(long[] layer, int x, int y) {
+        layer[y * words + (x >> 6)] &= ~(1L << (x & 63));
+    }
+
+    public boolean get(long[] layer, int x, int y) {
+        return (layer[y * words + (x >> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    // Returns the number of positions set in the layer
+    public int count(long[] layer) {
+        int count = 0;
+        for (int i = 0; i < layer.length; i++) {
+            count += Long.bitCount(layer[i]);
+        }
+        return count;
+    }
+
+    // Returns the index of the first position set in the layer at or after the given index,
+    // or -1 if there is none. Indices run row by row; see indexX and indexY.
+    // Empty stretches of the maze are skipped 64 positions at a time.
+    public int nextSet(long[] layer, int index) {
+        int i = index >> 6;
+        if (i >= layer.length) {
+            return -1;
+        }
+        long bits = layer[i] & (-1L << (index & 63));
+        while (bits == 0) {
+            i++;
+            if (i == layer.length) {
+                return -1;
+            }
+            bits = layer[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    public int indexX(int index) {
+        return index % (words << 6);
+    }
+
+    public int indexY(int index) {
+        return index / (words << 6);
+    }
+
+    // Returns whether a single step from (fromX,fromY) onto the position next to it, (toX,toY), is allowed.
+    public boolean canStep(int fromX, int fromY, int toX, int toY) {
+        if (toX < 0 || toY < 0 || toX >= width || toY >= height) {
+            return false;
+        }
+        return get(passable, toX, toY) || (get(spawnArea, toX, toY) && get(spawnGate, fromX, fromY));
+    }
+
+    // The layers below are shared, and should not be changed.
+    public long[] getWalls() {
+        return walls;
+    }
+
+    public long[] getPassable() {
+        return passable;
+    }
+
+    public long[] getPills() {
+        return pills;
+    }
+
+    public long[] getPowerPills() {
+        return powerPills;
+    }
+
+    // Should be called when an item is eaten, to keep the pill layers up to date.
+    public void removeItem(int x, int y) {
+        clear(pills, x, y);
+        clear(powerPills, x, y);
+    }
+
+    // Should be called when an item is put back, see Environment.restore
+    public void addItem(int x, int y, boolean powerPill) {
+        set(pills, x, y);
+        if (powerPill) {
+            set(powerPills, x, y);
+        }
+    }
+
+    // Returns the number of breadth-first steps from the sources to the nearest target,
+    // or -1 if no target lies within maxDistance steps (-1 for no limit).
+    // Blocked positions are never entered; they may be null.
+    public int nearest(long[] sources, long[] targets, long[] blocked, int maxDistance) {
+        start(sources, blocked);
+        int distance = 0;
+        while (true) {
+            if (intersects(frontier, targets)) {
+                return distance;
+            }
+            if (distance == maxDistance || !expand()) {
+                return -1;
+            }
+            distance++;
+        }
+    }
+
+    // Returns the number of breadth-first steps from (x,y) to the nearest target, never entering
+    // (blockedX,blockedY), or -1 if no target lies within maxDistance steps (-1 for no limit).
+    // Unlike nearest, it needs no layers of the caller: the two positions are set in scratch layers,
+    // and cleared again afterwards.
+    public int nearestFrom(int x, int y, long[] targets, int blockedX, int blockedY, int maxDistance) {
+        set(singleSource, x, y);
+        set(singleBlocked, blockedX, blockedY);
+        int distance = nearest(singleSource, targets, singleBlocked, maxDistance);
+        clear(singleSource, x, y);
+        clear(singleBlocked, blockedX, blockedY);
+        return distance;
+    }
+
+    // Fills 'distances' (indexed x * height + y, like the rest of the environment) with the
+    // number of breadth-first steps from the nearest source, or -1 where no source can be reached
+    // within maxDistance steps (-1 for no limit). Blocked positions are never entered; they may be null.
+    // Returns the largest distance that was filled in.
+    public int distanceField(long[] sources, long[] blocked, int maxDistance, short[] distances) {
+        Arrays.fill(distances, (short) -1);
+        start(sources, blocked);
+        int distance = 0;
+        while (true) {
+            store(frontier, distance, distances);
+            if (distance == maxDistance || !expand()) {
+                return distance;
+            }
+            distance++;
+        }
+    }
+
+    private void start(long[] sources, long[] blocked) {
+        for (int i = 0; i < frontier.length; i++) {
+            frontier[i] = sources[i];
+            visited[i] = sources[i];
+            if (blocked != null) {
+                visited[i] |= blocked[i];
+            }
+        }
+    }
+
+    private boolean expand() {
+        // Moves the frontier one step in every direction, onto positions that were not visited yet.
+        // These are the passable positions, and the spawn area if it is entered through its gate,
+        // which are the same moves the distance oracle allows.
+        // Returns false if the new frontier is empty.
+        spread(frontier, next);
+        for (int i = 0; i < frontier.length; i++) {
+            next[i] &= passable[i];
+        }
+
+        boolean atGate = false;
+        for (int i = 0; i < frontier.length; i++) {
+            gateFrontier[i] = frontier[i] & spawnGate[i];
+            if (gateFrontier[i] != 0) {
+                atGate = true;
+            }
+        }
+        if (atGate) {
+            // 'frontier' is not needed anymore, so it holds the spread of the gate
+            spread(gateFrontier, frontier);
+            for (int i = 0; i < frontier.length; i++) {
+                next[i] |= frontier[i] & spawnArea[i];
+            }
+        }
+
+        boolean any = false;
+        for (int i = 0; i < frontier.length; i++) {
+            long reached = next[i] & ~visited[i];
+            frontier[i] = reached;
+            visited[i] |= reached;
+            if (reached != 0) {
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    private void spread(long[] from, long[] to) {
+        // Stores in 'to' all positions one step away from a position in 'from', ignoring walls.
+        for (int y = 0; y < height; y++) {
+            int row = y * words;
+            int up = ((y == 0) ? height - 1 : y - 1) * words;
+            int down = ((y == height - 1) ? 0 : y + 1) * words;
+            for (int w = 0; w < words; w++) {
+                long current = from[row + w];
+                // Moving right shifts every bit up by one, moving left down by one
+                long moved = (current << 1) | (current >>> 1);
+                if (w > 0) {
+                    moved |= from[row + w - 1] >>> 63;
+                }
+                if (w < words - 1) {
+                    moved |= from[row + w + 1] << 63;
+                }
+                moved |= from[up + w] | from[down + w];
+                to[row + w] = moved;
+            }
+            // Moving past the edge of the maze teleports to the opposite edge
+            if (get(from, width - 1, y)) {
+                to[row] |= 1L;
+            }
+            if (get(from, 0, y)) {
+                set(to, width - 1, y);
+            }
+            to[row + words - 1] &= lastWordMask;
+        }
+    }
+
+    private boolean intersects(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void store(long[] layer, int distance, short[] distances) {
+        for (int y = 0; y < height; y++) {
+            for (int w = 0; w < words; w++) {
+                long bits = layer[y * words + w];
+                while (bits != 0) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    distances[x * height + y] = (short) distance;
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+}
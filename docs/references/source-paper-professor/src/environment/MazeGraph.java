@@ -0,0 +1,160 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEGRAPH
+ *  This class is called to hold the vertices of a maze (intersections and corners)
+ *  and the hallways connecting them. All data is stored in flat arrays:
+ *  the edges leaving vertex v are numbered firstEdge(v) up to lastEdge(v).
+ *  The graph never changes after it is built, so it may be shared between games.
+ *
+ */
+
+package environment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class MazeGraph {
+
+    private final int width;
+    private final int height;
+    private final int numVertices;
+    private final short[] vertexX;           // X position of each vertex
+    private final short[] vertexY;           // Y position of each vertex
+    private final int[] vertexAt;            // Maps a maze position (x * height + y) to a vertex ID, -1 if none
+    private final int[] edgeOffset;          // Edges of vertex v are stored from edgeOffset[v] up to edgeOffset[v + 1]
+    private final int[] edgeTarget;          // Vertex ID at the other end of each edge
+    private final short[] edgeLength;        // Length of the hallway along each edge
+    private final short[] edgeDirection;     // Action that leads from the vertex into each hallway
+
+    // Each row of neighbors holds {vertex ID, distance, direction}, as found by walking the hallways
+    public MazeGraph(int width, int height, short[] vertexX, short[] vertexY, int[][][] neighbors) {
+        this.width = width;
+        this.height = height;
+        this.numVertices = vertexX.length;
+        this.vertexX = vertexX.clone();
+        this.vertexY = vertexY.clone();
+
+        vertexAt = new int[width * height];
+        for (int i = 0; i < vertexAt.length; i++) {
+            vertexAt[i] = -1;
+        }
+        for (int v = 0; v < numVertices; v++) {
+            vertexAt[vertexX[v] * height + vertexY[v]] = v;
+        }
+
+        edgeOffset = new int[numVertices + 1];
+        for (int v = 0; v < numVertices; v++) {
+            edgeOffset[v + 1] = edgeOffset[v] + neighbors[v].length;
+        }
+
+        int numEdges = edgeOffset[numVertices];
+        edgeTarget = new int[numEdges];
+        edgeLength = new short[numEdges];
+        edgeDirection = new short[numEdges];
+        for (int v = 0; v < numVertices; v++) {
+            for (int i = 0; i < neighbors[v].length; i++) {
+                int edge = edgeOffset[v] + i;
+                edgeTarget[edge] = neighbors[v][i][0];
+                edgeLength[edge] = (short) neighbors[v][i][1];
+                edgeDirection[edge] = (short) neighbors[v][i][2];
+            }
+        }
+    }
+
+    // Reads a graph stored by write(), from a compiled maze
+    public MazeGraph(ByteBuffer in) {
+        width = in.getInt();
+        height = in.getInt();
+        vertexX = MazeImage.readShorts(in);
+        vertexY = MazeImage.readShorts(in);
+        numVertices = vertexX.length;
+        vertexAt = MazeImage.readInts(in);
+        edgeOffset = MazeImage.readInts(in);
+        edgeTarget = MazeImage.readInts(in);
+        edgeLength = MazeImage.readShorts(in);
+        edgeDirection = MazeImage.readShorts(in);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        MazeImage.writeShorts(out, vertexX);
+        MazeImage.writeShorts(out, vertexY);
+        MazeImage.writeInts(out, vertexAt);
+        MazeImage.writeInts(out, edgeOffset);
+        MazeImage.writeInts(out, edgeTarget);
+        MazeImage.writeShorts(out, edgeLength);
+        MazeImage.writeShorts(out, edgeDirection);
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    public int getNumEdges() {
+        return edgeOffset[numVertices];
+    }
+
+    public short getX(int vertex) {
+        return vertexX[vertex];
+    }
+
+    public short getY(int vertex) {
+        return vertexY[vertex];
+    }
+
+    // Returns the ID of the vertex located at (x,y), or -1 if there is none.
+    public int getVertex(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        return vertexAt[x * height + y];
+    }
+
+    public int firstEdge(int vertex) {
+        return edgeOffset[vertex];
+    }
+
+    // Returns the index just past the last edge of a vertex
+    public int lastEdge(int vertex) {
+        return edgeOffset[vertex + 1];
+    }
+
+    public int getDegree(int vertex) {
+        return edgeOffset[vertex + 1] - edgeOffset[vertex];
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    public short getEdgeLength(int edge) {
+        return edgeLength[edge];
+    }
+
+    public short getEdgeDirection(int edge) {
+        return edgeDirection[edge];
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEHIERARCHY
+ *  This class is called to plan paths on mazes that are too large for a table of
+ *  all distances. The maze is divided into square clusters. Vertices with a hallway
+ *  to another cluster are entrances, and the distances between the entrances of a
+ *  cluster are computed once. A path is then planned over the entrances only:
+ *  into the start's cluster, across the hallways between clusters, and out of the
+ *  goal's cluster. Only the searches inside the start and goal clusters look at
+ *  the other vertices, and the landmarks steer the search over the entrances.
+ *  The result is the exact shortest path length, and the second vertex on that
+ *  path, which is all callers use.
+ *
+ */
+
+package environment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import util.IndexedMinHeap;
+
+public class MazeHierarchy {
+
+    private final MazeGraph graph;
+    private final Landmarks landmarks;       // Lower bounds on the distance to the goal, or null
+    private final int numClusters;
+    private final int[] vertexCluster;       // Cluster of each vertex
+    private final boolean[] entrance;        // Whether a vertex has a hallway to another cluster
+    private final int[] clusterOffset;       // Entrances of cluster c are stored from clusterOffset[c] up to clusterOffset[c + 1]
+    private final int[] clusterEntrances;
+    private final int[] innerOffset;         // Paths inside the cluster from entrance v are stored from innerOffset[v] up to innerOffset[v + 1]
+    private final int[] innerTarget;         // Entrance at the end of each path inside a cluster
+    private final int[] innerLength;         // Length of each path inside a cluster
+
+    // Scratch space for the searches inside a cluster, reused between queries.
+    // A vertex only counts as reached if it carries the number of the current search.
+    // A hierarchy copied for another game makes its own scratch space on its first query.
+    private IndexedMinHeap clusterOpenSet = null;
+    private int[] clusterDist;
+    private int[] clusterHop;                // Second vertex on the path from the source (or to the source, searching backwards)
+    private int[] clusterVisited;
+    private boolean[] clusterThrough;        // Whether the path from the source passes another entrance
+    private int clusterSearch = 0;
+    // The search backwards from the goal is kept while the entrances are searched
+    private int[] goalDist;
+    private int[] goalHop;                   // Next vertex on the path towards the goal
+    private int[] goalVisited;
+    // Scratch space for the search over the entrances
+    private IndexedMinHeap openSet;
+    private int[] dist;
+    private int[] bound;                     // Lower bound on the distance to the goal, from the landmarks
+    private int[] hop;                       // Second vertex on the path from the start
+    private int[] visited;
+    private int[] closed;
+    private int[] blocked;                   // Holds the number of the query in which a vertex was blacklisted
+    private int[] dirty;                     // Holds the number of the query in which a cluster had a blacklisted vertex
+    private int query = 1;                  // Searches made while building run as query 1, in which nothing is blacklisted
+    private int goal;                       // Goal of the current query
+
+    // Reverse edges, to search backwards from the goal
+    private final int[] reverseOffset;
+    private final int[] reverseSource;
+    private final int[] reverseLength;
+
+    // The landmarks guide the search over the entrances towards the goal; they may be null.
+    public MazeHierarchy(MazeGraph graph, int width, int height, int clusterSize, Landmarks landmarks) {
+        this(graph, landmarks, assignClusters(graph, height, clusterSize),
+                ((width + clusterSize - 1) / clusterSize) * ((height + clusterSize - 1) / clusterSize), null);
+    }
+
+    // Reads a hierarchy stored by write(), from a compiled maze.
+    // Only the paths inside the clusters are read; everything else follows from the clusters in a single pass.
+    public MazeHierarchy(MazeGraph graph, Landmarks landmarks, ByteBuffer in) {
+        this(graph, landmarks, MazeImage.readInts(in), in.getInt(), in);
+    }
+
+    // Shares the clusters and the paths inside them with a hierarchy of the same maze,
+    // so that another game can search them at the same time.
+    public MazeHierarchy(MazeHierarchy other) {
+        graph = other.graph;
+        landmarks = other.landmarks;
+        numClusters = other.numClusters;
+        vertexCluster = other.vertexCluster;
+        entrance = other.entrance;
+        clusterOffset = other.clusterOffset;
+        clusterEntrances = other.clusterEntrances;
+        innerOffset = other.innerOffset;
+        innerTarget = other.innerTarget;
+        innerLength = other.innerLength;
+        reverseOffset = other.reverseOffset;
+        reverseSource = other.reverseSource;
+        reverseLength = other.reverseLength;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        MazeImage.writeInts(out, vertexCluster);
+        out.writeInt(numClusters);
+        MazeImage.writeInts(out, innerOffset);
+        MazeImage.writeInts(out, innerTarget);
+        MazeImage.writeInts(out, innerLength);
+    }
+
+    private static int[] assignClusters(MazeGraph graph, int height, int clusterSize) {
+        // Returns the cluster of each vertex; clusters are numbered by column, then row
+        int rows = (height + clusterSize - 1) / clusterSize;
+        int[] clusters = new int[graph.getNumVertices()];
+        for (int v = 0; v < clusters.length; v++) {
+            clusters[v] = (graph.getX(v) / clusterSize) * rows + graph.getY(v) / clusterSize;
+        }
+        return clusters;
+    }
+
+    private MazeHierarchy(MazeGraph graph, Landmarks landmarks, int[] vertexCluster, int numClusters, ByteBuffer in) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.vertexCluster = vertexCluster;
+        this.numClusters = numClusters;
+        int numvertices = graph.getNumVertices();
+
+        reverseOffset = new int[numvertices + 1];
+        for (int edge = 0; edge < graph.getNumEdges(); edge++) {
+            reverseOffset[graph.getEdgeTarget(edge) + 1]++;
+        }
+        for (int v = 0; v < numvertices; v++) {
+            reverseOffset[v + 1] += reverseOffset[v];
+        }
+        reverseSource = new int[graph.getNumEdges()];
+        reverseLength = new int[graph.getNumEdges()];
+        int[] fill = new int[numvertices];
+        for (int v = 0; v < numvertices; v++) {
+            for (int edge = graph.firstEdge(v); edge < graph.lastEdge(v); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                int slot = reverseOffset[target] + fill[target];
+                reverseSource[slot] = v;
+                reverseLength[slot] = graph.getEdgeLength(edge);
+                fill[target]++;
+            }
+        }
+
+        // A vertex is an entrance if a hallway leads from it to another cluster, or into it from one
+        entrance = new boolean[numvertices];
+        for (int v = 0; v < numvertices; v++) {
+            for (int edge = graph.firstEdge(v); edge < graph.lastEdge(v); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (vertexCluster[target] != vertexCluster[v]) {
+                    entrance[v] = true;
+                    entrance[target] = true;
+                }
+            }
+        }
+
+        clusterOffset = new int[numClusters + 1];
+        for (int v = 0; v < numvertices; v++) {
+            if (entrance[v]) {
+                clusterOffset[vertexCluster[v] + 1]++;
+            }
+        }
+        for (int c = 0; c < numClusters; c++) {
+            clusterOffset[c + 1] += clusterOffset[c];
+        }
+        clusterEntrances = new int[clusterOffset[numClusters]];
+        int[] clusterFill = new int[numClusters];
+        for (int v = 0; v < numvertices; v++) {
+            if (entrance[v]) {
+                int c = vertexCluster[v];
+                clusterEntrances[clusterOffset[c] + clusterFill[c]] = v;
+                clusterFill[c]++;
+            }
+        }
+
+        if (in != null) {
+            innerOffset = MazeImage.readInts(in);
+            innerTarget = MazeImage.readInts(in);
+            innerLength = MazeImage.readInts(in);
+            return;
+        }
+
+        // Search every cluster from each of its entrances, and store the paths to the other entrances.
+        // A path that passes another entrance on the way is left out, as it is made up of
+        // the stored paths to and from that entrance. This keeps the search over the entrances small.
+        allocateScratch();
+        innerOffset = new int[numvertices + 1];
+        int count = 0;
+        for (int v = 0; v < numvertices; v++) {
+            if (entrance[v]) {
+                count += clusterOffset[vertexCluster[v] + 1] - clusterOffset[vertexCluster[v]] - 1;
+            }
+        }
+        innerTarget = new int[count];
+        innerLength = new int[count];
+        count = 0;
+        for (int v = 0; v < numvertices; v++) {
+            innerOffset[v] = count;
+            if (entrance[v]) {
+                searchCluster(v, false);
+                int c = vertexCluster[v];
+                for (int i = clusterOffset[c]; i < clusterOffset[c + 1]; i++) {
+                    int other = clusterEntrances[i];
+                    if (other != v && clusterVisited[other] == clusterSearch && !clusterThrough[other]) {
+                        innerTarget[count] = other;
+                        innerLength[count] = clusterDist[other];
+                        count++;
+                    }
+                }
+            }
+        }
+        innerOffset[numvertices] = count;
+    }
+
+    private void allocateScratch() {
+        int numvertices = graph.getNumVertices();
+        clusterOpenSet = new IndexedMinHeap(numvertices);
+        clusterDist = new int[numvertices];
+        clusterHop = new int[numvertices];
+        clusterVisited = new int[numvertices];
+        clusterThrough = new boolean[numvertices];
+        goalDist = new int[numvertices];
+        goalHop = new int[numvertices];
+        goalVisited = new int[numvertices];
+        openSet = new IndexedMinHeap(numvertices);
+        dist = new int[numvertices];
+        bound = new int[numvertices];
+        hop = new int[numvertices];
+        visited = new int[numvertices];
+        closed = new int[numvertices];
+        blocked = new int[numvertices];
+        dirty = new int[numClusters];
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public int getCluster(int vertex) {
+        return vertexCluster[vertex];
+    }
+
+    public boolean isEntrance(int vertex) {
+        return entrance[vertex];
+    }
+
+    // Returns the length of the shortest path between two vertices that avoids the blacklisted vertices,
+    // and the second vertex on that path (-1 if start and goal are the same).
+    // The length is -1 if there is no such path.
+    public int[] findPath(int startID, int goalID, int[] blacklist) {
+        int[] result = {-1, -1};
+        if (startID == goalID) {
+            result[0] = 0;
+            return result;
+        }
+        if (clusterOpenSet == null) {
+            allocateScratch();
+        }
+
+        goal = goalID;
+        query++;
+        if (query == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            Arrays.fill(closed, 0);
+            Arrays.fill(blocked, 0);
+            Arrays.fill(dirty, 0);
+            Arrays.fill(goalVisited, 0);
+            query = 1;
+        }
+        // Blacklisted vertices may lie on the stored paths inside their cluster,
+        // so those clusters are searched again for this query.
+        if (blacklist != null) {
+            for (int i = 0; i < blacklist.length; i++) {
+                blocked[blacklist[i]] = query;
+                dirty[vertexCluster[blacklist[i]]] = query;
+            }
+        }
+
+        // Search backwards from the goal through its cluster, and keep the result
+        // for the entrances of that cluster and the start
+        searchCluster(goalID, true);
+        int goalCluster = vertexCluster[goalID];
+        for (int i = clusterOffset[goalCluster]; i < clusterOffset[goalCluster + 1]; i++) {
+            copyGoal(clusterEntrances[i]);
+        }
+        copyGoal(startID);
+
+        openSet.clear();
+        dist[startID] = 0;
+        hop[startID] = -1;
+        visited[startID] = query;
+        openSet.add(startID, 0);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            if (current == goalID) {
+                result[0] = dist[current];
+                result[1] = hop[current];
+                return result;
+            }
+            closed[current] = query;
+            int cluster = vertexCluster[current];
+
+            // Go through the goal's cluster to the goal itself
+            if (goalVisited[current] == query) {
+                relax(goalID, dist[current] + goalDist[current], (current == startID) ? goalHop[current] : hop[current]);
+            }
+
+            // Cross the hallways to other clusters
+            for (int edge = graph.firstEdge(current); edge < graph.lastEdge(current); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (vertexCluster[target] != cluster && blocked[target] != query) {
+                    relax(target, dist[current] + graph.getEdgeLength(edge), (current == startID) ? target : hop[current]);
+                }
+            }
+
+            // Move to the other entrances of this cluster
+            if (current == startID || dirty[cluster] == query) {
+                searchCluster(current, false);
+                for (int i = clusterOffset[cluster]; i < clusterOffset[cluster + 1]; i++) {
+                    int other = clusterEntrances[i];
+                    if (other != current && clusterVisited[other] == clusterSearch) {
+                        relax(other, dist[current] + clusterDist[other], (current == startID) ? clusterHop[other] : hop[current]);
+                    }
+                }
+            } else {
+                for (int i = innerOffset[current]; i < innerOffset[current + 1]; i++) {
+                    relax(innerTarget[i], dist[current] + innerLength[i], hop[current]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void copyGoal(int vertex) {
+        // Stores the result of the backwards search from the goal for one vertex
+        if (clusterVisited[vertex] == clusterSearch) {
+            goalDist[vertex] = clusterDist[vertex];
+            goalHop[vertex] = clusterHop[vertex];
+            goalVisited[vertex] = query;
+        }
+    }
+
+    private void relax(int vertex, int distance, int firstHop) {
+        if (blocked[vertex] == query || closed[vertex] == query) {
+            return;
+        }
+        if (visited[vertex] != query) {
+            visited[vertex] = query;
+            dist[vertex] = distance;
+            bound[vertex] = (landmarks == null) ? 0 : landmarks.lowerBound(vertex, goal);
+            hop[vertex] = firstHop;
+            openSet.add(vertex, distance + bound[vertex]);
+        } else if (distance < dist[vertex]) {
+            dist[vertex] = distance;
+            hop[vertex] = firstHop;
+            openSet.decreaseKey(vertex, distance + bound[vertex]);
+        }
+    }
+
+    private void searchCluster(int source, boolean backwards) {
+        // Runs Dijkstra from the source over the vertices of its own cluster, avoiding blacklisted vertices.
+        // Searching forwards, clusterHop holds the second vertex on the path from the source;
+        // searching backwards, it holds the next vertex on the path towards the source.
+        clusterSearch++;
+        if (clusterSearch == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(clusterVisited, 0);
+            clusterSearch = 1;
+        }
+        int search = clusterSearch;
+        int cluster = vertexCluster[source];
+
+        clusterOpenSet.clear();
+        clusterDist[source] = 0;
+        clusterHop[source] = -1;
+        clusterThrough[source] = false;
+        clusterVisited[source] = search;
+        clusterOpenSet.add(source, 0);
+
+        while (!clusterOpenSet.isEmpty()) {
+            int current = clusterOpenSet.poll();
+            int first = backwards ? reverseOffset[current] : graph.firstEdge(current);
+            int last = backwards ? reverseOffset[current + 1] : graph.lastEdge(current);
+            for (int edge = first; edge < last; edge++) {
+                int neighbor = backwards ? reverseSource[edge] : graph.getEdgeTarget(edge);
+                int length = backwards ? reverseLength[edge] : graph.getEdgeLength(edge);
+                if (vertexCluster[neighbor] != cluster || blocked[neighbor] == query) {
+                    continue;
+                }
+                int tentative = clusterDist[current] + length;
+                int firstHop;
+                if (backwards) {
+                    firstHop = current;
+                } else {
+                    firstHop = (current == source) ? neighbor : clusterHop[current];
+                }
+                boolean through = clusterThrough[current] || (current != source && entrance[current]);
+                if (clusterVisited[neighbor] != search) {
+                    clusterVisited[neighbor] = search;
+                    clusterDist[neighbor] = tentative;
+                    clusterHop[neighbor] = firstHop;
+                    clusterThrough[neighbor] = through;
+                    clusterOpenSet.add(neighbor, tentative);
+                } else if (tentative < clusterDist[neighbor] && clusterOpenSet.contains(neighbor)) {
+                    clusterDist[neighbor] = tentative;
+                    clusterHop[neighbor] = firstHop;
+                    clusterThrough[neighbor] = through;
+                    clusterOpenSet.decreaseKey(neighbor, tentative);
+                }
+            }
+        }
+    }
+}
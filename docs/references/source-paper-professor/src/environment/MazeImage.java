@@ -0,0 +1,242 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEIMAGE
+ *  This class is called to read and write compiled mazes. A compiled maze holds
+ *  the grid together with every table built from it (the vertices, hallways,
+ *  enclosing vertices and distances), so that a game can start without parsing
+ *  or preprocessing anything. The file starts with a magic number, a version and
+ *  the settings the tables were built with (the limits on the vertex tables and
+ *  the distance oracle, the number of landmarks, the cluster size and whether
+ *  and from how many vertices on a hierarchy is built), followed
+ *  by the sections written by Environment.writeCompiled. Arrays are stored
+ *  as their length followed by their values, big-endian, and are read from the
+ *  memory-mapped file in bulk. A file compiled with other settings is not used,
+ *  as its tables would not be the ones the settings ask for.
+ *
+ */
+
+package environment;
+
+import global.Globals;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MazeImage {
+
+    public static final int MAGIC = 0x504D5A43;      // "PMZC"
+    public static final int VERSION = 3;             // Should be raised whenever the layout of the file changes
+    public static final String EXTENSION = ".maze";
+
+    private MazeImage() {
+    }
+
+    // Returns the name of the compiled file for a maze file, e.g. data/maze/a.txt becomes data/maze/a.maze
+    public static String compiledName(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot > filename.lastIndexOf(File.separatorChar) && dot > filename.lastIndexOf('/')) {
+            filename = filename.substring(0, dot);
+        }
+        return filename + EXTENSION;
+    }
+
+    // Returns the name of the maze file a compiled file was made from, e.g. data/maze/a.maze becomes data/maze/a.txt
+    public static String sourceName(String filename) {
+        return filename.substring(0, filename.length() - EXTENSION.length()) + ".txt";
+    }
+
+    public static boolean isCompiled(String filename) {
+        return filename.endsWith(EXTENSION);
+    }
+
+    // Returns whether a compiled file exists for the maze file that is at least as new as the maze itself.
+    // Its version and settings are only checked when it is mapped.
+    public static boolean hasCompiled(String filename) {
+        File source = new File(filename);
+        File compiled = new File(compiledName(filename));
+        return compiled.isFile() && compiled.lastModified() >= source.lastModified();
+    }
+
+    // The settings the tables of a maze are built with, in the order they are stored in the header
+    private static int[] settings() {
+        return new int[]{Globals.maxTableVertices, Globals.maxOracleCells, Globals.numLandmarks, Globals.clusterSize,
+                Globals.hierarchicalPaths ? 1 : 0, Globals.minHierarchyVertices};
+    }
+
+    // Maps a compiled maze into memory, and checks its magic number, version and settings.
+    public static ByteBuffer map(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a compiled maze");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename + " was compiled as version " + version + ", expected version " + VERSION);
+            }
+            int[] settings = settings();
+            for (int i = 0; i < settings.length; i++) {
+                if (buffer.remaining() < 4 || buffer.getInt() != settings[i]) {
+                    throw new IOException(filename + " was compiled with other table settings");
+                }
+            }
+            return buffer;
+        } finally {
+            // The mapping stays valid after the file is closed
+            file.close();
+        }
+    }
+
+    public static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        int[] settings = settings();
+        for (int i = 0; i < settings.length; i++) {
+            out.writeInt(settings[i]);
+        }
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    public static byte[] readBytes(ByteBuffer in) {
+        byte[] values = new byte[in.getInt()];
+        in.get(values);
+        return values;
+    }
+
+    public static void writeBooleans(DataOutputStream out, boolean[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeByte(values[i] ? 1 : 0);
+        }
+    }
+
+    public static boolean[] readBooleans(ByteBuffer in) {
+        boolean[] values = new boolean[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.get() != 0;
+        }
+        return values;
+    }
+
+    public static void writeShorts(DataOutputStream out, short[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeShort(values[i]);
+        }
+    }
+
+    public static short[] readShorts(ByteBuffer in) {
+        short[] values = new short[in.getInt()];
+        in.asShortBuffer().get(values);
+        in.position(in.position() + 2 * values.length);
+        return values;
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    public static double[] readDoubles(ByteBuffer in) {
+        double[] values = new double[in.getInt()];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+
+    // Tables of rows are stored as the number of rows, followed by each row; a missing row has length -1.
+    public static void writeShortTable(DataOutputStream out, short[][] rows) throws IOException {
+        out.writeInt(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == null) {
+                out.writeInt(-1);
+            } else {
+                writeShorts(out, rows[i]);
+            }
+        }
+    }
+
+    public static short[][] readShortTable(ByteBuffer in) {
+        short[][] rows = new short[in.getInt()][];
+        for (int i = 0; i < rows.length; i++) {
+            int length = in.getInt(in.position());
+            if (length == -1) {
+                in.getInt();
+            } else {
+                rows[i] = readShorts(in);
+            }
+        }
+        return rows;
+    }
+
+    public static void writeIntTable(DataOutputStream out, int[][] rows) throws IOException {
+        out.writeInt(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == null) {
+                out.writeInt(-1);
+            } else {
+                writeInts(out, rows[i]);
+            }
+        }
+    }
+
+    public static int[][] readIntTable(ByteBuffer in) {
+        int[][] rows = new int[in.getInt()][];
+        for (int i = 0; i < rows.length; i++) {
+            int length = in.getInt(in.position());
+            if (length == -1) {
+                in.getInt();
+            } else {
+                rows[i] = readInts(in);
+            }
+        }
+        return rows;
+    }
+}
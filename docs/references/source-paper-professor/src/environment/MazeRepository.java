@@ -0,0 +1,62 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEREPOSITORY
+ *  This class is called to start games on mazes that are read only once.
+ *  The first time a maze is asked for, it is read and preprocessed, and kept
+ *  as it was loaded. Every game on it then shares the layout and the tables
+ *  built from it, and only copies the grid and places new agents.
+ *  Each game searches the shared tables with its own scratch space, so games
+ *  on the same maze can be played from different threads.
+ *
+ */
+
+package environment;
+
+import java.util.HashMap;
+import pacman.PacMan;
+
+public class MazeRepository {
+
+    private HashMap<String, Environment> mazes = new HashMap<String, Environment>();   // The loaded mazes, which are never played
+
+    // Returns a new game on the maze, reading and preprocessing the maze the first time
+    public Environment newGame(String filename) {
+        return new Environment(getMaze(filename));
+    }
+
+    public synchronized Environment getMaze(String filename) {
+        Environment maze = mazes.get(filename);
+        if (maze == null) {
+            // The maze itself is never shown, only the games started on it
+            maze = new Environment(filename, false);
+            PacMan.initialize(maze);
+            mazes.put(filename, maze);
+        }
+        return maze;
+    }
+
+    public synchronized int size() {
+        return mazes.size();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZESEGMENTS
+ *  This class is called to hold the hallway segments of a maze. Every maze position
+ *  between two vertices lies on exactly one segment, at a certain number of steps
+ *  from the segment's first vertex. Distances between positions then follow from
+ *  these offsets and the distances between the vertices at the segment ends.
+ *  It also stores, for every edge of the graph, where the corridor it starts ends:
+ *  the first intersection reached when following the edge through corners.
+ *
+ */
+
+package environment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class MazeSegments {
+
+    private final int width;
+    private final int height;
+    private final MazeGraph graph;
+    private final int[] cellSegment;         // For each maze position (x * height + y), its segment, or -1
+    private final short[] cellOffset;        // For each maze position on a segment, the steps from the segment's first vertex
+    private final int numSegments;
+    private final int[] segmentStart;        // First vertex of each segment
+    private final int[] segmentEnd;          // Last vertex of each segment
+    private final short[] segmentLength;     // Steps from the first to the last vertex of each segment
+    private final int[] corridorEnd;         // For each edge, the first intersection reached through corners
+    private final int[] corridorBefore;      // For each edge, the vertex just before that intersection
+
+    public MazeSegments(MazeGraph graph, int width, int height, int[] cellSegment, short[] cellOffset,
+            int[] segmentStart, int[] segmentEnd, short[] segmentLength) {
+        this.graph = graph;
+        this.width = width;
+        this.height = height;
+        this.cellSegment = cellSegment.clone();
+        this.cellOffset = cellOffset.clone();
+        this.numSegments = segmentStart.length;
+        this.segmentStart = segmentStart.clone();
+        this.segmentEnd = segmentEnd.clone();
+        this.segmentLength = segmentLength.clone();
+
+        // Follow every edge through the vertices that are only corners (two neighbours or less),
+        // until an intersection is reached.
+        int numEdges = graph.getNumEdges();
+        corridorEnd = new int[numEdges];
+        corridorBefore = new int[numEdges];
+        for (int v = 0; v < graph.getNumVertices(); v++) {
+            for (int edge = graph.firstEdge(v); edge < graph.lastEdge(v); edge++) {
+                int base = v;
+                int current = graph.getEdgeTarget(edge);
+                int steps = 0;
+                while (graph.getDegree(current) <= 2 && steps < graph.getNumVertices()) {
+                    int next = -1;
+                    for (int e = graph.firstEdge(current); e < graph.lastEdge(current); e++) {
+                        if (graph.getEdgeTarget(e) != base) {
+                            next = graph.getEdgeTarget(e);
+                            break;
+                        }
+                    }
+                    if (next == -1) {
+                        // A dead end, or a loop back onto the same vertex
+                        break;
+                    }
+                    base = current;
+                    current = next;
+                    steps++;
+                }
+                corridorEnd[edge] = current;
+                corridorBefore[edge] = base;
+            }
+        }
+    }
+
+    // Reads the segments stored by write(), from a compiled maze
+    public MazeSegments(MazeGraph graph, ByteBuffer in) {
+        this.graph = graph;
+        width = in.getInt();
+        height = in.getInt();
+        cellSegment = MazeImage.readInts(in);
+        cellOffset = MazeImage.readShorts(in);
+        segmentStart = MazeImage.readInts(in);
+        segmentEnd = MazeImage.readInts(in);
+        segmentLength = MazeImage.readShorts(in);
+        numSegments = segmentStart.length;
+        corridorEnd = MazeImage.readInts(in);
+        corridorBefore = MazeImage.readInts(in);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        MazeImage.writeInts(out, cellSegment);
+        MazeImage.writeShorts(out, cellOffset);
+        MazeImage.writeInts(out, segmentStart);
+        MazeImage.writeInts(out, segmentEnd);
+        MazeImage.writeShorts(out, segmentLength);
+        MazeImage.writeInts(out, corridorEnd);
+        MazeImage.writeInts(out, corridorBefore);
+    }
+
+    public int getNumSegments() {
+        return numSegments;
+    }
+
+    // Returns the segment (x,y) lies on, or -1 if it is a vertex or not part of any hallway.
+    public int getSegment(int x, int y) {
+        return cellSegment[x * height + y];
+    }
+
+    // Returns the number of steps from the first vertex of the segment to (x,y).
+    public short getOffset(int x, int y) {
+        return cellOffset[x * height + y];
+    }
+
+    public int getSegmentStart(int segment) {
+        return segmentStart[segment];
+    }
+
+    public int getSegmentEnd(int segment) {
+        return segmentEnd[segment];
+    }
+
+    public short getSegmentLength(int segment) {
+        return segmentLength[segment];
+    }
+
+    // Returns whether distances from (x,y) can be worked out from the segments,
+    // which is the case for all vertices and all positions on a segment.
+    public boolean covers(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        return cellSegment[x * height + y] != -1 || graph.getVertex(x, y) != -1;
+    }
+
+    // Returns the length of the shortest path between two covered positions,
+    // using the given table of distances between vertices, or -1 if there is no path.
+    public short distance(int x1, int y1, int x2, int y2, short[][] vertexDistance) {
+        if (x1 == x2 && y1 == y2) {
+            return 0;
+        }
+
+        int segment1 = cellSegment[x1 * height + y1];
+        int segment2 = cellSegment[x2 * height + y2];
+        int shortest = -1;
+
+        // Two positions on the same segment can reach each other directly
+        if (segment1 != -1 && segment1 == segment2) {
+            shortest = Math.abs(cellOffset[x1 * height + y1] - cellOffset[x2 * height + y2]);
+        }
+
+        // Otherwise, or if it is shorter, go through the vertices at the ends of the segments.
+        // A vertex is treated as its own start, with no second end.
+        int start1, end1 = -1, toStart1, toEnd1 = 0;
+        if (segment1 == -1) {
+            start1 = graph.getVertex(x1, y1);
+            toStart1 = 0;
+        } else {
+            start1 = segmentStart[segment1];
+            end1 = segmentEnd[segment1];
+            toStart1 = cellOffset[x1 * height + y1];
+            toEnd1 = segmentLength[segment1] - toStart1;
+        }
+
+        int start2, end2 = -1, toStart2, toEnd2 = 0;
+        if (segment2 == -1) {
+            start2 = graph.getVertex(x2, y2);
+            toStart2 = 0;
+        } else {
+            start2 = segmentStart[segment2];
+            end2 = segmentEnd[segment2];
+            toStart2 = cellOffset[x2 * height + y2];
+            toEnd2 = segmentLength[segment2] - toStart2;
+        }
+
+        shortest = shorter(shortest, toStart1, vertexDistance[start1][start2], toStart2);
+        if (end2 != -1) {
+            shortest = shorter(shortest, toStart1, vertexDistance[start1][end2], toEnd2);
+        }
+        if (end1 != -1) {
+            shortest = shorter(shortest, toEnd1, vertexDistance[end1][start2], toStart2);
+            if (end2 != -1) {
+                shortest = shorter(shortest, toEnd1, vertexDistance[end1][end2], toEnd2);
+            }
+        }
+        return (short) shortest;
+    }
+
+    private int shorter(int shortest, int first, int between, int last) {
+        // Returns the shorter of the path found so far and the path through two vertices,
+        // if the vertices are connected at all.
+        if (between < 0) {
+            return shortest;
+        }
+        int path = first + between + last;
+        if (shortest == -1 || path < shortest) {
+            return path;
+        }
+        return shortest;
+    }
+
+    // Returns the first intersection reached by following an edge of the graph
+    // through the corners after it.
+    public int getCorridorEnd(int edge) {
+        return corridorEnd[edge];
+    }
+
+    // Returns the vertex just before the first intersection reached by following an edge.
+    public int getCorridorBefore(int edge) {
+        return corridorBefore[edge];
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  PILLCOUNTS
+ *  This class keeps count of the pills left on every hallway segment of the maze,
+ *  so that hallways without pills can be passed over without looking at their
+ *  positions, see Environment.findNearestPills. The counts are taken from the pill
+ *  layers of the bitboard, and lowered as pills are eaten.
+ *
+ */
+
+package environment;
+
+public class PillCounts {
+
+    private final MazeSegments segments;
+    private final int[] segmentPills;        // For each segment, the pills and power pills on it
+
+    public PillCounts(MazeSegments segments, MazeBitboard board) {
+        this.segments = segments;
+        segmentPills = new int[segments.getNumSegments()];
+
+        long[] pills = board.getPills();
+        for (int i = board.nextSet(pills, 0); i != -1; i = board.nextSet(pills, i + 1)) {
+            int segment = segments.getSegment(board.indexX(i), board.indexY(i));
+            if (segment != -1) {
+                segmentPills[segment]++;
+            }
+        }
+    }
+
+    // Copies the counts, for a new game on the same maze
+    public PillCounts(PillCounts counts) {
+        this.segments = counts.segments;
+        segmentPills = counts.segmentPills.clone();
+    }
+
+    // Should be called when the pill or power pill at x,y is eaten
+    public void remove(int x, int y) {
+        int segment = segments.getSegment(x, y);
+        if (segment != -1) {
+            segmentPills[segment]--;
+        }
+    }
+
+    // Should be called when the pill or power pill at x,y is put back, see Environment.restore
+    public void add(int x, int y) {
+        int segment = segments.getSegment(x, y);
+        if (segment != -1) {
+            segmentPills[segment]++;
+        }
+    }
+
+    // Returns the pills and power pills left on the segment, see MazeSegments
+    public int getSegmentPills(int segment) {
+        return segmentPills[segment];
+    }
+}
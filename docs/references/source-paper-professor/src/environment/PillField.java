@@ -0,0 +1,260 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  PILLFIELD
+ *  This class keeps, for every maze position, the number of steps to the nearest
+ *  of a set of targets, such as the pills. It is built once with a breadth-first
+ *  search from all targets, and updated whenever a target is removed: only the
+ *  positions whose shortest paths all led to that target are searched again.
+ *  The steps are the same as those of the bitboard, so moving past the edge of
+ *  the maze teleports to the opposite edge.
+ *
+ */
+
+package environment;
+
+import java.util.Arrays;
+import util.IndexedMinHeap;
+
+public class PillField {
+
+    private final MazeBitboard board;
+    private final int width, height;
+    private final short[] distance;     // For each maze position (x * height + y), the steps to the nearest target, -1 if there is none
+    private final boolean[] target;
+    // Scratch space for updates
+    private int[] queue = null;
+    private int[] affected = null;          // Holds the number of the update in which a position lost its nearest target
+    private int update = 0;
+    private IndexedMinHeap openSet = null;
+    private final int[] steps = new int[4];
+
+    public PillField(MazeBitboard board, long[] targets) {
+        this.board = board;
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        distance = new short[width * height];
+        target = new boolean[width * height];
+        Arrays.fill(distance, (short) -1);
+
+        int[] order = new int[width * height];
+        int head = 0, tail = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (board.get(targets, x, y)) {
+                    target[x * height + y] = true;
+                    distance[x * height + y] = 0;
+                    order[tail++] = x * height + y;
+                }
+            }
+        }
+        // Breadth-first search from all targets, following the steps backwards
+        int[] neighbors = new int[4];
+        while (head < tail) {
+            int position = order[head++];
+            int count = predecessors(position, neighbors);
+            for (int i = 0; i < count; i++) {
+                if (distance[neighbors[i]] == -1) {
+                    distance[neighbors[i]] = (short) (distance[position] + 1);
+                    order[tail++] = neighbors[i];
+                }
+            }
+        }
+    }
+
+    // Copies the field, for a new game on the same maze. The scratch space is not shared.
+    public PillField(PillField field, MazeBitboard board) {
+        this.board = board;
+        this.width = field.width;
+        this.height = field.height;
+        distance = field.distance.clone();
+        target = field.target.clone();
+    }
+
+    // Returns the steps from x,y to the nearest target, or -1 if no target can be reached
+    public short getDistance(int x, int y) {
+        return distance[x * height + y];
+    }
+
+    // Removes the target at x,y, and updates the distances that led to it
+    public void remove(int x, int y) {
+        int removed = x * height + y;
+        if (!target[removed]) {
+            return;
+        }
+        target[removed] = false;
+        allocateScratch();
+        update++;
+        int[] neighbors = new int[4];
+
+        // Find the positions that lose their nearest target. Going outwards from the removed target,
+        // a position is affected when all its steps towards a nearer position lead to affected positions.
+        // Positions are found in order of distance, so the nearer ones are always known first.
+        int head = 0, tail = 0;
+        affected[removed] = update;
+        queue[tail++] = removed;
+        while (head < tail) {
+            int position = queue[head++];
+            int count = predecessors(position, neighbors);
+            for (int i = 0; i < count; i++) {
+                int previous = neighbors[i];
+                if (affected[previous] != update && !target[previous]
+                        && distance[previous] == distance[position] + 1 && !supported(previous)) {
+                    affected[previous] = update;
+                    queue[tail++] = previous;
+                }
+            }
+        }
+
+        // Search again over the affected positions only, starting from the distances
+        // of the positions around them, which have not changed
+        for (int i = 0; i < tail; i++) {
+            int position = queue[i];
+            int best = -1;
+            int count = successors(position, neighbors);
+            for (int j = 0; j < count; j++) {
+                int next = neighbors[j];
+                if (affected[next] != update && distance[next] != -1 && (best == -1 || distance[next] + 1 < best)) {
+                    best = distance[next] + 1;
+                }
+            }
+            distance[position] = (short) best;
+            if (best != -1) {
+                openSet.add(position, best);
+            }
+        }
+        while (!openSet.isEmpty()) {
+            int position = openSet.poll();
+            int count = predecessors(position, neighbors);
+            for (int i = 0; i < count; i++) {
+                int previous = neighbors[i];
+                int dist = distance[position] + 1;
+                if (affected[previous] == update && (distance[previous] == -1 || dist < distance[previous])) {
+                    distance[previous] = (short) dist;
+                    if (openSet.contains(previous)) {
+                        openSet.decreaseKey(previous, dist);
+                    } else {
+                        openSet.add(previous, dist);
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds a target at x,y again, and lowers the distances that are now shorter.
+    // Going outwards from the target, only positions that come nearer are searched.
+    public void add(int x, int y) {
+        int added = x * height + y;
+        if (target[added]) {
+            return;
+        }
+        target[added] = true;
+        allocateScratch();
+        int[] neighbors = new int[4];
+
+        int head = 0, tail = 0;
+        distance[added] = 0;
+        queue[tail++] = added;
+        while (head < tail) {
+            int position = queue[head++];
+            int count = predecessors(position, neighbors);
+            for (int i = 0; i < count; i++) {
+                int previous = neighbors[i];
+                if (distance[previous] == -1 || distance[position] + 1 < distance[previous]) {
+                    distance[previous] = (short) (distance[position] + 1);
+                    queue[tail++] = previous;
+                }
+            }
+        }
+    }
+
+    private void allocateScratch() {
+        if (queue == null) {
+            queue = new int[width * height];
+            affected = new int[width * height];
+            openSet = new IndexedMinHeap(width * height);
+        }
+    }
+
+    private boolean supported(int position) {
+        // Returns whether a step from the position leads to a position one step nearer that is not affected
+        int count = successors(position, steps);
+        for (int i = 0; i < count; i++) {
+            if (affected[steps[i]] != update && distance[steps[i]] == distance[position] - 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int successors(int position, int[] result) {
+        // Stores the positions a step from the position leads to, and returns how many there are
+        int x = position / height;
+        int y = position % height;
+        int count = 0;
+        if (board.get(board.getWalls(), x, y)) {
+            return 0;
+        }
+        for (int action = 0; action < 4; action++) {
+            int next = neighbor(x, y, action);
+            if (board.canStep(x, y, next / height, next % height)) {
+                result[count++] = next;
+            }
+        }
+        return count;
+    }
+
+    private int predecessors(int position, int[] result) {
+        // Stores the positions from which a step leads to the position, and returns how many there are
+        int x = position / height;
+        int y = position % height;
+        int count = 0;
+        for (int action = 0; action < 4; action++) {
+            int previous = neighbor(x, y, action);
+            int px = previous / height;
+            int py = previous % height;
+            if (!board.get(board.getWalls(), px, py) && board.canStep(px, py, x, y)) {
+                result[count++] = previous;
+            }
+        }
+        return count;
+    }
+
+    private int neighbor(int x, int y, int direction) {
+        switch (direction) {
+            case 0:
+                x = (x == 0) ? width - 1 : x - 1;
+                break;
+            case 1:
+                x = (x == width - 1) ? 0 : x + 1;
+                break;
+            case 2:
+                y = (y == 0) ? height - 1 : y - 1;
+                break;
+            default:
+                y = (y == height - 1) ? 0 : y + 1;
+                break;
+        }
+        return x * height + y;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  STEPCONTEXT
+ *  This class is called to remember the path queries made by the input algorithms
+ *  during one tick of the game. The ghost finder and the entrapment finder ask for
+ *  many of the same paths, and the state representation is computed twice for
+ *  the same state, so every query after the first is simply looked up.
+ *  A new tick starts as soon as an agent has moved or an item was eaten;
+ *  the remembered queries are then dropped all at once, by bumping a counter.
+ *
+ */
+
+package environment;
+
+import global.Globals;
+import pacman.Agent;
+import util.PillSearchResult;
+
+public class StepContext {
+
+    private static final int INITIAL_CAPACITY = 256;   // Must be a power of two
+
+    private Environment game = null;
+    private int[] positions = new int[0];   // Position of every agent and the items left, when the tick started
+    private int tick = 1;                   // Entries stored in an earlier tick are not valid anymore
+    private long hits = 0;
+    private long misses = 0;
+    // Open addressing tables, keyed by the start and goal positions (x * mazeHeight + y)
+    private long[] pathKeys;
+    private int[] pathTicks;
+    private short[][] paths;
+    private int numPaths;
+    private long[] distanceKeys;
+    private int[] distanceTicks;
+    private short[] distances;
+    private int numDistances;
+    // The nearest pills are only looked up for one position at a time
+    private int pillTick = 0;
+    private int pillPosition;
+    private PillSearchResult pills;
+    // The arrival fields are computed at most once per tick
+    private ArrivalField ghostArrival = null;
+    private int ghostArrivalTick = 0;
+    private ArrivalField pacmanArrival = null;
+    private int pacmanArrivalTick = 0;
+
+    public StepContext() {
+        pathKeys = new long[INITIAL_CAPACITY];
+        pathTicks = new int[INITIAL_CAPACITY];
+        paths = new short[INITIAL_CAPACITY][];
+        distanceKeys = new long[INITIAL_CAPACITY];
+        distanceTicks = new int[INITIAL_CAPACITY];
+        distances = new short[INITIAL_CAPACITY];
+    }
+
+    // Should be called before the input algorithms run on a game.
+    // Starts a new tick if the game differs from the last one, if an agent has moved,
+    // if a ghost has changed its state or if an item was eaten. Returns whether a new tick was started.
+    public boolean update(Environment game) {
+        Agent[] ghosts = game.getGhosts();
+        int length = 5 * ghosts.length + 6;
+        boolean changed = (game != this.game || positions.length != length);
+        if (changed) {
+            positions = new int[length];
+        }
+
+        int i = 0;
+        changed |= store(i++, game.getPacMan().getX1());
+        changed |= store(i++, game.getPacMan().getY1());
+        changed |= store(i++, game.getPacMan().getX2());
+        changed |= store(i++, game.getPacMan().getY2());
+        for (Agent ghost : ghosts) {
+            changed |= store(i++, ghost.getX1());
+            changed |= store(i++, ghost.getY1());
+            changed |= store(i++, ghost.getX2());
+            changed |= store(i++, ghost.getY2());
+            changed |= store(i++, ghost.state);
+        }
+        changed |= store(i++, game.pillsLeft);
+        changed |= store(i++, game.powerPillsLeft);
+
+        if (changed) {
+            this.game = game;
+            reset();
+        }
+        return changed;
+    }
+
+    private boolean store(int i, int value) {
+        if (positions[i] == value) {
+            return false;
+        }
+        positions[i] = value;
+        return true;
+    }
+
+    // Forgets all queries of the current tick
+    public void reset() {
+        tick++;
+        numPaths = 0;
+        numDistances = 0;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    // Same as Environment.findShortestPath without a blacklist.
+    // The returned array is shared between calls, and should not be changed.
+    public short[] findShortestPath(short x1, short y1, short x2, short y2) {
+        long key = key(x1, y1, x2, y2);
+        int slot = find(pathKeys, pathTicks, key);
+        if (pathTicks[slot] == tick) {
+            hits++;
+            return paths[slot];
+        }
+        misses++;
+        short[] result = game.findShortestPath(x1, y1, x2, y2, null);
+        pathKeys[slot] = key;
+        pathTicks[slot] = tick;
+        paths[slot] = result;
+        numPaths++;
+        if (2 * numPaths > pathKeys.length) {
+            growPaths();
+        }
+        return result;
+    }
+
+    // Same as Environment.cellDistance
+    public short cellDistance(short x1, short y1, short x2, short y2) {
+        long key = key(x1, y1, x2, y2);
+        int slot = find(distanceKeys, distanceTicks, key);
+        if (distanceTicks[slot] == tick) {
+            hits++;
+            return distances[slot];
+        }
+        misses++;
+        short result = game.cellDistance(x1, y1, x2, y2);
+        distanceKeys[slot] = key;
+        distanceTicks[slot] = tick;
+        distances[slot] = result;
+        numDistances++;
+        if (2 * numDistances > distanceKeys.length) {
+            growDistances();
+        }
+        return result;
+    }
+
+    // Same as Environment.findNearestPills.
+    // The returned result is shared between calls, and should not be changed.
+    public PillSearchResult findNearestPills(short x1, short y1) {
+        int position = x1 * game.mazeHeight + y1;
+        if (pillTick == tick && pillPosition == position) {
+            hits++;
+            return pills;
+        }
+        misses++;
+        pills = game.findNearestPills(x1, y1);
+        pillTick = tick;
+        pillPosition = position;
+        return pills;
+    }
+
+    // Returns for each vertex the earliest time at which one of the ghosts that are not afraid
+    // can get there: the distance divided by the speed of the ghost. The ghosts should be those of the game.
+    // The returned field is shared between calls, and should not be changed.
+    public ArrivalField ghostArrival(Agent[] ghosts) {
+        if (ghostArrivalTick == tick) {
+            hits++;
+            return ghostArrival;
+        }
+        misses++;
+        ghostArrival = newField(ghostArrival);
+        for (Agent ghost : ghosts) {
+            if (ghost.state != Globals.GHOST_AFRAID) {
+                ghostArrival.add(game, ghost, 0);
+            }
+        }
+        ghostArrivalTick = tick;
+        return ghostArrival;
+    }
+
+    // Returns for each vertex the earliest time at which Ms. Pac-Man can get there,
+    // with Globals.safeHeadstart added to every distance.
+    // The returned field is shared between calls, and should not be changed.
+    public ArrivalField pacmanArrival() {
+        if (pacmanArrivalTick == tick) {
+            hits++;
+            return pacmanArrival;
+        }
+        misses++;
+        pacmanArrival = newField(pacmanArrival);
+        pacmanArrival.add(game, game.getPacMan(), Globals.safeHeadstart);
+        pacmanArrivalTick = tick;
+        return pacmanArrival;
+    }
+
+    private ArrivalField newField(ArrivalField field) {
+        // Reuses the field of an earlier tick if it belongs to the same maze
+        if (field == null || field.getGraph() != game.graph) {
+            return new ArrivalField(game.graph);
+        }
+        field.clear();
+        return field;
+    }
+
+    private long key(int x1, int y1, int x2, int y2) {
+        return ((long) (x1 * game.mazeHeight + y1) << 32) | (x2 * game.mazeHeight + y2);
+    }
+
+    private int find(long[] keys, int[] ticks, long key) {
+        // Returns the slot holding the key in this tick, or otherwise the free slot where it belongs
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (ticks[slot] == tick && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32);
+    }
+
+    private void growPaths() {
+        long[] oldKeys = pathKeys;
+        int[] oldTicks = pathTicks;
+        short[][] oldPaths = paths;
+        pathKeys = new long[2 * oldKeys.length];
+        pathTicks = new int[2 * oldKeys.length];
+        paths = new short[2 * oldKeys.length][];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldTicks[i] == tick) {
+                int slot = find(pathKeys, pathTicks, oldKeys[i]);
+                pathKeys[slot] = oldKeys[i];
+                pathTicks[slot] = tick;
+                paths[slot] = oldPaths[i];
+            }
+        }
+    }
+
+    private void growDistances() {
+        long[] oldKeys = distanceKeys;
+        int[] oldTicks = distanceTicks;
+        short[] oldDistances = distances;
+        distanceKeys = new long[2 * oldKeys.length];
+        distanceTicks = new int[2 * oldKeys.length];
+        distances = new short[2 * oldKeys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldTicks[i] == tick) {
+                int slot = find(distanceKeys, distanceTicks, oldKeys[i]);
+                distanceKeys[slot] = oldKeys[i];
+                distanceTicks[slot] = tick;
+                distances[slot] = oldDistances[i];
+            }
+        }
+    }
+}
@@ -76,6 +76,11 @@ public class Globals {
     public static final int NETWORK_SINGLE = 0;    // Single network
     public static final int NETWORK_ACTION = 1;    // Network per action
 
+    // How the planner estimates the outcome of a simulated line of play
+    public static final int PLANNER_RANDOM  = 0;   // Rollouts with random actions
+    public static final int PLANNER_ROLLOUT = 1;   // Rollouts following the networks, which also value the state they end in
+    public static final int PLANNER_LEAF    = 2;   // The networks value the new state in the tree, without a rollout
+
     // Learning rules
     public static final short Q           = 0;     // Q-Learning
     public static final short QV          = 1;     // Q(v)-Learning
@@ -189,6 +194,24 @@ public class Globals {
     // rate will decline a little at every game won.
     public static boolean trainingAfterTheFact = false;
 
+    // How many games should be played at the same time, each by its own thread?
+    // All of them train the same networks; see pacman.ActorPool.
+    // Use at most the number of cores. More than one game at a time cannot be
+    // combined with trainingAfterTheFact or the visualisation.
+    public static int numActors = 1;
+
+    // Should Ms. Pac-Man plan her actions with a Monte Carlo tree search, instead of
+    // taking the best action according to the networks? The search simulates the game
+    // ahead on copies of it, and can use the networks in its simulations; see pacman.Planner.
+    // The networks are still trained on the actions taken. Meant for evaluation runs.
+    public static boolean usePlanner = false;
+    public static int plannerPolicy = PLANNER_RANDOM;
+    public static int plannerIterations = 200;     // Simulations per decision, over all threads
+    public static int plannerTime = 0;             // Time per decision in milliseconds, 0 for no limit; the search stops at whichever limit comes first
+    public static int plannerThreads = 1;          // Threads simulating at the same time, each with a search tree of its own
+    public static int plannerDepth = 10;           // Maze positions a rollout travels
+    public static double plannerExploration = 40;  // Exploration constant of the tree search, in units of reward
+
 //**** ALGORITHMS
 
     public static boolean enableActionInput =             true;
@@ -210,6 +233,11 @@ public class Globals {
     // If set to 0, the A*-algorithm will always be used.
     public static int pillRange = 10;
 
+    // Should the power pill input always give the distances to the nearest power pills,
+    // read from the power pill field? If not, they are only given when no pill was
+    // in range and the whole maze had to be searched, and are 0 otherwise.
+    public static boolean powerPillsFromField = false;
+
     // When looking for escape routes, how many vertices should Ms. Pac-man
     // be able to travel for that route to be considered safe?
     public static int maxVertex = 3;
@@ -274,6 +302,41 @@ public class Globals {
 
 
 
+//**** PATH FINDING
+
+    // Up to how many vertices should the shortest paths between all pairs of
+    // vertices be precomputed when a maze is loaded?
+    // Mazes with more vertices will fall back to A* for every path query.
+    public static int maxTableVertices = 2000;
+
+    // Up to how many walkable maze positions should the shortest paths between
+    // all pairs of positions be precomputed when a maze is loaded?
+    // Mazes with more positions will look up paths between vertices instead.
+    public static int maxOracleCells = 1500;
+
+    // How many landmark vertices should be chosen on mazes that are too large for
+    // the table of all paths between vertices? Their distances to all other vertices
+    // give A* a lower bound to guide its search. Use 0 to search without one.
+    public static int numLandmarks = 8;
+
+    // Should paths on mazes that are too large for the table of all paths between
+    // vertices be planned over clusters of the maze, instead of with A* over all vertices?
+    // Both give the shortest path; the clusters only keep the search small on large mazes.
+    // Set to false to always use A* over all vertices.
+    public static boolean hierarchicalPaths = true;
+    // From how many vertices on should the clusters be used? Below this,
+    // A* guided by the landmarks is faster.
+    public static int minHierarchyVertices = 10000;
+    // The width and height, in maze positions, of each cluster.
+    public static int clusterSize = 32;
+
+    // Should a maze be loaded from its compiled file (see util.MazeCompiler), if there
+    // is one that is at least as new as the maze? A compiled maze keeps the tables
+    // chosen by the settings above at the time it was compiled.
+    public static boolean useCompiledMazes = true;
+
+
+
 //**** VISUALISATION & STATISTICS
 
     // Calculate the running average over the following number of games.
@@ -627,6 +690,14 @@ public class Globals {
         if (pacmanSpeed > 1) {
             System.err.println("A pacmanSpeed larger than 1 will cause Ms. Pac-Man to make illegal moves.");
         }
+        if (numActors > 1 && (trainingAfterTheFact || showVisualisation)) {
+            System.err.println("Games can only be played at the same time without trainingAfterTheFact and the visualisation, playing one at a time.");
+            numActors = 1;
+        }
+        if (usePlanner && plannerIterations <= 0 && plannerTime <= 0) {
+            System.err.println("The planner needs a number of simulations or a time per decision, using 200 simulations.");
+            plannerIterations = 200;
+        }
     }
 
     public static void parseCommandLine(String[] args) {
@@ -0,0 +1,128 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  ACTORPOOL
+ *  This class is called to play several games at the same time, each by its
+ *  own thread (an actor), while all of them train the same networks.
+ *  Every actor picks a random maze, plays a game on it with a session of its own,
+ *  and starts the next game until enough games have been played.
+ *  The actors compute their Q-values with the current weights of the networks.
+ *  Each training step updates the weights at once, one step at a time, and never
+ *  while a Q-value is being computed, so every Q-value is computed with the
+ *  weights as they were before or after an update. The statistics over all
+ *  games are kept by PacMan as they are when the games are played one by one.
+ *
+ */
+
+package pacman;
+
+import environment.Environment;
+import environment.MazeRepository;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ActorPool {
+
+    private final int numActors;
+    private final MazeRepository mazes;
+    private final ArrayList<String> mazeList;
+    private final ArrayList<NeuralNetwork> netList;
+    private final ArrayList<NeuralNetwork> netListForStates;
+    private final AtomicInteger gamesStarted = new AtomicInteger(0);
+    private final AtomicInteger gamesPlayed = new AtomicInteger(0);
+    private final AtomicLong runsPlayed = new AtomicLong(0);
+    private boolean writeNetworks = true;     // Should the networks be written to file before the games of the first actor?
+
+    public ActorPool(int numActors, MazeRepository mazes, ArrayList<String> mazeList,
+            ArrayList<NeuralNetwork> netList, ArrayList<NeuralNetwork> netListForStates) {
+        this.numActors = numActors;
+        this.mazes = mazes;
+        this.mazeList = mazeList;
+        this.netList = netList;
+        this.netListForStates = netListForStates;
+    }
+
+    public void setWriteNetworks(boolean writeNetworks) {
+        this.writeNetworks = writeNetworks;
+    }
+
+    public int getGamesPlayed() {
+        return gamesPlayed.get();
+    }
+
+    public long getRunsPlayed() {
+        return runsPlayed.get();
+    }
+
+    // Plays the number of games, or keeps playing if it is negative, and returns once all actors are done
+    public void play(final int numGames) throws InterruptedException {
+        Thread[] actors = new Thread[numActors];
+        final Throwable[] failure = new Throwable[1];
+        for (int i = 0; i < numActors; i++) {
+            final int actor = i;
+            actors[i] = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        act(actor, numGames);
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            }, "actor-" + i);
+            actors[i].start();
+        }
+        for (int i = 0; i < numActors; i++) {
+            actors[i].join();
+        }
+        if (failure[0] != null) {
+            throw new RuntimeException("An actor failed", failure[0]);
+        }
+    }
+
+    private void act(int actor, int numGames) throws InterruptedException {
+        Random generator = new Random();
+        while (numGames < 0 || gamesStarted.getAndIncrement() < numGames) {
+            // Continue with a random maze
+            int curMaze = generator.nextInt(mazeList.size());
+            PacMan.prepareGame();
+
+            Environment Game = mazes.newGame(mazeList.get(curMaze));
+            GameSession session = new GameSession(Game);
+            session.mazeIndex = curMaze;
+
+            // The networks are shared, so one actor is enough to write them
+            if (actor == 0 && writeNetworks) {
+                PacMan.writeNetworks(netList, netListForStates);
+            }
+
+            PacMan.playGame(session, netList, netListForStates);
+            gamesPlayed.incrementAndGet();
+            runsPlayed.addAndGet(session.getRuns());
+        }
+    }
+}
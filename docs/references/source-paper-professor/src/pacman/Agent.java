@@ -63,6 +63,30 @@ public class Agent {
         this.limitedMovement = limitedMovement;
     }
 
+    // Copies another agent, to play on from the same position in a copy of the game
+    public Agent(Agent agent) {
+        this.id = agent.id;
+        this.itemID = agent.itemID;
+        this.limitedMovement = agent.limitedMovement;
+        copy(agent);
+    }
+
+    // Takes over the position, movement and state of another agent of the same kind
+    public void copy(Agent agent) {
+        reachedNewVertex = agent.reachedNewVertex;
+        lastVertex = agent.lastVertex;
+        x1 = agent.x1;
+        y1 = agent.y1;
+        x2 = agent.x2;
+        y2 = agent.y2;
+        movefloat = agent.movefloat;
+        direction = agent.direction;
+        speed = agent.speed;
+        vistype = agent.vistype;
+        state = agent.state;
+        waitTime = agent.waitTime;
+    }
+
     public void setVisType(short type) {
         this.vistype = type;
     }
@@ -244,7 +268,8 @@ public class Agent {
     }
 
     public void drawItems(Environment e) {
-        if (Globals.showVisualisation == true) {
+        // A copy of the game made to look ahead is not shown
+        if (Globals.showVisualisation == true && e.vis != null) {
             e.vis.editItem(this.itemID, this.vistype, this.x1, this.y1, this.x2, this.y2, this.movefloat);
         }
     }
@@ -0,0 +1,312 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  GAMESESSION
+ *  This class is called to hold everything that belongs to a single game:
+ *  the environment, the path queries of the current tick, the actions and
+ *  Q-values of the last network run, the power pill and ghost behaviour
+ *  counters, and the rewards gathered so far. Nothing of it is shared with
+ *  other games, so games with their own session can be played at the same
+ *  time from different threads. The networks and the statistics over all
+ *  games are kept by PacMan.
+ *
+ */
+
+package pacman;
+
+import environment.Environment;
+import environment.StepContext;
+import global.Globals;
+import java.util.Random;
+import util.util;
+
+public class GameSession {
+
+    final Environment game;
+    final StepContext context = new StepContext();  // Path queries made by the input algorithms during the current tick
+    final Random generator;                         // Decides when and how Ms. Pac-Man explores
+
+    short curAction;                    // Action as selected by network to be taken next
+    short boldAction;                   // Action currently used in exploration
+    short actualMove;                   // Action that was actually performed
+    int lastNet = -1;                   // Network last used in decision making
+    boolean reverseAction = false;      // Is the new action the reverse of the previous action?
+
+    double[] curQs = new double[4];     // Current Q-values
+    double[] newQs = new double[4];     // Future Q-values after selected action (curAction)
+    double[] newV = new double[1];      // Future V-values after selected action (curAction)
+
+    int runs = 0;                       // Network runs made during this game
+    float lifeTime = 0;                 // How great of a distance Ms.Pac-Man traveled during this game (score for avoiding ghosts)
+    float totalReward = 0;              // Total reward gathered during this game
+    double totalPillReward = 0;         // Total reward gathered from collection pills during this game
+    double pillPercentage;              // Percentage of completion for this game
+
+    int mazeIndex = -1;                 // Index of the maze in the list of mazes, as written to the score file
+    double explorationchance;           // Chance of exploration in the last network run
+    double learningRate;                // Learning rate of the last training
+
+    boolean entrapped = false;          // Whether Ms. Pac-Man has chance of escape
+    int remainPowerpill = 0;            // The amount of network runs any powerpills have left
+    double ghostThreshold = 0;          // Counter deciding current phase of ghost behaviour
+
+    public GameSession(Environment game) {
+        this.game = game;
+        this.generator = new Random();
+        game.globalGhostState = Globals.startingGhostState;
+    }
+
+    // Plays the game with fixed random choices, for both Ms. Pac-Man and the ghosts,
+    // so that it can be played again with the same result
+    public GameSession(Environment game, long seed) {
+        this.game = game;
+        this.generator = new Random(seed);
+        game.setSeed(seed);
+        game.globalGhostState = Globals.startingGhostState;
+    }
+
+    // Continues a session on a copy of its game, such as a fork, see Planner.
+    // The ghost behaviour is taken over from the game as it is.
+    public GameSession(GameSession session, Environment game) {
+        this.game = game;
+        this.generator = new Random();
+        copyState(session);
+    }
+
+    // Takes over the actions, counters and rewards of another session, as they are now
+    public void copyState(GameSession session) {
+        curAction = session.curAction;
+        boldAction = session.boldAction;
+        actualMove = session.actualMove;
+        lastNet = session.lastNet;
+        reverseAction = session.reverseAction;
+        runs = session.runs;
+        lifeTime = session.lifeTime;
+        totalReward = session.totalReward;
+        totalPillReward = session.totalPillReward;
+        pillPercentage = session.pillPercentage;
+        mazeIndex = session.mazeIndex;
+        explorationchance = session.explorationchance;
+        learningRate = session.learningRate;
+        entrapped = session.entrapped;
+        remainPowerpill = session.remainPowerpill;
+        ghostThreshold = session.ghostThreshold;
+    }
+
+    public Environment getGame() {
+        return game;
+    }
+
+    public StepContext getContext() {
+        return context;
+    }
+
+    public short getActualMove() {
+        return actualMove;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public float getLifeTime() {
+        return lifeTime;
+    }
+
+    public float getTotalReward() {
+        return totalReward;
+    }
+
+    public double getTotalPillReward() {
+        return totalPillReward;
+    }
+
+    public double getPillPercentage() {
+        return pillPercentage;
+    }
+
+    public boolean isEntrapped() {
+        return entrapped;
+    }
+
+    public int getRemainPowerpill() {
+        return remainPowerpill;
+    }
+
+    // Sets the action to be performed next, and whether it reverses Ms. Pac-Man on her path
+    public void setNextAction(short action) {
+        reverseAction = (curAction == util.reverseActionFor(action));
+        curAction = action;
+    }
+
+    // Performs an action of Ms. Pac-Man, lets her eat what she finds and moves the ghosts.
+    // Returns the reward for the action, including the reward for winning or losing the game.
+    public double move(short action) {
+        actualMove = game.getPacMan().move(action, game);
+        boldAction = actualMove;
+
+        // Update the visualization, unless this is a copy of the game made to look ahead
+        if (Globals.showVisualisation == true && game.vis != null) {
+            game.vis.updateVisualisation();
+        }
+
+        // Determine reward, based on the action just performed
+        int PacManX = game.getPacMan().getX2();
+        int PacManY = game.getPacMan().getY2();
+        double reward = game.eatItem(PacManX, PacManY, game.getPacMan().getMovefloat());
+        totalPillReward += reward;
+        reward += Globals.rewardStep;
+        if (reverseAction == true) reward += Globals.rewardReverse;
+
+        // Check if game is finished, move ghosts, and check again
+        reward += checkFinished();
+        if (!game.gameEnded) {
+            for (int i = 0; i < game.getGhosts().length; i++) {
+                game.moveGhost(i);
+            }
+            reward += checkFinished();
+        }
+        if (game.gameLost) {
+            reward += Globals.rewardLose;
+        } else if (game.gameEnded && !game.gameLost) {
+            reward += Globals.rewardWin;
+        }
+        return reward;
+    }
+
+    // Function that returns the reward for a collision with a ghost,
+    // and ends the game when Ms. Pac-Man is caught or has eaten all pills
+    private double checkFinished() {
+        // Get whether there has been a collision with a ghost and process the type of collision
+        short ghostCollision = game.ghostCollision();
+        if (ghostCollision == Globals.COLLISION_FATAL) {
+            // A fatal collision
+            game.gameEnded = true;
+            game.gameLost = true;
+
+            pillPercentage = ((double) (game.totalPills - game.pillsLeft)) / (double) game.totalPills * 100;
+        } else if (ghostCollision == Globals.COLLISION_ALLOWED) {
+            // A collision with a scared ghost
+            return Globals.rewardGhost;
+        } else {
+            // And if there has not been a collision, check if Ms.Pac-Man ate all pills
+            if (game.pillsLeft == 0) {
+                // The game has been won
+                game.gameEnded = true;
+                game.gameLost = false;
+
+                pillPercentage = 100;
+            }
+        }
+
+        if (game.gameEnded == true) {
+            remainPowerpill = 0;
+        }
+
+        return 0;
+    }
+
+    // Function to be called after every network run: counts the distance traveled
+    // and determines the proper ghost behaviour for the next run
+    public void advance() {
+        runs++;
+        lifeTime += Globals.pacmanSpeed;
+        ghostThreshold += Globals.pacmanSpeed;
+        determineGhostBehaviour();
+    }
+
+    // Function to determine the proper ghost behaviour
+    public void determineGhostBehaviour() {
+
+        // Override ghost behaviour if a static ghost state was set in the Globals
+        if (Globals.alwaysEnabled == true) {
+            game.globalGhostState = Globals.alwaysState;
+
+            if (Globals.alwaysState == Globals.GHOST_AFRAID) {
+                remainPowerpill = 1;
+                for (int i = 0; i < game.getGhosts().length; i++) {
+                    game.getGhost(i).state = Globals.GHOST_AFRAID;
+                }
+            }
+
+            game.propagateGhostBehaviour();
+            return;
+        }
+
+        // Alter the global ghost state
+
+        // Remember, the ghosts will only take on this state when propagateGhostBehaviour
+        // is called, or their state is manually altered to -1.
+
+        if (ghostThreshold > 1) {
+            game.globalGhostState = Globals.GHOST_CHASE;
+        }
+        if (ghostThreshold > 10) {
+            game.globalGhostState = Globals.GHOST_RANDOM;
+        }
+        if (ghostThreshold > 70) {
+            game.globalGhostState = Globals.GHOST_CHASE;
+        }
+        if (ghostThreshold > 85) {
+            game.globalGhostState = Globals.GHOST_RANDOM;
+        }
+        if (ghostThreshold >= 120) {
+            game.globalGhostState = Globals.GHOST_SCATTER;
+            ghostThreshold = 0;
+        }
+
+        // If Ms. Pac-man just ate a powerpill
+        if (game.justPowerpill == true) {
+
+            game.justPowerpill = false;
+
+            // Set how many network runs the power pill has left
+            remainPowerpill = (int) (Globals.durationPowerpill / Globals.pacmanSpeed);
+
+            // Set all ghosts to the afraid state
+            for (int i = 0; i < game.getGhosts().length; i++) {
+                game.getGhost(i).state = Globals.GHOST_AFRAID;
+            }
+
+        } else if (remainPowerpill > 0) {
+
+            // If there is a power pill still active, lower the runs it has left.
+            remainPowerpill--;
+
+        } else {
+
+            // If there is no power pill active, propagate the global ghost state to all ghosts
+            // They will assume the global ghost state after this move
+            boolean dontbeScared = false;
+            for (int i = 0; i < game.getGhosts().length; i++) {
+                if (game.getGhost(i).state == Globals.GHOST_AFRAID) {
+                    dontbeScared = true;
+                }
+            }
+            if (dontbeScared == true) {
+                game.propagateGhostBehaviour();
+            }
+
+        }
+    }
+}
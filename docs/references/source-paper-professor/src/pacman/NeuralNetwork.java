@@ -33,6 +33,7 @@ import global.Globals;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class NeuralNetwork {
 
@@ -46,6 +47,9 @@ public class NeuralNetwork {
     private int inputs;
     private int hiddens;
     private int outputs;
+    // Games played at the same time share the network: they compute under the read lock,
+    // and every update is made under the write lock, one at a time
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public NeuralNetwork(int inputs, int hiddens, int outputs) {
         this.inputs = inputs;
@@ -91,12 +95,60 @@ public class NeuralNetwork {
     }
 
     public double[] compute(double[] inputActivation) {
-        this.inputActivation = inputActivation;
-        this.hiddenActivation = this.computeHiddenUnits(this.inputActivation, this.hiddenWeights, this.hiddens, this.hiddenBias);
-        this.outputActivation = this.computeOutputUnits(this.hiddenActivation, this.outputWeights, this.outputs, this.outputBias);
-        double[] out = new double[this.outputActivation.length];
-        System.arraycopy(this.outputActivation, 0, out, 0, this.outputActivation.length);
-        return out;
+        // The activations are not kept, so that several games can compute at the same time
+        lock.readLock().lock();
+        try {
+            double[] hidden = this.computeHiddenUnits(inputActivation, this.hiddenWeights, this.hiddens, this.hiddenBias);
+            return this.computeOutputUnits(hidden, this.outputWeights, this.outputs, this.outputBias);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Computes the outputs for a batch of inputs at once, with the same result as calling compute on each.
+    // The input holds the rows one after another, each with a value for every input node;
+    // the outputs are returned the same way. Each layer is one product of matrices,
+    // which walks through the rows of the weights in order, and the lock is taken only once.
+    public double[] computeBatch(double[] input, int rows) {
+        lock.readLock().lock();
+        try {
+            double[] hidden = new double[rows * this.hiddens];
+            for (int r = 0; r < rows; r++) {
+                int in = r * this.inputs;
+                int out = r * this.hiddens;
+                System.arraycopy(this.hiddenBias, 0, hidden, out, this.hiddens);
+                for (int i = 0; i < this.inputs; i++) {
+                    double x = input[in + i];
+                    if (x != 0) {
+                        double[] weights = this.hiddenWeights[i];
+                        for (int h = 0; h < this.hiddens; h++) {
+                            hidden[out + h] += weights[h] * x;
+                        }
+                    }
+                }
+                for (int h = out; h < out + this.hiddens; h++) {
+                    // z = sigmoid(SUM(w * x)), as in computeHiddenUnits
+                    hidden[h] = (hidden[h] == 0) ? 0.5 : 1.0 / (1.0 + Math.pow(Math.E, -hidden[h]));
+                }
+            }
+
+            double[] output = new double[rows * this.outputs];
+            for (int r = 0; r < rows; r++) {
+                int in = r * this.hiddens;
+                int out = r * this.outputs;
+                System.arraycopy(this.outputBias, 0, output, out, this.outputs);
+                for (int h = 0; h < this.hiddens; h++) {
+                    double z = hidden[in + h];
+                    double[] weights = this.outputWeights[h];
+                    for (int o = 0; o < this.outputs; o++) {
+                        output[out + o] += weights[o] * z;
+                    }
+                }
+            }
+            return output;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     private class enqueueItem {
@@ -126,8 +178,19 @@ public class NeuralNetwork {
     }
 
     public void train(double[] input, double[] desired, double learningRate) {
+        lock.writeLock().lock();
+        try {
+            backpropagate(input, desired, learningRate);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void backpropagate(double[] input, double[] desired, double learningRate) {
         // Compute input, hidden and output based on input
-        double[] out = compute(input);
+        this.inputActivation = input;
+        this.hiddenActivation = this.computeHiddenUnits(this.inputActivation, this.hiddenWeights, this.hiddens, this.hiddenBias);
+        this.outputActivation = this.computeOutputUnits(this.hiddenActivation, this.outputWeights, this.outputs, this.outputBias);
 
         double[] deltaOutput = new double[this.outputs];
         for (int o = 0; o < this.outputs; o++) {
@@ -222,6 +285,15 @@ public class NeuralNetwork {
     }
 
     public void writeNN(String filename) {
+        lock.readLock().lock();
+        try {
+            write(filename);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(String filename) {
         try {
             PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename, true)));
             out.println("[NN]");
@@ -30,6 +30,8 @@
 package pacman;
 
 import environment.Environment;
+import environment.MazeImage;
+import environment.MazeRepository;
 import global.Globals;
 import gui.*;
 import java.io.*;
@@ -38,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import util.Entrapmentfinder;
 import util.Ghostfinder;
 import util.Pillfinder;
@@ -45,7 +48,7 @@ import util.util;
 
 public class PacMan {
 
-    private static String scoreFile;                // Score from each run will be written to this file
+    private static String scoreFile = null;         // Score from each run will be written to this file, if set
     private static String NNDir;                    // Neural network files will be written to this directory
     private static String NNFile;                   // Resulting NN will be written to this file
     private static String NNSDir;                   // Neural network files for training states will be written to this directory
@@ -53,23 +56,6 @@ public class PacMan {
     private static boolean firstepoch = true;       // Is this the first epoch?
     private static int epochBegin = 0;              // At what epoch did the training begin/resume?
     
-    private static double explorationchance;        // Current chance of exploration
-    private static double learningRate;             // Current learning rate
-    
-    private static short curAction;                 // Action as selected by network to be taken next
-    private static short boldAction;                // Action currently used in exploration
-    private static short actualMove;                // Action that was actually performed
-    private static int lastNet = -1;                // Network last used in decision making
-    private static boolean reverseAction = false;   // Is the new action the reverse of the previous action?
-   
-    private static double[] curQs = new double[4];  // Current Q-values
-    private static double[] newQs = new double[4];  // Future Q-values after selected action (curAction)
-    private static double[] newV = new double[1];   // Future V-values after selected action (curAction)
-    
-    private static float lifeTime = 0;              // How great of a distance Ms.Pac-Man traveled during current game (score for avoiding ghosts)
-    private static float totalReward;               // Total reward gathered during current game
-    private static double totalPillReward = 0;      // Total reward gathered from collection pills during current game
-    
     private static float minReward = 0;             // Variable for plotting performance
     private static float maxReward = 0;             // Variable for plotting performance
     private static float avgReward = 0;             // Variable for plotting performance
@@ -81,11 +67,10 @@ public class PacMan {
     private static float avgScore = 0;              // Variable for plotting performance
     private static int currentResolution = 0;       // Variable for plotting performance
     
-    private static int runcount = 0;                // Amount of network runs during entire training
-    private static int gamesdone = -1;              // Amount of games done during entire training
+    private static AtomicInteger runcount = new AtomicInteger(0);  // Amount of network runs during entire training
+    private static volatile int gamesdone = -1;     // Amount of games done during entire training
     private static int numSuccess = 0;              // Amount of successful games during entire training
     
-    private static double pillPercentage;           // Percentage of completion for current game
     private static int curMaze;                     // Index of current maze
             
     private static int numInputValues;              // Amount of input values in total
@@ -94,15 +79,11 @@ public class PacMan {
     private static int hiddens;                     // Amount of hidden nodes per network
     private static int outputs;                     // Amount of output nodes per network
     
-    private static boolean entrapped = false;       // Whether Ms. Pac-Man has chance of escape
-    private static int remainPowerpill = 0;         // The amount of network runs any powerpills have left
-
-    private static double ghostThreshold;           // Counter deciding current phase of ghost behaviour
-    
     private static Charter chart = null;
     private static RateGraph rgraph = null;
     private static RIPGraph dgraph = null;
     private static QGraph qgraph = null;
+    private static Planner planner = null;          // Decides on the actions instead of the networks, if the Globals ask for it
     private static double[] visionMemory;
     private static double[] visionDecline;
     
@@ -137,6 +118,8 @@ public class PacMan {
         String dir = "data/maze/";
         ArrayList<String> mazeList = readMazes(dir);
         int numMazes = mazeList.size();
+        // Each maze is read and preprocessed only once, the first time a game is played on it
+        MazeRepository mazes = new MazeRepository();
 
         // Prepare all output files
         String timestamp = new SimpleDateFormat("yyyyMMdd_HH.mm.ss").format(new Date());
@@ -152,46 +135,10 @@ public class PacMan {
             Globals.startingGhostState = Globals.alwaysState;
         }
 
-        // Initialize a list of neural networks for training state-action pairs
-        ArrayList<NeuralNetwork> netList = new ArrayList<NeuralNetwork>();
-        
-        // Calculate the amount of input values (in total, not per network!)
-        numInputValues = util.calculateActiveAlgorithms() * 4;
-        
-        // Calculate the specifications of the networks
-        // Customizing these values will require altering of many functions and variables,
-        // mainly those used for training and collecting input.
-        hiddens = Globals.hiddenNeurons;
-        outputs = 1;
-
-        // Initialize each network
-        if (Globals.activeNet == Globals.NETWORK_SINGLE) {
-            inputs = numInputValues / 4;
-            
-            NeuralNetwork netSingle = new NeuralNetwork(inputs,hiddens,outputs);
-            netList.add(netSingle);
-        } else {
-            // Alter the amount of inputs if we are dealing with action networks according to the Globals
-            inputs = numInputValues;
-            
-            NeuralNetwork netLeft = new NeuralNetwork(inputs, hiddens, outputs);
-            NeuralNetwork netRight = new NeuralNetwork(inputs, hiddens, outputs);
-            NeuralNetwork netUp = new NeuralNetwork(inputs, hiddens, outputs);
-            NeuralNetwork netDown = new NeuralNetwork(inputs, hiddens, outputs);
-            netList.add(netLeft);
-            netList.add(netRight);
-            netList.add(netUp);
-            netList.add(netDown);
-        }
-
-        // Initialize a list of neural networks for training states
-        ArrayList<NeuralNetwork> netListForStates = new ArrayList<NeuralNetwork>();
-
-        // When QV-learning is enabled, create neural networks for training states
-        if (Globals.learningRule == Globals.QV) {
-            NeuralNetwork netStates = new NeuralNetwork(numInputValues, hiddens, outputs);
-            netListForStates.add(netStates);
-        }
+        // Initialize the neural networks for training state-action pairs,
+        // and when QV-learning is enabled, for training states
+        ArrayList<NeuralNetwork> netList = createNetworks();
+        ArrayList<NeuralNetwork> netListForStates = createStateNetworks();
 
         // Load a predefined file if ordered to do so by the Globals
         // This will overwrite some of the Global-settings
@@ -221,9 +168,21 @@ public class PacMan {
             System.out.println("");
         }
 
+        // Let Ms. Pac-Man plan her actions if the Globals ask for it
+        if (Globals.usePlanner == true) {
+            planner = new Planner(Globals.plannerThreads);
+        }
+
         // Initialize some variables
         Random generator = new Random();
-        runcount = -1;
+        runcount.set(-1);
+
+        // Play several games at the same time if the Globals ask for it
+        if (Globals.numActors > 1) {
+            ActorPool pool = new ActorPool(Globals.numActors, mazes, mazeList, netList, netListForStates);
+            pool.play(Globals.limitGames ? Globals.totalGames - gamesdone : -1);
+            System.exit(0);
+        }
 
         // And start the magic
         do {
@@ -236,152 +195,127 @@ public class PacMan {
                 chart.clearData();
             }
 
-            // Perform a counter reset if necessary
-            counterReset = Globals.trainingData.getTraining(gamesdone);
-            if (counterReset == true) {
-                resetCounters();
-            }
-
-            // Ceate and initialize the game environment
-            Environment Game = new Environment(mazeList.get(curMaze));
-            initialize(Game);
-            double maxScore = Game.pillsLeft * Globals.rewardPill;
-            totalReward = 0;
-            totalPillReward = 0;
-            lifeTime = 0;
+            prepareGame();
 
-            // Reset ghost behaviour
-            ghostThreshold = 0;
-            Game.globalGhostState = Globals.startingGhostState;
-
-            // Wait for game to load
-            while (Game.gameLoaded == false) {
-            }
+            // Ceate the game environment, and a session holding everything else that belongs to this game
+            Environment Game = mazes.newGame(mazeList.get(curMaze));
+            GameSession session = new GameSession(Game);
+            session.mazeIndex = curMaze;
 
             // Write the current networks to file
-            writeNN(NNDir, netList);
-            writeNN(NNSDir, netListForStates);
-
-            // Repeat until the game ends
-            while (Game.gameEnded == false) {
+            writeNetworks(netList, netListForStates);
 
-                // Perform a network run and keep track of its results
-                totalReward += run(Game, netList, netListForStates);
-                lifeTime += Globals.pacmanSpeed;
-                ghostThreshold += Globals.pacmanSpeed;
-
-                if (Game.gameLost == true) {
-                    curMaze = 0;
-                }
-                
-                // Delay the gameplay if we are in realtime visualisation
-                if (Globals.showVisualisation == true) {
-                    Thread.sleep(1000 / Globals.timeResolution);
-                }
-                
-                // Set ghost behaviour
-                determineGhostBehaviour(generator, Game);
-            }
-            
-            // Satisfy some graphs
-            if (Globals.showVisualisation == true) {
-                Game.vis.getRidOf();
-            }
-            if (Globals.showQGraph == true) {
-                qgraph.clearData();
-            }
-            
-            // If training was delayed until after the game, perform training now
-            if (Globals.trainingAfterTheFact == true) {
-                Iterator<NeuralNetwork> it = netList.iterator();
-                while(it.hasNext())
-                {
-                    NeuralNetwork obj = it.next();
-                    obj.process_queue(Game.gameLost);
-                }
-            }
+            playGame(session, netList, netListForStates);
             
         } while (Globals.limitGames == false || Globals.totalGames > gamesdone);
         
         System.exit(0);
     }
 
-    // Function to determine the proper ghost behaviour
-    public static void determineGhostBehaviour(Random generator, Environment Game) {
+    // Function that creates the neural networks for training state-action pairs, as set in the Globals
+    public static ArrayList<NeuralNetwork> createNetworks() {
+        ArrayList<NeuralNetwork> netList = new ArrayList<NeuralNetwork>();
 
-        // Override ghost behaviour if a static ghost state was set in the Globals
-        if (Globals.alwaysEnabled == true) {
-            Game.globalGhostState = Globals.alwaysState;
-            
-            if (Globals.alwaysState == Globals.GHOST_AFRAID) {
-                remainPowerpill = 1;
-                for (int i = 0; i < Game.getGhosts().length; i++) {
-                    Game.getGhost(i).state = Globals.GHOST_AFRAID;
-                }
-            }
-            
-            Game.propagateGhostBehaviour();
-            return;
-        }
+        // Calculate the amount of input values (in total, not per network!)
+        numInputValues = util.calculateActiveAlgorithms() * 4;
 
-        // Alter the global ghost state
-        
-        // Remember, the ghosts will only take on this state when propagateGhostBehaviour
-        // is called, or their state is manually altered to -1.
+        // Calculate the specifications of the networks
+        // Customizing these values will require altering of many functions and variables,
+        // mainly those used for training and collecting input.
+        hiddens = Globals.hiddenNeurons;
+        outputs = 1;
 
-        if (ghostThreshold > 1) {
-            Game.globalGhostState = Globals.GHOST_CHASE;
-        }
-        if (ghostThreshold > 10) {
-            Game.globalGhostState = Globals.GHOST_RANDOM;
-        }
-        if (ghostThreshold > 70) {
-            Game.globalGhostState = Globals.GHOST_CHASE;
+        // Initialize each network
+        if (Globals.activeNet == Globals.NETWORK_SINGLE) {
+            inputs = numInputValues / 4;
+
+            NeuralNetwork netSingle = new NeuralNetwork(inputs,hiddens,outputs);
+            netList.add(netSingle);
+        } else {
+            // Alter the amount of inputs if we are dealing with action networks according to the Globals
+            inputs = numInputValues;
+
+            NeuralNetwork netLeft = new NeuralNetwork(inputs, hiddens, outputs);
+            NeuralNetwork netRight = new NeuralNetwork(inputs, hiddens, outputs);
+            NeuralNetwork netUp = new NeuralNetwork(inputs, hiddens, outputs);
+            NeuralNetwork netDown = new NeuralNetwork(inputs, hiddens, outputs);
+            netList.add(netLeft);
+            netList.add(netRight);
+            netList.add(netUp);
+            netList.add(netDown);
         }
-        if (ghostThreshold > 85) {
-            Game.globalGhostState = Globals.GHOST_RANDOM;
+
+        return netList;
+    }
+
+    // Function that creates the neural networks for training states, if QV-learning is enabled.
+    // Should be called after createNetworks, which sets the specifications of the networks.
+    public static ArrayList<NeuralNetwork> createStateNetworks() {
+        ArrayList<NeuralNetwork> netListForStates = new ArrayList<NeuralNetwork>();
+
+        // When QV-learning is enabled, create neural networks for training states
+        if (Globals.learningRule == Globals.QV) {
+            NeuralNetwork netStates = new NeuralNetwork(numInputValues, hiddens, outputs);
+            netListForStates.add(netStates);
         }
-        if (ghostThreshold >= 120) {
-            Game.globalGhostState = Globals.GHOST_SCATTER;
-            ghostThreshold = 0;
+
+        return netListForStates;
+    }
+
+    // Function to be called before every game, which performs a counter reset if necessary
+    static synchronized void prepareGame() {
+        counterReset = Globals.trainingData.getTraining(gamesdone);
+        if (counterReset == true) {
+            resetCounters();
         }
+    }
 
-        // If Ms. Pac-man just ate a powerpill
-        if (Game.justPowerpill == true) {
+    // Function to write the current networks to file
+    static void writeNetworks(ArrayList<NeuralNetwork> netList, ArrayList<NeuralNetwork> netListForStates) {
+        writeNN(NNDir, netList);
+        writeNN(NNSDir, netListForStates);
+    }
 
-            Game.justPowerpill = false;
+    // Function that plays a game until it ends, training the networks along the way
+    static void playGame(GameSession session, ArrayList<NeuralNetwork> netList, ArrayList<NeuralNetwork> netListForStates) throws InterruptedException {
+        Environment Game = session.game;
 
-            // Set how many network runs the power pill has left
-            remainPowerpill = (int) ((double) Globals.durationPowerpill / (double) Globals.pacmanSpeed);
+        // Repeat until the game ends
+        while (Game.gameEnded == false) {
 
-            // Set all ghosts to the afraid state
-            for (int i = 0; i < Game.getGhosts().length; i++) {
-                Game.getGhost(i).state = Globals.GHOST_AFRAID;
-            }
+            // Perform a network run and keep track of its results
+            session.totalReward += run(session, netList, netListForStates);
 
-        } else if (remainPowerpill > 0) {
+            // Delay the gameplay if we are in realtime visualisation
+            if (Globals.showVisualisation == true) {
+                Thread.sleep(1000 / Globals.timeResolution);
+            }
 
-            // If there is a power pill still active, lower the runs it has left.
-            remainPowerpill--;
+            // Count the distance traveled and set ghost behaviour
+            session.advance();
+        }
 
-        } else {
+        // Satisfy some graphs
+        if (Globals.showVisualisation == true) {
+            Game.vis.getRidOf();
+        }
+        if (Globals.showQGraph == true) {
+            qgraph.clearData();
+        }
 
-            // If there is no power pill active, propagate the global ghost state to all ghosts
-            // They will assume the global ghost state after this move
-            boolean dontbeScared = false;
-            for (int i = 0; i < Game.getGhosts().length; i++) {
-                if (Game.getGhost(i).state == Globals.GHOST_AFRAID) {
-                    dontbeScared = true;
-                }
-            }
-            if (dontbeScared == true) {
-                Game.propagateGhostBehaviour();
+        // If training was delayed until after the game, perform training now
+        if (Globals.trainingAfterTheFact == true) {
+            Iterator<NeuralNetwork> it = netList.iterator();
+            while(it.hasNext())
+            {
+                NeuralNetwork obj = it.next();
+                obj.process_queue(Game.gameLost);
             }
-
         }
     }
 
     // Function to read all mazes in a directory
+    // A compiled maze next to its source is left out, as reading the source loads it when it is up to date
     public static ArrayList<String> readMazes(String dir) {
         ArrayList<String> mazeList = new ArrayList<String>();
 
@@ -391,47 +325,69 @@ public class PacMan {
                 mazeList.add(f.toString());
             }
         }
+        ArrayList<String> compiled = new ArrayList<String>();
+        for (String name : mazeList) {
+            if (!MazeImage.isCompiled(name)) {
+                compiled.add(MazeImage.compiledName(name));
+            }
+        }
+        mazeList.removeAll(compiled);
         return mazeList;
     }
 
     // Function to preprocess the game environment for the path finding algorithms
     public static void initialize(Environment Game) {
+        if (Game.compiled) {
+            // The tables were loaded together with the maze
+            return;
+        }
         Game.setVertices();
-        Game.setNeigborVertices();
+        Game.setVertexDistances();
+        Game.setLandmarks();
+        Game.setHierarchy();
+        Game.setDistanceOracle();
     }
 
     // Function to get the state representation in a certain Game
     // This is a collection of all input values
     // Depending on drawGraph the state representation will be plotted, if allowed by the Globals
-    public static double[] getStateRep(Environment Game, boolean drawGraph) {
+    public static double[] getStateRep(GameSession session, boolean drawGraph) {
+        double[] stateRep = new double[util.calculateActiveAlgorithms() * 4];
+        getStateRep(session, drawGraph, stateRep, 0);
+        return stateRep;
+    }
+
+    // Function that stores the state representation in an array, from the offset on
+    public static void getStateRep(GameSession session, boolean drawGraph, double[] stateRep, int offset) {
         // Initialize some variables
-        double[] stateRep = new double[numInputValues];
+        Environment Game = session.game;
         Ghostfinder gh = null;
         Pillfinder pf = null;
         int x1 = Game.getPacMan().getX1();
         int y1 = Game.getPacMan().getY1();
 
-        // Get possible actions
-        ArrayList<Short> pa = Game.possibleActions(x1, y1);
+        // The input algorithms share their path queries, until an agent moves or an item is eaten.
+        // The state after a move is computed again at the start of the next run, which then costs nothing.
+        session.context.update(Game);
 
         // If input algorithms require the ghostFinder, let it do its thing
         if (Globals.enableGhostDistanceInput || Globals.enableGhostDirectionInput || Globals.enableGhostAfraidInput) {
             gh = new Ghostfinder();
-            gh.findGhosts(Game);
+            gh.findGhosts(Game, session.context);
         }
         // If input algorithms require the Pillfinder, let it do its thing
         if (Globals.enablePillInput || Globals.enablePowerPillInput) {
             pf = new Pillfinder();
-            pf.findPills(x1, y1, Game);
+            pf.findPills(x1, y1, Game, session.context);
         }
 
         // Let the entrapment finder find entrapment, and store the result
         Entrapmentfinder f = new Entrapmentfinder();
-        f.findEntrapment((short) x1, (short) y1, Game.getGhosts(), Game);
+        f.findEntrapment((short) x1, (short) y1, Game.getGhosts(), Game, session.context);
         if (f.safeFound == true) {
-            entrapped = false;
+            session.entrapped = false;
         } else {
-            entrapped = true;
+            session.entrapped = true;
         }
 
         // Initialize categorization of ghosts
@@ -472,12 +428,12 @@ public class PacMan {
 
         // Collect a huge array of input values, by walking through each input algorithm
         // If asked to do so, the values will be plotted as well
-        int i = 0;
+        int i = offset;
         if (Globals.enableActionInput == true) {
-            stateRep[i + 0] = actualMove == Globals.ACTION_LEFT ? 1 : 0;
-            stateRep[i + 1] = actualMove == Globals.ACTION_RIGHT ? 1 : 0;
-            stateRep[i + 2] = actualMove == Globals.ACTION_UP ? 1 : 0;
-            stateRep[i + 3] = actualMove == Globals.ACTION_DOWN ? 1 : 0;
+            stateRep[i + 0] = session.actualMove == Globals.ACTION_LEFT ? 1 : 0;
+            stateRep[i + 1] = session.actualMove == Globals.ACTION_RIGHT ? 1 : 0;
+            stateRep[i + 2] = session.actualMove == Globals.ACTION_UP ? 1 : 0;
+            stateRep[i + 3] = session.actualMove == Globals.ACTION_DOWN ? 1 : 0;
 
             if (drawGraph==true && Globals.showVisualisation == true && Globals.showCharter == true) {
                 chart.alterData("ActionInput", "Left", stateRep[i + 0]);
@@ -616,7 +572,7 @@ public class PacMan {
             if (numActiveGhosts == Game.numGhosts) {
                 remainingTimePowerPill = 0.0;
             } else {
-                remainingTimePowerPill = (double) remainPowerpill / (double) ((double) Globals.durationPowerpill / (double) Globals.pacmanSpeed);
+                remainingTimePowerPill = (double) session.remainPowerpill / (double) ((double) Globals.durationPowerpill / (double) Globals.pacmanSpeed);
             }
             stateRep[i + 0] = remainingTimePowerPill;
             stateRep[i + 1] = remainingTimePowerPill;
@@ -633,121 +589,50 @@ public class PacMan {
 
         }
 
-        // Return the resulting state representation
-        return stateRep;
     }
 
     // This function performs the actual network runs,
     // including collecting input, propagating the nodes, performing the action and training the network
-    public static double run(Environment Game, ArrayList<NeuralNetwork> netList, ArrayList<NeuralNetwork> netListForStates) {
+    public static double run(GameSession session, ArrayList<NeuralNetwork> netList, ArrayList<NeuralNetwork> netListForStates) {
+        Environment Game = session.game;
         double reward;
-        runcount++;
+        int runnumber = runcount.incrementAndGet();
 
         // Get the current state representation
-        double[] curStateRep = getStateRep(Game, true);
+        double[] curStateRep = getStateRep(session, true);
 
         // Compute the current Q-values and plot them if told so by the Globals
-        curQs = getQValues(curStateRep, netList);
+        session.curQs = getQValues(curStateRep, netList);
         if (Globals.showQGraph == true) {
             for (int i = 0; i < 4; i++) {
-                qgraph.addQValue(i, runcount, curQs[i]);
+                qgraph.addQValue(i, runnumber, session.curQs[i]);
             }
         }
         
-        // Perform the previously selected move
-        actualMove = Game.getPacMan().move(curAction, Game);
-        boldAction = actualMove;
-
-        // Update the visualization
-        if (Globals.showVisualisation == true) {
-            Game.vis.updateVisualisation();
+        // Perform the previously selected move, and see where it leads
+        reward = session.move(session.curAction);
+        if (Game.gameEnded) {
+            writeScore(session);
         }
-        
-        // Determine reward, based on the action just performed
-        int PacManX = Game.getPacMan().getX2();
-        int PacManY = Game.getPacMan().getY2();
-        reward = Game.eatItem(PacManX, PacManY, Game.getPacMan().getMovefloat());
-        totalPillReward += reward;
-        reward += Globals.rewardStep;
-        if (reverseAction == true) reward += Globals.rewardReverse;
-
-        // Check if game is finished, move ghosts, and check again
-        reward += checkFinished(Game);
-        if (!Game.gameEnded) {
-            for (int i = 0; i < Game.getGhosts().length; i++) {
-                Game.moveGhost(i);
-            }
-            reward += checkFinished(Game);
-        }
-        if (Game.gameLost) {
-            reward += Globals.rewardLose;
-            
-            if (Globals.showRIPGraph) {
-                dgraph.plotDeath(lastNet);
-            }
-        } else if (Game.gameEnded && !Game.gameLost) {
-            reward += Globals.rewardWin;
+        if (Game.gameLost && Globals.showRIPGraph) {
+            dgraph.plotDeath(session.lastNet);
         }
 
         // Compute the state representation Q-values in the state resulting from the action just performed
-        double[] newStateRep = getStateRep(Game, false);
-        newQs = getQValues(newStateRep, netList);
+        double[] newStateRep = getStateRep(session, false);
+        session.newQs = getQValues(newStateRep, netList);
 
         // Get the possible actions in the resulting state
-        ArrayList<Short> newPA = Game.possibleActions(Game.getPacMan().getX1(), Game.getPacMan().getY1());
+        short[] newPA = Game.getLegalMoves(Game.getPacMan().getX1(), Game.getPacMan().getY1());
 
-        // Initialize some variables
-        short newAction = -1;
-        short bestAction = -1;
-        double newQsa = newQs[newPA.get(0)];
-
-        // Exploitation vs. Exploration
-        // Select the best action and assume this will be the next action
-        // Store the result and the corresponding output value
-        for (int i = 0; i < newPA.size(); i++) {
-            if (newQs[newPA.get(i)] >= newQsa) {
-                bestAction = newPA.get(i);
-                newAction = newPA.get(i);
-                newQsa = newQs[newPA.get(i)];
-            }
-        }
+        // Select the best action, and assume this will be the next action unless Ms. Pac-Man explores
+        short bestAction = bestAction(session.newQs, 0, newPA);
+        short newAction = selectAction(session, bestAction, newPA);
 
-        // Get the chance Ms. Pac-Man should be forced to explore
-        explorationchance = Globals.explorationTime;
-        if (Globals.gradualExploration == true && gamesdone >= Globals.explorationTippingpoint) {
-            if (gamesdone < Globals.explorationLowest + Globals.explorationTippingpoint) {
-                explorationchance = Globals.explorationMinimum + (Globals.explorationTime - Globals.explorationMinimum) * ((double) Globals.explorationLowest - (double) (gamesdone - Globals.explorationTippingpoint)) / (double) Globals.explorationLowest;
-            } else {
-                explorationchance = Globals.explorationMinimum;
-            }
-        }
-
-        // Exploration
-        // If we need to explore, select a random action and let this be the next action
-        if (Math.random() <= explorationchance) {
-            // Depending on the globals...
-            if (Globals.boldExploration) {
-                // Select a random action, keep a steady direction until the next intemrsection
-                // and disallow reversing on a path.
-                if (Game.getPacMan().reachedNewVertex) {
-                    ArrayList<Short> actions = new ArrayList<Short>();
-                    for (int i = 0; i < newPA.size(); i++) {
-                        short pa = newPA.get(i);
-                        if (pa != util.reverseActionFor(actualMove)) {
-                            actions.add(pa);
-                        }
-                    }
-                    if (actions.isEmpty()) {
-                        actions = newPA;
-                    }
-                    boldAction = actions.get((int) (Math.random() * actions.size()));
-                    
-                }
-                newAction = boldAction;
-            } else {
-                // Or just select a random action
-                newAction = newPA.get((int) (Math.random() * newPA.size()));
-            }
+        // When planning, the planner decides on the next action instead, without exploration
+        if (planner != null && !Game.gameEnded) {
+            newAction = planner.decide(session, netList);
+            session.explorationchance = 0;
         }
 
         // Calculate the desired network output, and train network
@@ -756,55 +641,51 @@ public class PacMan {
         // Q(v)-LEARNING
         if (Globals.learningRule == Globals.QV) {
             NeuralNetwork netStates = netListForStates.get(0);
-            newV = netStates.compute(newStateRep);
+            session.newV = netStates.compute(newStateRep);
             // Get the desired output for the action that was just performed
             // Interpretation of formula:  r + y * V(s')
-            curQs[curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : newV[0]));
+            session.curQs[session.curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : session.newV[0]));
             // Get the desired state output for the action that was just performed
-            double[] desiredStateOutput =  {curQs[curAction]};
+            double[] desiredStateOutput =  {session.curQs[session.curAction]};
             // Train the network
             // Interpretation of formula: V(s) = V(s) + n * (r + y * V(s') - V(s))
-            train(netStates, curStateRep, desiredStateOutput);
+            train(session, netStates, curStateRep, desiredStateOutput);
             
         // SARSA
         } else if (Globals.learningRule == Globals.SARSA) {
             // Get the desired output for the action that was just performed
             // Interpretation of formula: r + y * Q(s', a')
-            curQs[curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : newQs[newAction]));
+            session.curQs[session.curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : session.newQs[newAction]));
      
         // Q-LEARNING
         } else {
             // Get the desired output for the action that was just performed
             // Interpretation of formula: r + y * max Q(s', a')
-            curQs[curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : newQs[bestAction]));
+            session.curQs[session.curAction] = reward + (Globals.discountFactor * (Game.gameEnded ? 0.0 : session.newQs[bestAction]));
         }
 
         // Acquire the desired output value
-        double[] desiredOutput = {curQs[curAction]};
+        double[] desiredOutput = {session.curQs[session.curAction]};
 
         // In the case of QV-learning, train the state network
         // Interpretation of formula: Q(s, a) = Q(s, a) + n * (r + y * V(s') - Q(s, a))
         if (Globals.activeNet == Globals.NETWORK_SINGLE) {
-            double[] input = getInputValues(curStateRep, curAction);
-            train(netList.get(0), input, desiredOutput);
+            double[] input = getInputValues(curStateRep, session.curAction);
+            train(session, netList.get(0), input, desiredOutput);
         } else {
             double[] input = curStateRep;
-            train(netList.get(curAction), input, desiredOutput);
-        }
-
-        // Store if the next action will reverse Ms. Pac-Man on her path
-        if (curAction == util.reverseActionFor(newAction)) {
-            reverseAction = true;
-        } else {
-            reverseAction = false;
+            train(session, netList.get(session.curAction), input, desiredOutput);
         }
 
-        // Set the next action that was select as the future action to be performed
-        curAction = newAction;
+        // Set the next action that was selected as the future action to be performed,
+        // and store if it will reverse Ms. Pac-Man on her path
+        session.setNextAction(newAction);
         
         // Lower the learning rate if told by the Globals to do so on a win
         if (Game.gameEnded && !Game.gameLost) {
-            Globals.learningRate *= Globals.diminishLearning;
+            synchronized (PacMan.class) {
+                Globals.learningRate *= Globals.diminishLearning;
+            }
         }
 
         // Update the visualization
@@ -815,38 +696,67 @@ public class PacMan {
         return (reward);
     }
     
-    // Function that returns whether the game has finished
-    private static double checkFinished(Environment Game) {
-        // Get whether there has been a collision with a ghost and process the type of collision
-        short ghostCollision = Game.ghostCollision();
-        if (ghostCollision == Globals.COLLISION_FATAL) {
-            // A fatal collision
-            Game.gameEnded = true;
-            Game.gameLost = true;
-
-            pillPercentage = ((double) (Game.totalPills - Game.pillsLeft)) / (double) Game.totalPills * 100;
-
-            writeScore(lifeTime, Game);
-        } else if (ghostCollision == Globals.COLLISION_ALLOWED) {
-            // A collision with a scared ghost
-            return Globals.rewardGhost;
-        } else {
-            // And if there has not been a collision, check if Ms.Pac-Man ate all pills
-            if (Game.pillsLeft == 0) {
-                // Tthe game has been won
-                Game.gameEnded = true;
-                Game.gameLost = false;
-                numSuccess++;
-
-                pillPercentage = 100;
-                writeScore(lifeTime, Game);            }
+    // Function that returns the legal action with the best Q-value,
+    // out of the four Q-values stored in Qs from the offset on
+    static short bestAction(double[] Qs, int offset, short[] legal) {
+        short bestAction = -1;
+        double bestQ = Qs[offset + legal[0]];
+        for (int i = 0; i < legal.length; i++) {
+            if (Qs[offset + legal[i]] >= bestQ) {
+                bestAction = legal[i];
+                bestQ = Qs[offset + legal[i]];
+            }
         }
+        return bestAction;
+    }
+
+    // Function that selects the next action out of the legal actions in the current state:
+    // the best action, or a random one if Ms. Pac-Man should be forced to explore
+    static short selectAction(GameSession session, short bestAction, short[] legal) {
+        Environment Game = session.game;
+        short newAction = bestAction;
 
-        if (Game.gameEnded == true) {
-            remainPowerpill = 0;
+        // Get the chance Ms. Pac-Man should be forced to explore
+        session.explorationchance = Globals.explorationTime;
+        if (Globals.gradualExploration == true && gamesdone >= Globals.explorationTippingpoint) {
+            if (gamesdone < Globals.explorationLowest + Globals.explorationTippingpoint) {
+                session.explorationchance = Globals.explorationMinimum + (Globals.explorationTime - Globals.explorationMinimum) * ((double) Globals.explorationLowest - (double) (gamesdone - Globals.explorationTippingpoint)) / (double) Globals.explorationLowest;
+            } else {
+                session.explorationchance = Globals.explorationMinimum;
+            }
         }
 
-        return 0;
+        // Exploration
+        // If we need to explore, select a random action and let this be the next action
+        if (session.generator.nextDouble() <= session.explorationchance) {
+            // Depending on the globals...
+            if (Globals.boldExploration) {
+                // Select a random action, keep a steady direction until the next intemrsection
+                // and disallow reversing on a path.
+                if (Game.getPacMan().reachedNewVertex) {
+                    short[] actions = new short[legal.length];
+                    int numActions = 0;
+                    for (int i = 0; i < legal.length; i++) {
+                        short pa = legal[i];
+                        if (pa != util.reverseActionFor(session.actualMove)) {
+                            actions[numActions] = pa;
+                            numActions++;
+                        }
+                    }
+                    if (numActions == 0) {
+                        actions = legal;
+                        numActions = legal.length;
+                    }
+                    session.boldAction = actions[(int) (session.generator.nextDouble() * numActions)];
+                    
+                }
+                newAction = session.boldAction;
+            } else {
+                // Or just select a random action
+                newAction = legal[(int) (session.generator.nextDouble() * legal.length)];
+            }
+        }
+        return newAction;
     }
 
     // Function that retrieves the input values associated with a certain action,
@@ -865,7 +775,7 @@ public class PacMan {
     }
 
     // Function that acquires Q-Values by propagating one or more networks based on a state representation
-    private static double[] getQValues(double[] stateRep, ArrayList<NeuralNetwork> netList) {
+    public static double[] getQValues(double[] stateRep, ArrayList<NeuralNetwork> netList) {
         double[] Qs = new double[4];
 
         // If we are dealing with a single network, offer input four times to the network.
@@ -888,19 +798,59 @@ public class PacMan {
         return Qs;
     }
 
+    // Function that computes the Q-values of several states at once, with one pass through each network.
+    // The state representations are stored one after another, and so are the four Q-values of each state.
+    public static double[] getQValues(double[] stateReps, int numStates, ArrayList<NeuralNetwork> netList) {
+        int length = stateReps.length / numStates;
+        double[] Qs = new double[numStates * 4];
+
+        // With a single network, every state gives four rows of input, one for each direction,
+        // in the same order as the Q-values they result in
+        if (Globals.activeNet == Globals.NETWORK_SINGLE) {
+            int rowLength = length / 4;
+            double[] input = new double[numStates * 4 * rowLength];
+            for (int s = 0; s < numStates; s++) {
+                for (int a = 0; a < 4; a++) {
+                    int row = (s * 4 + a) * rowLength;
+                    for (int j = 0; j < rowLength; j++) {
+                        input[row + j] = stateReps[s * length + a + 4 * j];
+                    }
+                }
+            }
+            double[] out = netList.get(0).computeBatch(input, numStates * 4);
+            System.arraycopy(out, 0, Qs, 0, Qs.length);
+        // With action networks, each network gets every state representation as it is
+        } else {
+            for (int a = 0; a < 4; a++) {
+                double[] out = netList.get(a).computeBatch(stateReps, numStates);
+                for (int s = 0; s < numStates; s++) {
+                    Qs[s * 4 + a] = out[s];
+                }
+            }
+        }
+
+        return Qs;
+    }
+
     // Function that trains a network based on a given input and a desired output
-    private static void train(NeuralNetwork net, double[] input, double[] desired) {
+    private static void train(GameSession session, NeuralNetwork net, double[] input, double[] desired) {
         // Calculate the proper learningRate
-        learningRate = Globals.learningRate;
+        // The rate is lowered on a win by any actor, under the same lock, see run
+        double baseRate;
+        synchronized (PacMan.class) {
+            baseRate = Globals.learningRate;
+        }
+        double learningRate = baseRate;
         if (Globals.gradualLearning == true && gamesdone >= Globals.learningTippingpoint) {
             if (gamesdone < Globals.learningLowest + Globals.learningTippingpoint) {
-                learningRate = Globals.learningMinimum + (Globals.learningRate - Globals.learningMinimum) * ((double) Globals.learningLowest - (double) (gamesdone - Globals.learningTippingpoint)) / (double) (Globals.learningLowest);
+                learningRate = Globals.learningMinimum + (baseRate - Globals.learningMinimum) * ((double) Globals.learningLowest - (double) (gamesdone - Globals.learningTippingpoint)) / (double) (Globals.learningLowest);
             } else {
                 learningRate = Globals.learningMinimum;
             }
         }
         
         // Train now, or wait until after the game is finished if ordered to do so by the Globals
+        session.learningRate = learningRate;
         if (Globals.trainingAfterTheFact == true) {
             net.enqueue(input, desired, learningRate);
         } else {
@@ -910,8 +860,12 @@ public class PacMan {
 
     // Function that calculates statistics after a game is finished,
     // plotting and storing them afterwards
-    private static void writeScore(float score, Environment Game) {
+    private static synchronized void writeScore(GameSession session) {
+        Environment Game = session.game;
         gamesdone++;
+        if (!Game.gameLost) {
+            numSuccess++;
+        }
 
         if (firstepoch == true) {
             epochBegin = gamesdone;
@@ -924,25 +878,25 @@ public class PacMan {
             runningAverage = gamesdone + 1;
         }
 
-        avgLifeTime = (float) ((1 - 1.0 / (double) runningAverage) * avgLifeTime + 1.0 / (double) runningAverage * lifeTime);
+        avgLifeTime = (float) ((1 - 1.0 / (double) runningAverage) * avgLifeTime + 1.0 / (double) runningAverage * session.lifeTime);
 
         if (maxLifeTime == 0) {
-            maxLifeTime = lifeTime;
+            maxLifeTime = session.lifeTime;
         } else {
             maxLifeTime *= 0.9;
-            if (lifeTime > maxLifeTime) {
-                maxLifeTime = lifeTime;
+            if (session.lifeTime > maxLifeTime) {
+                maxLifeTime = session.lifeTime;
             }
             if (avgLifeTime > maxLifeTime) {
                 maxLifeTime = avgLifeTime;
             }
         }
         if (minLifeTime == 0) {
-            minLifeTime = lifeTime;
+            minLifeTime = session.lifeTime;
         } else {
             minLifeTime *= 1.1;
-            if (lifeTime < minLifeTime) {
-                minLifeTime = lifeTime;
+            if (session.lifeTime < minLifeTime) {
+                minLifeTime = session.lifeTime;
             }
             if (avgLifeTime < minLifeTime) {
                 minLifeTime = avgLifeTime;
@@ -954,25 +908,25 @@ public class PacMan {
         }
 
 
-        avgScore = (float) ((1 - 1.0 / (double) runningAverage) * avgScore + 1.0 / (double) runningAverage * totalPillReward);
+        avgScore = (float) ((1 - 1.0 / (double) runningAverage) * avgScore + 1.0 / (double) runningAverage * session.totalPillReward);
 
         if (maxScore == 0) {
-            maxScore = (float) totalPillReward;
+            maxScore = (float) session.totalPillReward;
         } else {
             maxScore *= maxScore > 0 ? 0.8 : 1.2;
-            if (totalPillReward > maxScore) {
-                maxScore = (float) totalPillReward;
+            if (session.totalPillReward > maxScore) {
+                maxScore = (float) session.totalPillReward;
             }
             if (avgScore > maxScore) {
                 maxScore = avgScore;
             }
         }
         if (minScore == 0) {
-            minScore = (float) totalPillReward;
+            minScore = (float) session.totalPillReward;
         } else {
             minScore *= minScore > 0 ? 1.2 : 0.8;
-            if (totalPillReward < minScore) {
-                minScore = (float) totalPillReward;
+            if (session.totalPillReward < minScore) {
+                minScore = (float) session.totalPillReward;
             }
             if (avgScore < minScore) {
                 minScore = avgScore;
@@ -989,25 +943,25 @@ public class PacMan {
         }
 
 
-        avgReward = (float) ((1 - 1.0 / (double) runningAverage) * avgReward + 1.0 / (double) runningAverage * totalReward);
+        avgReward = (float) ((1 - 1.0 / (double) runningAverage) * avgReward + 1.0 / (double) runningAverage * session.totalReward);
 
         if (maxReward == 0) {
-            maxReward = totalReward;
+            maxReward = session.totalReward;
         } else {
             maxReward *= maxReward > 0 ? 0.8 : 1.2;
-            if (totalReward > maxReward) {
-                maxReward = totalReward;
+            if (session.totalReward > maxReward) {
+                maxReward = session.totalReward;
             }
             if (avgScore > maxScore) {
                 maxReward = avgReward;
             }
         }
         if (minScore == 0) {
-            minReward = totalReward;
+            minReward = session.totalReward;
         } else {
             minReward *= minReward > 0 ? 1.2 : 0.8;
-            if (totalReward < minReward) {
-                minReward = totalReward;
+            if (session.totalReward < minReward) {
+                minReward = session.totalReward;
             }
             if (avgReward < minReward) {
                 minReward = avgReward;
@@ -1020,9 +974,11 @@ public class PacMan {
 
         firstepoch = false;
 
-        System.out.println("#" + String.format("%05d", gamesdone) + " - lifeTime:  " + String.format("%6s", lifeTime) + "  - Score:  " + String.format("%6.2f", (float)pillPercentage) + "%" + "  - Exploration:  " + String.format("%5.4f", explorationchance) + "  - learningRate:  " + String.format("%8.7f", learningRate));
-        
-        writeMSE(scoreFile);
+        if (scoreFile != null) {
+            System.out.println("#" + String.format("%05d", gamesdone) + " - lifeTime:  " + String.format("%6s", session.lifeTime) + "  - Score:  " + String.format("%6.2f", (float)session.pillPercentage) + "%" + "  - Exploration:  " + String.format("%5.4f", session.explorationchance) + "  - learningRate:  " + String.format("%8.7f", session.learningRate));
+
+            writeMSE(scoreFile, session);
+        }
 
     }
 
@@ -1066,7 +1022,7 @@ public class PacMan {
     }
 
     // Function that writes the results of a game to a CSV-file
-    public static void writeMSE(String filename) {
+    public static synchronized void writeMSE(String filename, GameSession session) {
         // Format: number of games played, index of maze, percentage of pills collected,
         //         lifetime in distance travelled by Ms. Pac-Man, exploration chance,
         //         learning rate
@@ -1074,7 +1030,7 @@ public class PacMan {
 
         try {
             PrintWriter out = new PrintWriter(new FileWriter(filename, true));
-            out.println(gamesdone + "," + curMaze + "," + pillPercentage + "," + lifeTime + "," + (float)explorationchance + "," + (float)learningRate);
+            out.println(gamesdone + "," + session.mazeIndex + "," + session.pillPercentage + "," + session.lifeTime + "," + (float)session.explorationchance + "," + (float)session.learningRate);
             out.flush();
             out.close();
         } catch (IOException e) {
@@ -1084,7 +1040,7 @@ public class PacMan {
 
     // Function that reads one or more networks from a file
     // This will also override some of the Global-settings
-    private static ArrayList<NeuralNetwork> readNN(String filename) {
+    public static ArrayList<NeuralNetwork> readNN(String filename) {
         ArrayList<NeuralNetwork> net = new ArrayList<NeuralNetwork>();
 
         double[][] hiddenWeights = null;
@@ -0,0 +1,347 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  PLANNER
+ *  This class is called to decide on an action with a Monte Carlo tree search,
+ *  instead of taking the best action according to the networks. Every thread
+ *  searches on a fork of the game, and every simulation starts from a snapshot
+ *  of that fork, with the ghosts moving as in the game itself but with new
+ *  random choices. The tree holds sequences of actions, each held until
+ *  Ms. Pac-Man reaches another maze position, and is searched with UCT.
+ *  Below the tree, the outcome is estimated as the Globals say: with a rollout
+ *  of random actions, with a rollout following the networks, or by the networks
+ *  alone. The threads build trees of their own, which are combined at the root:
+ *  the action simulated most often over all threads is taken.
+ *  A search stops after its share of the simulations, or when the time per
+ *  decision is up.
+ *
+ */
+
+package pacman;
+
+import environment.Environment;
+import environment.EnvironmentSnapshot;
+import global.Globals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import util.util;
+
+public class Planner {
+
+    private final int numThreads;
+    private final ExecutorService pool;     // Runs the searches of all threads but the calling one, null if there is only one
+
+    public Planner(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        if (this.numThreads > 1) {
+            pool = Executors.newFixedThreadPool(this.numThreads - 1, new ThreadFactory() {
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "planner");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            pool = null;
+        }
+    }
+
+    // Stops the threads of the planner
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // Returns the action Ms. Pac-Man should take next, from the state the session is in.
+    // The game is not changed; the random choices of the search are seeded from the session.
+    public short decide(GameSession session, ArrayList<NeuralNetwork> netList) {
+        Environment game = session.game;
+        short[] legal = game.getLegalMoves(game.getPacMan().getX1(), game.getPacMan().getY1());
+        if (legal.length == 1) {
+            return legal[0];
+        }
+
+        long deadline = (Globals.plannerTime > 0) ? System.nanoTime() + Globals.plannerTime * 1000000L : Long.MAX_VALUE;
+        int iterations = (Globals.plannerIterations > 0) ? (Globals.plannerIterations + numThreads - 1) / numThreads : Integer.MAX_VALUE;
+
+        // The forks are made here, as the game belongs to the calling thread
+        Search[] searches = new Search[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            searches[t] = new Search(game.fork(), session, netList, session.generator.nextLong(), iterations, deadline);
+        }
+        ArrayList<Future<Node>> futures = new ArrayList<Future<Node>>();
+        for (int t = 1; t < numThreads; t++) {
+            futures.add(pool.submit(searches[t]));
+        }
+        Node[] roots = new Node[numThreads];
+        roots[0] = searches[0].call();
+        try {
+            for (int t = 1; t < numThreads; t++) {
+                roots[t] = futures.get(t - 1).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while planning", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("A planner thread failed", e.getCause());
+        }
+
+        // Take the action simulated most often over all trees, or the one with the better outcome if there is a tie
+        short best = legal[0];
+        int bestVisits = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (short action : legal) {
+            int visits = 0;
+            double value = 0;
+            for (Node root : roots) {
+                Node child = root.children[action];
+                if (child != null) {
+                    visits += child.visits;
+                    value += child.value;
+                }
+            }
+            double mean = (visits > 0) ? value / visits : Double.NEGATIVE_INFINITY;
+            if (visits > bestVisits || (visits == bestVisits && mean > bestValue)) {
+                best = action;
+                bestVisits = visits;
+                bestValue = mean;
+            }
+        }
+        return best;
+    }
+
+    // A node of the tree, reached by a sequence of actions from the root.
+    // The ghosts move at random, so the same node can stand for several states.
+    private static class Node {
+
+        final Node[] children = new Node[4];    // For each action, the node it leads to, once simulated
+        int visits = 0;
+        double value = 0;                       // Sum of the returns of all simulations from the parent through this node
+    }
+
+    private static class Search implements Callable<Node> {
+
+        private final Environment game;         // Fork of the game, played in the simulations
+        private final GameSession start;        // The session at the root
+        private final GameSession session;      // The session played in the simulations
+        private final ArrayList<NeuralNetwork> netList;
+        private final Random generator;
+        private final int iterations;
+        private final long deadline;
+        private final int maxTicks;             // Ticks an action is held at most, should Ms. Pac-Man not reach another position
+        private double stepDiscount;            // Discount over the ticks of the last step
+        private double bestQ;                   // Q-value of the last action chosen by the networks
+        // The nodes, rewards and discounts along the tree in the current simulation
+        private Node[] path = new Node[64];
+        private double[] rewards = new double[64];
+        private double[] discounts = new double[64];
+
+        Search(Environment game, GameSession session, ArrayList<NeuralNetwork> netList, long seed, int iterations, long deadline) {
+            this.game = game;
+            this.start = new GameSession(session, game);
+            this.session = new GameSession(session, game);
+            this.netList = netList;
+            this.generator = new Random(seed);
+            this.iterations = iterations;
+            this.deadline = deadline;
+            this.maxTicks = (int) Math.ceil(1 / (Globals.pacmanSpeed * Globals.effectPill)) + 1;
+        }
+
+        public Node call() {
+            EnvironmentSnapshot snapshot = game.snapshot();
+            Node root = new Node();
+            for (int i = 0; i < iterations && (i == 0 || System.nanoTime() < deadline); i++) {
+                if (i > 0) {
+                    game.restore(snapshot);
+                    session.copyState(start);
+                }
+                game.setSeed(generator.nextLong());
+                session.context.reset();
+                simulate(root);
+            }
+            return root;
+        }
+
+        private void simulate(Node root) {
+            // Follow the tree until it ends, and add a node for the first action not simulated before
+            int length = 0;
+            Node node = root;
+            boolean expanded = false;
+            while (!game.gameEnded && !expanded) {
+                short action = select(node);
+                Node child = node.children[action];
+                if (child == null) {
+                    child = new Node();
+                    node.children[action] = child;
+                    expanded = true;
+                }
+                if (length == path.length) {
+                    path = Arrays.copyOf(path, 2 * length);
+                    rewards = Arrays.copyOf(rewards, 2 * length);
+                    discounts = Arrays.copyOf(discounts, 2 * length);
+                }
+                path[length] = child;
+                rewards[length] = step(action);
+                discounts[length] = stepDiscount;
+                length++;
+                node = child;
+            }
+
+            // Estimate what follows, and count the return of every node from the moment it was reached
+            double value = game.gameEnded ? 0 : evaluate();
+            for (int i = length - 1; i >= 0; i--) {
+                value = rewards[i] + discounts[i] * value;
+                path[i].visits++;
+                path[i].value += value;
+            }
+            root.visits++;
+        }
+
+        // Returns an action not simulated before from the node, or otherwise the action with the best
+        // upper confidence bound. Only the actions possible in the current state are considered.
+        private short select(Node node) {
+            short[] legal = legalMoves();
+            int untried = 0;
+            for (short action : legal) {
+                if (node.children[action] == null) {
+                    untried++;
+                }
+            }
+            if (untried > 0) {
+                int pick = generator.nextInt(untried);
+                for (short action : legal) {
+                    if (node.children[action] == null && pick-- == 0) {
+                        return action;
+                    }
+                }
+            }
+
+            double logVisits = Math.log(Math.max(1, node.visits));
+            short best = legal[0];
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for (short action : legal) {
+                Node child = node.children[action];
+                double bound = child.value / child.visits + Globals.plannerExploration * Math.sqrt(logVisits / child.visits);
+                if (bound > bestBound) {
+                    best = action;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+
+        // Returns the discounted return of the state below the tree
+        private double evaluate() {
+            if (Globals.plannerPolicy == Globals.PLANNER_LEAF) {
+                networkAction();
+                return bestQ;
+            }
+            double value = 0;
+            double discount = 1;
+            for (int i = 0; i < Globals.plannerDepth && !game.gameEnded; i++) {
+                short action = (Globals.plannerPolicy == Globals.PLANNER_ROLLOUT) ? networkAction() : randomAction();
+                value += discount * step(action);
+                discount *= stepDiscount;
+            }
+            if (Globals.plannerPolicy == Globals.PLANNER_ROLLOUT && !game.gameEnded) {
+                networkAction();
+                value += discount * bestQ;
+            }
+            return value;
+        }
+
+        // Holds the action until Ms. Pac-Man reaches another maze position or the game ends,
+        // and returns the discounted reward. The discount over the ticks is left in stepDiscount.
+        // Every tick is played as in PacMan.playGame: the ghost behaviour is set, and the action performed.
+        private double step(short action) {
+            Agent pacman = game.getPacMan();
+            int x = pacman.getX1();
+            int y = pacman.getY1();
+            session.setNextAction(action);
+
+            double reward = 0;
+            double discount = 1;
+            for (int tick = 0; tick < maxTicks; tick++) {
+                session.advance();
+                reward += discount * session.move(action);
+                discount *= Globals.discountFactor;
+                session.reverseAction = false;
+                if (game.gameEnded || pacman.getX1() != x || pacman.getY1() != y) {
+                    break;
+                }
+            }
+            stepDiscount = discount;
+            return reward;
+        }
+
+        // Returns the legal action with the best Q-value according to the networks, which is kept in bestQ
+        private short networkAction() {
+            double[] Qs = PacMan.getQValues(PacMan.getStateRep(session, false), netList);
+            short[] legal = legalMoves();
+            short best = legal[0];
+            bestQ = Qs[legal[0]];
+            for (short action : legal) {
+                if (Qs[action] >= bestQ) {
+                    best = action;
+                    bestQ = Qs[action];
+                }
+            }
+            return best;
+        }
+
+        // Returns a random legal action, which only reverses Ms. Pac-Man if there is nothing else
+        private short randomAction() {
+            short[] legal = legalMoves();
+            short reverse = util.reverseActionFor(session.curAction);
+            int options = 0;
+            for (short action : legal) {
+                if (action != reverse) {
+                    options++;
+                }
+            }
+            if (options == 0) {
+                return legal[generator.nextInt(legal.length)];
+            }
+            int pick = generator.nextInt(options);
+            for (short action : legal) {
+                if (action != reverse && pick-- == 0) {
+                    return action;
+                }
+            }
+            return legal[0];
+        }
+
+        private short[] legalMoves() {
+            return game.getLegalMoves(game.getPacMan().getX1(), game.getPacMan().getY1());
+        }
+    }
+}
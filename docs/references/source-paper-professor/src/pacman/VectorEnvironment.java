@@ -0,0 +1,168 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  VECTORENVIRONMENT
+ *  This class is called to play several games in lockstep from a single thread.
+ *  On every step the state representations of all games are stored one after
+ *  another in a single array, the Q-values of all of them are computed with
+ *  one pass through each network, and every game performs its action.
+ *  A game that has ended is replaced by a new game on a random maze, so the
+ *  number of games stays the same. Ms. Pac-Man selects her actions as in a
+ *  network run, see PacMan.selectAction.
+ *  This class is for inference only: nothing is trained, as the networks are
+ *  used as they are, and finished games are not written to the score file.
+ *  It is used to measure the gain of batching, see BatchBenchmark.
+ *
+ */
+
+package pacman;
+
+import environment.MazeRepository;
+import java.util.ArrayList;
+import java.util.Random;
+import util.util;
+
+public class VectorEnvironment {
+
+    private final MazeRepository mazes;
+    private final ArrayList<String> mazeList;
+    private final Random generator;             // Decides the mazes and the seeds of new games
+    private final GameSession[] sessions;       // The games played in lockstep
+    private final int numInputValues;           // Amount of input values of a single game
+    private final double[] states;              // The state representations of all games, one after another
+    private double[] Qs;                        // The four Q-values of each game, one after another
+
+    private int gamesPlayed = 0;
+    private long runsPlayed = 0;
+
+    public VectorEnvironment(int numGames, MazeRepository mazes, ArrayList<String> mazeList) {
+        this(numGames, mazes, mazeList, new Random());
+    }
+
+    // Plays the games with fixed random choices, so that they can be played again with the same result
+    public VectorEnvironment(int numGames, MazeRepository mazes, ArrayList<String> mazeList, long seed) {
+        this(numGames, mazes, mazeList, new Random(seed));
+    }
+
+    private VectorEnvironment(int numGames, MazeRepository mazes, ArrayList<String> mazeList, Random generator) {
+        this.mazes = mazes;
+        this.mazeList = mazeList;
+        this.generator = generator;
+        this.sessions = new GameSession[numGames];
+        this.numInputValues = util.calculateActiveAlgorithms() * 4;
+        this.states = new double[numGames * numInputValues];
+        this.Qs = new double[numGames * 4];
+        for (int k = 0; k < numGames; k++) {
+            sessions[k] = newGame();
+        }
+    }
+
+    public int size() {
+        return sessions.length;
+    }
+
+    public GameSession getSession(int k) {
+        return sessions[k];
+    }
+
+    public double[] getStates() {
+        return states;
+    }
+
+    public double[] getQs() {
+        return Qs;
+    }
+
+    public int getGamesPlayed() {
+        return gamesPlayed;
+    }
+
+    public long getRunsPlayed() {
+        return runsPlayed;
+    }
+
+    // Stores the current state representation of every game
+    public double[] observe() {
+        for (int k = 0; k < sessions.length; k++) {
+            PacMan.getStateRep(sessions[k], false, states, k * numInputValues);
+        }
+        return states;
+    }
+
+    // Computes the Q-values of the observed states of all games
+    public double[] evaluate(ArrayList<NeuralNetwork> netList) {
+        Qs = PacMan.getQValues(states, sessions.length, netList);
+        return Qs;
+    }
+
+    // Selects for every game the action that a network run would select,
+    // the legal action with the best Q-value or a random one when exploring
+    public short[] selectActions() {
+        short[] actions = new short[sessions.length];
+        for (int k = 0; k < sessions.length; k++) {
+            GameSession session = sessions[k];
+            short[] legal = session.game.getLegalMoves(session.game.getPacMan().getX1(), session.game.getPacMan().getY1());
+            actions[k] = PacMan.selectAction(session, PacMan.bestAction(Qs, k * 4, legal), legal);
+        }
+        return actions;
+    }
+
+    // Performs an action in every game and returns the reward of each.
+    // Every game that has ended is replaced by a new one.
+    public double[] step(short[] actions) {
+        double[] rewards = new double[sessions.length];
+        for (int k = 0; k < sessions.length; k++) {
+            GameSession session = sessions[k];
+            session.setNextAction(actions[k]);
+            System.arraycopy(Qs, k * 4, session.curQs, 0, 4);
+
+            rewards[k] = session.move(actions[k]);
+            session.totalReward += rewards[k];
+            session.advance();
+
+            if (session.game.gameEnded) {
+                gamesPlayed++;
+                runsPlayed += session.runs;
+                sessions[k] = newGame();
+            }
+        }
+        return rewards;
+    }
+
+    // Plays the number of steps in all games
+    public void play(ArrayList<NeuralNetwork> netList, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            observe();
+            evaluate(netList);
+            step(selectActions());
+        }
+    }
+
+    // Starts a game on a random maze
+    private GameSession newGame() {
+        int curMaze = generator.nextInt(mazeList.size());
+        GameSession session = new GameSession(mazes.newGame(mazeList.get(curMaze)), generator.nextLong());
+        session.mazeIndex = curMaze;
+        return session;
+    }
+}
@@ -28,10 +28,8 @@
 
 package util;
 
-import java.util.ArrayList;
-
 public class ASTARresult {
 
     public short totalPathSize = -1;
-    public ArrayList<Short> reconstructedPath;
+    public int[] reconstructedPath;         // Vertex ID's from start to goal
 }
\ No newline at end of file
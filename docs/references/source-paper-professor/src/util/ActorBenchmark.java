@@ -0,0 +1,88 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  ACTORBENCHMARK
+ *  This class measures how training scales with the number of actors, the
+ *  threads of the ActorPool that play games at the same time. For every number
+ *  of actors, new networks are trained on the same number of games, and the
+ *  games and network runs per second are reported. As the games get longer
+ *  while the networks learn, the network runs per second are the fairer measure.
+ *  Nothing is written to file and no graphs are shown.
+ *
+ *  Usage: ActorBenchmark [directory] [games] [actors, e.g. 1,2,4,8,16]
+ *
+ */
+
+package util;
+
+import environment.MazeRepository;
+import global.Globals;
+import java.util.ArrayList;
+import pacman.ActorPool;
+import pacman.NeuralNetwork;
+import pacman.PacMan;
+
+public class ActorBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        String dir = (args.length > 0) ? args[0] : "data/maze/";
+        int numGames = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        String[] actorCounts = ((args.length > 2) ? args[2] : "1,2,4,8,16").split(",");
+
+        Globals.showVisualisation = false;
+        Globals.showRateGraph = false;
+        Globals.showQGraph = false;
+        Globals.showRIPGraph = false;
+        Globals.trainingAfterTheFact = false;
+
+        ArrayList<String> files = PacMan.readMazes(dir);
+        MazeRepository mazes = new MazeRepository();
+        for (String file : files) {
+            mazes.getMaze(file);
+        }
+
+        // Warm up the JIT compiler on as many games with one actor, which are not timed
+        play(mazes, files, 1, numGames);
+
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("actors\tgames\truns\tseconds\tgames/s\truns/s");
+        for (String count : actorCounts) {
+            int numActors = Integer.parseInt(count.trim());
+            long start = System.nanoTime();
+            ActorPool pool = play(mazes, files, numActors, numGames);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(numActors + "\t" + pool.getGamesPlayed() + "\t" + pool.getRunsPlayed()
+                    + "\t" + String.format("%.2f", seconds) + "\t" + String.format("%.1f", pool.getGamesPlayed() / seconds)
+                    + "\t" + String.format("%.0f", pool.getRunsPlayed() / seconds));
+        }
+    }
+
+    private static ActorPool play(MazeRepository mazes, ArrayList<String> files, int numActors, int numGames) throws InterruptedException {
+        ArrayList<NeuralNetwork> netList = PacMan.createNetworks();
+        ArrayList<NeuralNetwork> netListForStates = PacMan.createStateNetworks();
+        ActorPool pool = new ActorPool(numActors, mazes, files, netList, netListForStates);
+        pool.setWriteNetworks(false);
+        pool.play(numGames);
+        return pool;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  BATCHBENCHMARK
+ *  This class measures what playing games in lockstep with a VectorEnvironment
+ *  gains. First, for both the single network and the action networks, the
+ *  Q-values of the states of all games are computed one state at a time and
+ *  with one pass through each network; they must be the same, and both are
+ *  timed. Then, for every number of games, the games are played in lockstep
+ *  and the steps per second are reported, split into the time spent on the
+ *  state representations and on the networks.
+ *
+ *  Usage: BatchBenchmark [directory] [steps] [games, e.g. 1,4,16,64]
+ *
+ */
+
+package util;
+
+import environment.MazeRepository;
+import global.Globals;
+import java.util.ArrayList;
+import pacman.NeuralNetwork;
+import pacman.PacMan;
+import pacman.VectorEnvironment;
+
+public class BatchBenchmark {
+
+    public static void main(String[] args) {
+        String dir = (args.length > 0) ? args[0] : "data/maze/";
+        int numSteps = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        String[] gameCounts = ((args.length > 2) ? args[2] : "1,4,16,64").split(",");
+
+        Globals.showVisualisation = false;
+
+        ArrayList<String> files = PacMan.readMazes(dir);
+        MazeRepository mazes = new MazeRepository();
+        for (String file : files) {
+            mazes.getMaze(file);
+        }
+
+        int mismatches = 0;
+        System.out.println("network\tstates\tone by one ms\tbatched ms");
+        int activeNet = Globals.activeNet;
+        int[] nets = {Globals.NETWORK_SINGLE, Globals.NETWORK_ACTION};
+        for (int net : nets) {
+            Globals.activeNet = net;
+            mismatches += compareQValues(mazes, files, (net == Globals.NETWORK_SINGLE) ? "single" : "action");
+        }
+        Globals.activeNet = activeNet;
+
+        ArrayList<NeuralNetwork> netList = PacMan.createNetworks();
+        System.out.println("games\tsteps\tgames done\tseconds\tsteps/s\tstate ms\tnetwork ms");
+        for (String count : gameCounts) {
+            int numGames = Integer.parseInt(count.trim());
+            VectorEnvironment games = new VectorEnvironment(numGames, mazes, files, 0);
+            // Warm up, without timing
+            games.play(netList, numSteps / 10);
+
+            long stateTime = 0;
+            long networkTime = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < numSteps; i++) {
+                long t0 = System.nanoTime();
+                games.observe();
+                long t1 = System.nanoTime();
+                games.evaluate(netList);
+                long t2 = System.nanoTime();
+                games.step(games.selectActions());
+                stateTime += t1 - t0;
+                networkTime += t2 - t1;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(numGames + "\t" + numSteps + "\t" + games.getGamesPlayed()
+                    + "\t" + String.format("%.2f", seconds) + "\t" + String.format("%.0f", numGames * numSteps / seconds)
+                    + "\t" + String.format("%.1f", stateTime / 1e6) + "\t" + String.format("%.1f", networkTime / 1e6));
+        }
+
+        if (mismatches > 0) {
+            System.out.println(mismatches + " Q-values differ between one by one and batched");
+            System.exit(1);
+        }
+    }
+
+    // Computes the Q-values of the states of 256 games both ways, and returns how many differ
+    private static int compareQValues(MazeRepository mazes, ArrayList<String> files, String name) {
+        ArrayList<NeuralNetwork> netList = PacMan.createNetworks();
+        VectorEnvironment games = new VectorEnvironment(256, mazes, files, 1);
+        games.play(netList, 20);
+        double[] states = games.observe();
+        int numStates = games.size();
+        int length = states.length / numStates;
+
+        double[][] rows = new double[numStates][length];
+        for (int s = 0; s < numStates; s++) {
+            System.arraycopy(states, s * length, rows[s], 0, length);
+        }
+
+        // Repeat, so that the timing is not only of the first, slow calls
+        double[] batched = null;
+        double[][] single = new double[numStates][];
+        long oneByOne = 0;
+        long batch = 0;
+        for (int repeat = 0; repeat < 200; repeat++) {
+            long t0 = System.nanoTime();
+            for (int s = 0; s < numStates; s++) {
+                single[s] = PacMan.getQValues(rows[s], netList);
+            }
+            long t1 = System.nanoTime();
+            batched = PacMan.getQValues(states, numStates, netList);
+            long t2 = System.nanoTime();
+            oneByOne += t1 - t0;
+            batch += t2 - t1;
+        }
+
+        int mismatches = 0;
+        for (int s = 0; s < numStates; s++) {
+            for (int a = 0; a < 4; a++) {
+                if (single[s][a] != batched[s * 4 + a]) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println(name + "\t" + numStates + "\t" + String.format("%.1f", oneByOne / 1e6)
+                + "\t" + String.format("%.1f", batch / 1e6));
+        return mismatches;
+    }
+}
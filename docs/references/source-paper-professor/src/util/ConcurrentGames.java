@@ -0,0 +1,150 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  CONCURRENTGAMES
+ *  This class checks that games can be played at the same time in one program.
+ *  It plays a number of games one after another, and then the same games again
+ *  from a pool of threads, all on mazes shared through one MazeRepository.
+ *  Every game is seeded, and Ms. Pac-Man follows a fixed linear policy over the
+ *  state representation, so that each game depends on every input algorithm.
+ *  The state representation of every step and the outcome of each game are
+ *  folded into a fingerprint, which must be the same in both runs.
+ *
+ *  Usage: ConcurrentGames [directory] [games] [threads] [steps]
+ *
+ */
+
+package util;
+
+import environment.Environment;
+import environment.MazeRepository;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import pacman.GameSession;
+import pacman.PacMan;
+
+public class ConcurrentGames {
+
+    private static MazeRepository mazes = new MazeRepository();   // Shared by all threads
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        String dir = (args.length > 0) ? args[0] : "data/maze/";
+        int numGames = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        int numThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int maxSteps = (args.length > 3) ? Integer.parseInt(args[3]) : 1000;
+
+        ArrayList<String> files = PacMan.readMazes(dir);
+        for (String file : files) {
+            // Read and preprocess every maze before the games are timed
+            mazes.getMaze(file);
+        }
+
+        long start = System.nanoTime();
+        long[] sequential = new long[numGames];
+        for (int i = 0; i < numGames; i++) {
+            sequential[i] = play(files.get(i % files.size()), i, maxSteps);
+        }
+        double sequentialMs = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<Long>> concurrent = new ArrayList<Future<Long>>();
+        for (int i = 0; i < numGames; i++) {
+            final String file = files.get(i % files.size());
+            final long seed = i;
+            final int steps = maxSteps;
+            concurrent.add(pool.submit(new Callable<Long>() {
+                public Long call() {
+                    return play(file, seed, steps);
+                }
+            }));
+        }
+        int mismatches = 0;
+        for (int i = 0; i < numGames; i++) {
+            if (concurrent.get(i).get() != sequential[i]) {
+                System.out.println("Game " + i + " on " + files.get(i % files.size()) + " differs when played concurrently");
+                mismatches++;
+            }
+        }
+        pool.shutdown();
+        double concurrentMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.println("games\tthreads\tsequential ms\tconcurrent ms\tmismatches");
+        System.out.println(numGames + "\t" + numThreads + "\t" + String.format("%.1f", sequentialMs)
+                + "\t" + String.format("%.1f", concurrentMs) + "\t" + mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Plays a game until it ends or the steps run out, and returns its fingerprint
+    private static long play(String file, long seed, int maxSteps) {
+        Environment game = mazes.newGame(file);
+        GameSession session = new GameSession(game, seed);
+
+        // One weight per input algorithm, the same for each direction
+        Random generator = new Random(seed);
+        double[] weights = new double[util.calculateActiveAlgorithms()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 2 * generator.nextDouble() - 1;
+        }
+
+        long fingerprint = seed;
+        int steps = 0;
+        while (!game.gameEnded && steps < maxSteps) {
+            double[] stateRep = PacMan.getStateRep(session, false);
+            for (int i = 0; i < stateRep.length; i++) {
+                fingerprint = 31 * fingerprint + Double.doubleToLongBits(stateRep[i]);
+            }
+
+            short[] actions = game.getLegalMoves(game.getPacMan().getX1(), game.getPacMan().getY1());
+            short action = actions[0];
+            double best = Double.NEGATIVE_INFINITY;
+            for (short a : actions) {
+                double value = 0;
+                for (int i = 0; i < weights.length; i++) {
+                    value += weights[i] * stateRep[4 * i + a];
+                }
+                if (value > best) {
+                    best = value;
+                    action = a;
+                }
+            }
+
+            session.move(action);
+            session.advance();
+            steps++;
+        }
+
+        fingerprint = 31 * fingerprint + steps;
+        fingerprint = 31 * fingerprint + game.pillsLeft;
+        fingerprint = 31 * fingerprint + (game.gameLost ? 1 : 0);
+        fingerprint = 31 * fingerprint + Double.doubleToLongBits(session.getTotalPillReward());
+        return fingerprint;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  COPYABLERANDOM
+ *  This class implements the random number generator of java.util.Random,
+ *  giving the same numbers for the same seed, but its state can be copied.
+ *  A copy draws the same numbers as the original from then on, so a game
+ *  can be played on from a saved state with the same random choices.
+ *  Unlike java.util.Random, it should only be used from a single thread.
+ *
+ */
+
+package util;
+
+import java.util.Random;
+
+public class CopyableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;     // Set by setSeed, which the constructors of Random call
+
+    public CopyableRandom() {
+        super();
+    }
+
+    public CopyableRandom(long seed) {
+        super(seed);
+    }
+
+    public CopyableRandom(CopyableRandom random) {
+        super();
+        this.state = random.state;
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    // Continues from the state of another generator
+    public void setState(CopyableRandom random) {
+        this.state = random.state;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
@@ -29,9 +29,10 @@
 package util;
 
 import global.Globals;
+import environment.ArrivalField;
 import environment.Environment;
-import environment.Vertex;
-import java.util.ArrayList;
+import environment.MazeGraph;
+import environment.StepContext;
 import java.util.LinkedList;
 import java.util.Queue;
 import pacman.Agent;
@@ -45,10 +46,12 @@ public class Entrapmentfinder {
     private short xStart;
     private short yStart;
     
-    private static ArrayList<Integer> forbiddenVertices;
-    private static ArrayList<Integer> allowedVertices;
+    private boolean[] forbiddenVertices;    // For each vertex, whether a ghost can get there before Ms. Pac-man
+    private boolean[] allowedVertices;      // For each vertex, whether it has been expanded without being forbidden
     private int[] totalRoutes;
     private int[][] routeCount;
+    private ArrivalField pacmanArrival;     // For each vertex, the earliest time Ms. Pac-man can get there, with her headstart
+    private ArrivalField ghostArrival;      // For each vertex, the earliest time a ghost that is not afraid can get there
     
     static class instanceFind {        
         int xPos = -1;
@@ -72,8 +75,10 @@ public class Entrapmentfinder {
     
     // Function to find escape routes
     // Will alter the public result variables
-    public void findEntrapment(short x, short y, Agent[] ghost, Environment e) {
+    public void findEntrapment(short x, short y, Agent[] ghost, Environment e, StepContext context) {
         int actualmaxVertex = Globals.maxVertex;
+        pacmanArrival = context.pacmanArrival();
+        ghostArrival = context.ghostArrival(ghost);
         
         totalRoutes = new int[actualmaxVertex];
         routeCount = new int[4][actualmaxVertex];
@@ -88,8 +93,8 @@ public class Entrapmentfinder {
         
         safeFound = true;
         
-        forbiddenVertices = new ArrayList<Integer>();
-        allowedVertices = new ArrayList<Integer>();
+        forbiddenVertices = new boolean[e.graph.getNumVertices()];
+        allowedVertices = new boolean[e.graph.getNumVertices()];
         
         Queue possibleVertices = new LinkedList();
         
@@ -171,36 +176,34 @@ public class Entrapmentfinder {
         // This recursive function is handed the next item in its queue.
         
         int ghostCount = ghost.length;
-        Vertex curVertex = e.vertices.get(o.id);
+        MazeGraph graph = e.graph;
+        short curX = graph.getX(o.id);
+        short curY = graph.getY(o.id);
         boolean forbidden = false;
-        double pacdistance = 0, ghostdistance = 0;
+        double pacdistance = 0;
 
         // If the current vertex has already been considered, it is in our forbidden or allowed list.
         // If the vertex isn't an intersection, but part of a hallway, then o.skip will be set to true.
 
         // Skip vertices which have been previously considered or are part of a hallway.
-        int tmp = new Integer(o.id);
-        if (o.skip == false && forbiddenVertices.indexOf(tmp) == -1 && allowedVertices.indexOf(tmp) == -1) {
-            // Calculate the steps between Ms.Pac-man and the current vertex,
+        if (o.skip == false && !forbiddenVertices[o.id] && !allowedVertices[o.id]) {
+            // Look up the steps between Ms.Pac-man and the current vertex,
             // using the distance, Ms. Pac-man's speed and Globals.safeHeadstart.
-            pacdistance = ((double)e.findShortestPath((short) e.getPacMan().x1, (short) e.getPacMan().y1, curVertex.getX(), curVertex.getY(), null)[0] + Globals.safeHeadstart) / e.getPacMan().speed;
-            
+            pacdistance = pacmanArrival.getTime(o.id);
+
+            // If a ghost can get to the vertex sooner than Ms. Pac-man can, we should forbid this vertex.
+            // The arrival field holds all ghosts that are not afraid, so it is asked only once.
+            forbidden = ghostArrival.arrivesBefore(o.id, pacdistance);
+
             judgeVertex:
-            // Loop through the ghosts
-            for (int i = 0; i < ghostCount; i++) {
+            // Otherwise, loop through the ghosts
+            for (int i = 0; i < ghostCount && forbidden == false; i++) {
                 // Only consider this ghost if it is not currently afraid.
                 if (ghost[i].state != Globals.GHOST_AFRAID) {
-                    // And calculate the steps between the current ghost and the current vertex,
-                    // using the distance and the ghost's speed.
-                    ghostdistance = ((double) e.findShortestPath((short) ghost[i].x1, (short) ghost[i].y1, curVertex.getX(), curVertex.getY(), null)[0]) / ghost[i].speed;
-
-                    // If the ghost is partly on the vertex, or if the ghost can get to the vertex
-                    // sooner than Ms. Pac-man can...
-                    if ((curVertex.getX() == ghost[i].x1 && curVertex.getY() == ghost[i].y1)
-                            || (curVertex.getX() == ghost[i].x2 && curVertex.getY() == ghost[i].y2)
-                            || (pacdistance > ghostdistance)) {
+                    // If the ghost is partly on the vertex...
+                    if ((curX == ghost[i].x1 && curY == ghost[i].y1)
+                            || (curX == ghost[i].x2 && curY == ghost[i].y2)) {
                         // Then we should forbid this vertex.
-                        forbiddenVertices.add((int) curVertex.getID());
                         // And is there is no nead to consider the vertex in relation to other ghosts,
                         // break out if this loop.
                         forbidden = true;
@@ -208,20 +211,24 @@ public class Entrapmentfinder {
                     }
                 }
             }
+            if (forbidden == true) {
+                forbiddenVertices[o.id] = true;
+            }
         }
         // If the vertex wasn't forbidden, add it to the allowed list.
         if (forbidden == false) {
-            allowedVertices.add((int) curVertex.getID());
+            allowedVertices[o.id] = true;
         }
 
         // Now its time for some node expansion.
         // Find out the vertices which are connected to the current vertex.
-        short[][] newVertices = e.findNeighborVertices(curVertex);
+        int firstEdge = graph.firstEdge(o.id);
+        int lastEdge = graph.lastEdge(o.id);
         
         // Find out if this vertex is an intersection, or if it is just part of a hallway.
         boolean skip = false;
         int isIntersection;
-        if (newVertices.length > 2) {
+        if (lastEdge - firstEdge > 2) {
             isIntersection = 1;
             skip = false;
         } else {
@@ -232,10 +239,10 @@ public class Entrapmentfinder {
         // If we haven't reached Globals.maxVertex yet...
         if (o.distance + isIntersection <= Globals.maxVertex) {
             // Loop through the neighbouring vertices.
-            for (int i = 0; i < newVertices.length; i++) {
-                int newtmp = new Integer(newVertices[i][0]);
+            for (int edge = firstEdge; edge < lastEdge; edge++) {
+                int newtmp = graph.getEdgeTarget(edge);
                 // Ignore those vertices who have been previously explored.
-                if (forbiddenVertices.indexOf(newtmp) == -1 && allowedVertices.indexOf(newtmp) == -1) {
+                if (!forbiddenVertices[newtmp] && !allowedVertices[newtmp]) {
                     // And add the rest to our queue.
                     instanceVertex newVertex = new instanceVertex();
                     newVertex.id = newtmp;
@@ -258,21 +265,22 @@ public class Entrapmentfinder {
             // Loop through these vertices.
             for (int j = 0; j < pacVertices.length; j++) {
                 // If they are not forbidden...
-                if (forbiddenVertices.indexOf((int) pacVertices[j]) == -1) {
+                if (!forbiddenVertices[pacVertices[j]]) {
                     // We found a new point that is safe for Ms. Pac-man to travel to.
                     instanceFind newInstance = new instanceFind();
-                    Vertex currentVertex = e.vertices.get(pacVertices[j]);
+                    short vertexX = e.graph.getX(pacVertices[j]);
+                    short vertexY = e.graph.getY(pacVertices[j]);
                     
-                    newInstance.vertexID = currentVertex.getID();
+                    newInstance.vertexID = pacVertices[j];
                     
                     // Store the starting direction for this new (partial) safe route.
-                    if (currentVertex.getX() < xStart) {
+                    if (vertexX < xStart) {
                         newInstance.initialDirection = Globals.ACTION_LEFT;
-                    } else if (currentVertex.getX() > xStart) {
+                    } else if (vertexX > xStart) {
                         newInstance.initialDirection = Globals.ACTION_RIGHT;
-                    } else if (currentVertex.getY() < yStart) {
+                    } else if (vertexY < yStart) {
                         newInstance.initialDirection = Globals.ACTION_UP;
-                    } else if (currentVertex.getY() > yStart) {
+                    } else if (vertexY > yStart) {
                         newInstance.initialDirection = Globals.ACTION_DOWN;
                     } else {
                         newInstance.initialDirection = -1;
@@ -291,11 +299,12 @@ public class Entrapmentfinder {
             // Add it to our resulting variables.
             
             // Then find the vertices connected to this current safe point.
-            Vertex currentVertex = e.vertices.get(o.vertexID);
-            short[][] nextVertices = e.findNeighborVertices(currentVertex);
+            MazeGraph graph = e.graph;
+            int firstEdge = graph.firstEdge(o.vertexID);
+            int lastEdge = graph.lastEdge(o.vertexID);
             
             // Find out if this vertex is an intersection, or if it is just part of a hallway.
-            int isIntersection = nextVertices.length > 2 ? 1 : 0;
+            int isIntersection = lastEdge - firstEdge > 2 ? 1 : 0;
             
             if (isIntersection == 1) {
                 if (o.initialDirection >= 0) {
@@ -307,18 +316,19 @@ public class Entrapmentfinder {
             // If we haven't reached Globals.maxVertex yet...
             if (o.distance + isIntersection <= Globals.maxVertex) {
                 // Loop through these vertices.
-                for (int j = 0; j < nextVertices.length; j++) {
+                for (int edge = firstEdge; edge < lastEdge; edge++) {
+                    int nextVertex = graph.getEdgeTarget(edge);
                     // If this vertex isn't forbidden, and we didn't just come from this vertex...
-                    if (o.previousVertex != nextVertices[j][0] && forbiddenVertices.indexOf((int) nextVertices[j][0]) == -1) {
+                    if (o.previousVertex != nextVertex && !forbiddenVertices[nextVertex]) {
                         // We have found yet another safe point for Ms. Pac-man to travel to.
                         instanceFind newInstance = new instanceFind();
-                        newInstance.vertexID = (int) nextVertices[j][0];
+                        newInstance.vertexID = nextVertex;
                         newInstance.distance = (short) (o.distance + isIntersection);
                         newInstance.previousVertex = o.vertexID;
                         
                         // Store the initial direction that started the path to this safe point.
                         if (o.initialDirection == -1) {
-                            newInstance.initialDirection = nextVertices[j][2];
+                            newInstance.initialDirection = graph.getEdgeDirection(edge);
                         } else {
                             newInstance.initialDirection = o.initialDirection;
                         }
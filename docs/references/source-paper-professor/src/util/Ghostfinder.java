@@ -29,7 +29,9 @@
 package util;
 
 import environment.Environment;
-import environment.Vertex;
+import environment.MazeGraph;
+import environment.MazeSegments;
+import environment.StepContext;
 import global.Globals;
 import pacman.Agent;
 
@@ -177,8 +179,9 @@ public class Ghostfinder {
         if (toDown < 0) toDown = 0;
     }
 
-    // Function that resets all global variables and (re)calculates the distances to ghosts
-    public void findGhosts(Environment Game) {
+    // Function that resets all global variables and (re)calculates the distances to ghosts.
+    // Path queries go through the context, which remembers them for the rest of the tick.
+    public void findGhosts(Environment Game, StepContext context) {
         short PacManX1 = (short) Game.getPacMan().getX1();
         short PacManY1 = (short) Game.getPacMan().getY1();
         short PacManX2 = (short) Game.getPacMan().getX2();
@@ -221,8 +224,10 @@ public class Ghostfinder {
         minDir = maxVal;
         
         // Establish which vertices surround Ms. Pac-man
-        // First find the enclosing vertices
-        int[] pacmanVertices = Game.findEnclosingVertices(PacManX1, PacManY1);
+        // First find the enclosing vertices.
+        // These are copied, since the ends of the hallways are stored in them later on.
+        MazeGraph graph = Game.graph;
+        int[] pacmanVertices = Game.findEnclosingVertices(PacManX1, PacManY1).clone();
         short[] pacmanDirectionality;
         
         // If Ms. Pac-man is on a vertex, there are no enclosing vertices;
@@ -231,16 +236,17 @@ public class Ghostfinder {
             // If that is the case, look for neighbouring vertices
             int initialVertex = pacmanVertices[0];
             
-            short[][] newVertices = Game.findNeighborVertices(Game.vertices.get(pacmanVertices[0]));
-            pacmanVertices = new int[newVertices.length];
-            pacmanDirectionality = new short[newVertices.length];
-            baseVertex = new int[newVertices.length];
+            int degree = graph.getDegree(initialVertex);
+            pacmanVertices = new int[degree];
+            pacmanDirectionality = new short[degree];
+            baseVertex = new int[degree];
             
             // Then loop through these vertices and find their ID and initial direction.
-            for(int i=0; i<newVertices.length; i++) {
+            for(int i=0; i<degree; i++) {
+                int edge = graph.firstEdge(initialVertex) + i;
                 baseVertex[i] = initialVertex;
-                pacmanVertices[i] = newVertices[i][0];
-                pacmanDirectionality[i] = newVertices[i][2];
+                pacmanVertices[i] = graph.getEdgeTarget(edge);
+                pacmanDirectionality[i] = graph.getEdgeDirection(edge);
             }
         } else {
             // If Ms. Pac-man wasn't on a vertex, we now have two vertices of which
@@ -252,36 +258,35 @@ public class Ghostfinder {
             for(int i=0; i<pacmanVertices.length; i++) {
                 baseVertex[i] = pacmanVertices[pacmanVertices.length - 1 - i];
                 
-                short[][] newVertices = Game.findNeighborVertices(Game.vertices.get(pacmanVertices[i]));
-                for(int j=0; j<newVertices.length; j++) {
-                    if (newVertices[j][0] == pacmanVertices[pacmanVertices.length - 1 - i]) {
-                        pacmanDirectionality[i] = Game.oppositeDirection(newVertices[j][2]);
+                for(int edge=graph.firstEdge(pacmanVertices[i]); edge<graph.lastEdge(pacmanVertices[i]); edge++) {
+                    if (graph.getEdgeTarget(edge) == pacmanVertices[pacmanVertices.length - 1 - i]) {
+                        pacmanDirectionality[i] = Game.oppositeDirection(graph.getEdgeDirection(edge));
                     }
                 }
             }
         }
         
         // Loop through the vertices found, and if they are part of a hallway, 
-        // find the vertex at the end of the hallway
+        // find the vertex at the end of the hallway.
+        // The end of the hallway behind each edge is stored with the segments, so this takes one lookup.
+        MazeSegments segments = Game.segments;
         for (int i=0; i<pacmanVertices.length; i++) {
-            short[][] neighbourVertices;
-            int previousVertex = pacmanVertices[i];
-            
-            do {
-                neighbourVertices = Game.findNeighborVertices(Game.vertices.get(previousVertex));
-                if (neighbourVertices.length <= 2) {
-                    findNewVertex:
-                    for (short[] neighbourVertex : neighbourVertices) {
-                        if (neighbourVertex[0] != baseVertex[i]) {
-                            baseVertex[i] = previousVertex;
-                            previousVertex = neighbourVertex[0];
-                            break findNewVertex;
-                        }
-                    }
+            int hallway = -1;
+            for (int edge = graph.firstEdge(baseVertex[i]); edge < graph.lastEdge(baseVertex[i]); edge++) {
+                if (graph.getEdgeTarget(edge) == pacmanVertices[i]) {
+                    hallway = edge;
+                    break;
                 }
-            } while (neighbourVertices.length <= 2);
-            
-            pacmanVertices[i] = previousVertex;
+            }
+            // If the enclosing vertices are not connected directly, such as around a tunnel,
+            // the hallway is followed on from the vertex itself.
+            if (hallway == -1 && graph.getDegree(pacmanVertices[i]) > 0 && graph.getDegree(pacmanVertices[i]) <= 2) {
+                hallway = graph.firstEdge(pacmanVertices[i]);
+            }
+            if (hallway != -1) {
+                baseVertex[i] = segments.getCorridorBefore(hallway);
+                pacmanVertices[i] = segments.getCorridorEnd(hallway);
+            }
         }
         
                
@@ -299,22 +304,23 @@ public class Ghostfinder {
             boolean ghost2pacman = false;
             boolean pacman2ghost = false;
             
-            short[] lowestDistance = Game.findShortestPath(PacManX1, PacManY1, ghostX1, ghostY1, null);
+            short[] lowestDistance = context.findShortestPath(PacManX1, PacManY1, ghostX1, ghostY1);
             double correctedLowestDistance = lowestDistance[0];
             short lowestDirection = lowestDistance[1];
             boolean seperatedbyVertex = false;
             
             for (int i=0; i<pacmanVertices.length; i++) {
-                Vertex currentGoal = Game.vertices.get(pacmanVertices[i]);
-                short[] tempDistance = Game.findShortestPath(currentGoal.getX(), currentGoal.getY(), ghostX1, ghostY1, null);
-                double correctedDistance = tempDistance[0] + Globals.shortDistanceFactor * Game.findShortestPath(currentGoal.getX(), currentGoal.getY(), PacManX1, PacManY1, null)[0];
+                short goalX = graph.getX(pacmanVertices[i]);
+                short goalY = graph.getY(pacmanVertices[i]);
+                short tempDistance = context.cellDistance(goalX, goalY, ghostX1, ghostY1);
+                double correctedDistance = tempDistance + Globals.shortDistanceFactor * context.cellDistance(goalX, goalY, PacManX1, PacManY1);
                 if (correctedDistance < lowestDistance[0]) {
                     correctedLowestDistance = correctedDistance;
                     lowestDirection = pacmanDirectionality[i];
                     seperatedbyVertex = true;
                     
                     // determine if ghost is moving towards Ms. Pac-Man.
-                    if (Game.distance(ghostX1, ghostY1, currentGoal.getX(), currentGoal.getY()) < Game.distance(ghostX2, ghostY2, currentGoal.getX(), currentGoal.getY())) {
+                    if (Game.distance(ghostX1, ghostY1, goalX, goalY) < Game.distance(ghostX2, ghostY2, goalX, goalY)) {
                         ghost2pacman = true;
                     }
                 }
@@ -332,7 +338,7 @@ public class Ghostfinder {
 //                pacman2ghost = true;
 //            }
             
-            short[] result = Game.findShortestPath(PacManX1, PacManY1, ghostX1, ghostY1, null);
+            short[] result = context.findShortestPath(PacManX1, PacManY1, ghostX1, ghostY1);
             processGhostDirection(ghost.getId(), result[0], result[1], ghost2pacman, PacManMovefloat, ghostMovefloat);
         }
         
@@ -0,0 +1,146 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  INDEXEDMINHEAP
+ *  This class implements a binary min-heap of the numbers 0 to capacity - 1,
+ *  each with an integer key. Because the heap knows where every number is stored,
+ *  the key of a number can be lowered without searching for it.
+ *
+ */
+
+package util;
+
+public class IndexedMinHeap {
+
+    private final int[] heap;        // The numbers in the heap, in heap order
+    private final int[] position;    // For each number, its index in 'heap', or -1 if it is not in the heap
+    private final int[] keys;        // For each number in the heap, its key
+    private int size = 0;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            position[i] = -1;
+        }
+    }
+
+    public int capacity() {
+        return heap.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int item) {
+        return position[item] != -1;
+    }
+
+    public int getKey(int item) {
+        return keys[item];
+    }
+
+    // Empties the heap. Only the numbers that are still in the heap have to be reset.
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public void add(int item, int key) {
+        heap[size] = item;
+        position[item] = size;
+        keys[item] = key;
+        size++;
+        siftUp(size - 1);
+    }
+
+    // Lowers the key of a number that is already in the heap.
+    public void decreaseKey(int item, int key) {
+        keys[item] = key;
+        siftUp(position[item]);
+    }
+
+    // Returns the number with the lowest key, without removing it.
+    public int peek() {
+        return heap[0];
+    }
+
+    // Removes and returns the number with the lowest key.
+    public int poll() {
+        int top = heap[0];
+        size--;
+        position[top] = -1;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int index) {
+        int item = heap[index];
+        int key = keys[item];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            position[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = item;
+        position[item] = index;
+    }
+
+    private void siftDown(int index) {
+        int item = heap[index];
+        int key = keys[item];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= key) {
+                break;
+            }
+            heap[index] = heap[child];
+            position[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = item;
+        position[item] = index;
+    }
+}
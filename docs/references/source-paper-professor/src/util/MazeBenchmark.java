@@ -0,0 +1,276 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEBENCHMARK
+ *  This class measures how the framework scales with the size of the maze.
+ *  For every maze of the corpus written by the MazeGenerator it reports the time
+ *  needed to preprocess the maze read from its source, the time needed to load it
+ *  compiled if it was run through the MazeCompiler, the time per shortest path
+ *  query between random positions, the time to fill a bitboard distance field
+ *  from a random position, and the number of game steps per second.
+ *  A step computes the same inputs as the network would get (ghosts, pills and
+ *  entrapment), then moves Ms. Pac-Man and the ghosts. The share of path queries
+ *  answered by the step context is reported as well. On mazes with a distance
+ *  oracle, every distance field must give the same distances as the oracle.
+ *
+ *  Usage: MazeBenchmark [directory] [queries] [steps]
+ *
+ */
+
+package util;
+
+import environment.Environment;
+import environment.MazeBitboard;
+import environment.MazeImage;
+import environment.MazeRepository;
+import environment.StepContext;
+import global.Globals;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import pacman.Agent;
+import pacman.PacMan;
+
+public class MazeBenchmark {
+
+    private static MazeRepository mazes = new MazeRepository();   // Games on the same maze share its tables
+    private static int fieldMismatches = 0;                       // Distances of the distance fields that differ from the oracle
+
+    public static void main(String[] args) throws IOException {
+        String dir = (args.length > 0) ? args[0] : "data/benchmark/";
+        int numQueries = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int numSteps = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+
+        ArrayList<String> files = MazeGenerator.writeCorpus(dir);
+
+        // Untimed runs on the smallest maze warm up the JIT compiler, so that the first mazes
+        // are not timed on code that is still interpreted. It takes about ten thousand fields,
+        // and ten times as many steps, before every part of them has been compiled.
+        Environment warmup = newGame(files.get(0));
+        fieldLatency(warmup, 20000);
+        for (int i = 0; i < 10; i++) {
+            queryLatency(warmup, 2000);
+            stepRate(files.get(0), 2000, new StepContext());
+        }
+
+        System.out.println("maze\tarea\tvertices\tpreprocess ms\tcompiled load ms\tquery us\tfield us\tsteps/s\tcontext hits %");
+        for (String file : files) {
+            // The maze is read from its source, as the compiled maze would leave nothing to preprocess
+            boolean useCompiled = Globals.useCompiledMazes;
+            Globals.useCompiledMazes = false;
+            Environment game = new Environment(file);
+            Globals.useCompiledMazes = useCompiled;
+            long start = System.nanoTime();
+            PacMan.initialize(game);
+            double preprocessMs = (System.nanoTime() - start) / 1e6;
+            double compiledMs = compiledLoadTime(file);
+
+            double queryUs = queryLatency(game, numQueries);
+            double fieldUs = fieldLatency(game, 400);
+            StepContext context = new StepContext();
+            double stepsPerSecond = stepRate(file, numSteps, context);
+            double hitPercentage = 100.0 * context.getHits() / Math.max(1, context.getHits() + context.getMisses());
+
+            System.out.println(file + "\t" + (game.mazeWidth * game.mazeHeight) + "\t" + game.graph.getNumVertices()
+                    + "\t" + String.format("%.1f", preprocessMs) + "\t" + ((compiledMs < 0) ? "-" : String.format("%.1f", compiledMs))
+                    + "\t" + String.format("%.2f", queryUs) + "\t" + String.format("%.2f", fieldUs)
+                    + "\t" + String.format("%.0f", stepsPerSecond) + "\t" + String.format("%.1f", hitPercentage));
+        }
+
+        if (fieldMismatches > 0) {
+            System.out.println(fieldMismatches + " distances differ between the distance fields and the oracle");
+            System.exit(1);
+        }
+    }
+
+    // Returns the time in milliseconds to load the compiled maze with all of its tables,
+    // or -1 if the maze has not been compiled since it last changed
+    private static double compiledLoadTime(String file) {
+        if (!MazeImage.hasCompiled(file)) {
+            return -1;
+        }
+        long start = System.nanoTime();
+        Environment game = new Environment(MazeImage.compiledName(file));
+        double ms = (System.nanoTime() - start) / 1e6;
+        return game.compiled ? ms : -1;
+    }
+
+    private static ArrayList<short[]> walkablePositions(Environment game) {
+        ArrayList<short[]> positions = new ArrayList<short[]>();
+        for (short x = 0; x < game.mazeWidth; x++) {
+            for (short y = 0; y < game.mazeHeight; y++) {
+                short item = game.maze[x][y];
+                if (item != Globals.MAZE_WALL && item != Globals.MAZE_GHOST_SPAWN_AREA && item != Globals.MAZE_GHOST_SPAWN_POINT) {
+                    positions.add(new short[]{x, y});
+                }
+            }
+        }
+        return positions;
+    }
+
+    // Returns the average time in microseconds to find the shortest path between two random positions.
+    private static double queryLatency(Environment game, int numQueries) {
+        ArrayList<short[]> positions = walkablePositions(game);
+        Random generator = new Random(0);
+        short[][] from = new short[numQueries][];
+        short[][] to = new short[numQueries][];
+        for (int i = 0; i < numQueries; i++) {
+            from[i] = positions.get(generator.nextInt(positions.size()));
+            to[i] = positions.get(generator.nextInt(positions.size()));
+        }
+
+        // The first half warms up the JIT compiler, only the second half is timed
+        int half = numQueries / 2;
+        long checksum = 0;
+        long start = 0;
+        for (int i = 0; i < numQueries; i++) {
+            if (i == half) {
+                start = System.nanoTime();
+            }
+            short[] path = game.findShortestPath(from[i][0], from[i][1], to[i][0], to[i][1], null);
+            checksum += path[0];
+        }
+        if (checksum == Long.MIN_VALUE) {
+            // Keeps the searches from being optimized away
+            System.out.println(checksum);
+        }
+        return (System.nanoTime() - start) / 1e3 / Math.max(1, numQueries - half);
+    }
+
+    // Returns the average time in microseconds to fill a distance field from a random position
+    // with the bitboard. The first half of the fields warms up the JIT compiler and, if the maze
+    // has a distance oracle, is checked against it; only the second half is timed.
+    private static double fieldLatency(Environment game, int numFields) {
+        ArrayList<short[]> positions = walkablePositions(game);
+        Random generator = new Random(0);
+        short[][] from = new short[numFields][];
+        for (int i = 0; i < numFields; i++) {
+            from[i] = positions.get(generator.nextInt(positions.size()));
+        }
+        MazeBitboard board = game.bitboard;
+        long[] source = board.newLayer();
+        short[] distances = new short[game.mazeWidth * game.mazeHeight];
+
+        int half = numFields / 2;
+        for (int i = 0; i < half; i++) {
+            board.set(source, from[i][0], from[i][1]);
+            board.distanceField(source, null, -1, distances);
+            board.clear(source, from[i][0], from[i][1]);
+            if (game.distanceOracle != null) {
+                for (int x = 0; x < game.mazeWidth; x++) {
+                    for (int y = 0; y < game.mazeHeight; y++) {
+                        if (distances[x * game.mazeHeight + y] != game.distanceOracle.distance(from[i][0], from[i][1], x, y)) {
+                            fieldMismatches++;
+                        }
+                    }
+                }
+            }
+        }
+
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = half; i < numFields; i++) {
+            board.set(source, from[i][0], from[i][1]);
+            checksum += board.distanceField(source, null, -1, distances);
+            board.clear(source, from[i][0], from[i][1]);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == Long.MIN_VALUE) {
+            // Keeps the fields from being optimized away
+            System.out.println(checksum);
+        }
+        return elapsed / 1e3 / Math.max(1, numFields - half);
+    }
+
+    // Returns the number of game steps per second. Ms. Pac-Man walks to the nearest pills;
+    // when she is caught or has eaten all pills, a new game starts on the same maze.
+    // The first half of the steps warms up the JIT compiler, only the second half is timed.
+    private static double stepRate(String file, int numSteps, StepContext context) {
+        Environment game = newGame(file);
+        int half = numSteps / 2;
+        long elapsed = 0;
+        for (int steps = 0; steps < numSteps; steps++) {
+            if (game.gameEnded) {
+                game = newGame(file);
+            }
+            long start = System.nanoTime();
+            step(game, steps, context);
+            if (steps >= half) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return Math.max(1, numSteps - half) / (elapsed / 1e9);
+    }
+
+    private static Environment newGame(String file) {
+        Environment game = mazes.newGame(file);
+        game.globalGhostState = Globals.startingGhostState;
+        return game;
+    }
+
+    private static void step(Environment game, int step, StepContext context) {
+        // The ghosts switch between scattering and chasing every 40 steps
+        if (step % 40 == 0) {
+            game.globalGhostState = ((step / 40) % 2 == 0) ? Globals.GHOST_SCATTER : Globals.GHOST_CHASE;
+            game.propagateGhostBehaviour();
+        }
+
+        Agent pacman = game.getPacMan();
+        context.update(game);
+        Ghostfinder gh = new Ghostfinder();
+        gh.findGhosts(game, context);
+        gh.calculateDistance(game.getGhosts());
+        gh.calculateDirection(game.getGhosts());
+        Pillfinder pf = new Pillfinder();
+        pf.findPills(pacman.getX1(), pacman.getY1(), game, context);
+        Entrapmentfinder ef = new Entrapmentfinder();
+        ef.findEntrapment((short) pacman.getX1(), (short) pacman.getY1(), game.getGhosts(), game, context);
+
+        // Head for the nearest pills, away from the ghosts
+        double[] pills = {pf.toLeft, pf.toRight, pf.toUp, pf.toDown};
+        double[] ghosts = {gh.dirLeft, gh.dirRight, gh.dirUp, gh.dirDown};
+        short[] actions = game.getLegalMoves(pacman.getX1(), pacman.getY1());
+        short action = actions[0];
+        double best = Double.NEGATIVE_INFINITY;
+        for (short a : actions) {
+            double value = pills[a] - 0.5 * ghosts[a];
+            if (value > best) {
+                best = value;
+                action = a;
+            }
+        }
+
+        pacman.move(action, game);
+        game.eatItem(pacman.getX2(), pacman.getY2(), pacman.getMovefloat());
+        if (game.ghostCollision() == Globals.COLLISION_FATAL) {
+            game.gameEnded = true;
+            return;
+        }
+        for (int i = 0; i < game.getGhosts().length; i++) {
+            game.moveGhost(i);
+        }
+        if (game.ghostCollision() == Globals.COLLISION_FATAL || game.pillsLeft == 0) {
+            game.gameEnded = true;
+        }
+    }
+}
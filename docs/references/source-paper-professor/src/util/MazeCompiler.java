@@ -0,0 +1,78 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZECOMPILER
+ *  This class compiles maze files offline. Every maze is read and preprocessed
+ *  as usual, after which the grid and all its tables are written next to it as
+ *  a .maze file (see MazeImage). Directories are compiled file by file.
+ *
+ *  Usage: MazeCompiler <maze or directory> ...
+ *
+ */
+
+package util;
+
+import environment.Environment;
+import environment.MazeImage;
+import global.Globals;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import pacman.PacMan;
+
+public class MazeCompiler {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: MazeCompiler <maze or directory> ...");
+            return;
+        }
+        Globals.showVisualisation = false;
+        Globals.useCompiledMazes = false;
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles();
+                Arrays.sort(files);
+                for (File f : files) {
+                    if (f.isFile() && f.getName().endsWith(".txt")) {
+                        compile(f.toString());
+                    }
+                }
+            } else {
+                compile(arg);
+            }
+        }
+    }
+
+    public static void compile(String filename) throws IOException {
+        long start = System.nanoTime();
+        Environment game = new Environment(filename);
+        PacMan.initialize(game);
+        String compiledName = MazeImage.compiledName(filename);
+        game.writeCompiled(compiledName);
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.println(filename + " -> " + compiledName + " (" + new File(compiledName).length() / 1024 + " kB, "
+                + String.format("%.1f", ms) + " ms)");
+    }
+}
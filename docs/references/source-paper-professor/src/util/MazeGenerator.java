@@ -0,0 +1,491 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  MAZEGENERATOR
+ *  This class generates mazes of any size, in the same format as the files in data/maze.
+ *  Hallways run along the odd rows and columns. A random spanning tree connects them all,
+ *  dead ends are opened up (the path finding expects every hallway to end at a vertex),
+ *  and the corridor density decides how many extra loops are added on top of that.
+ *  Like in the original mazes, no horizontal hallway spans more than half the maze width,
+ *  as the environment takes such distances to be shorter through the tunnels.
+ *  The ghosts' spawn area sits in the middle of the maze, with Ms. Pac-Man below it.
+ *  As in the original mazes, its entrance leads to a hallway running along its top,
+ *  and the ghosts' first stop lies in the middle of that hallway.
+ *  Tunnels lead from the left edge of the maze to the right edge.
+ *  The same settings and seed always give the same maze.
+ *
+ *  Usage: MazeGenerator <width> <height> <density> <ghosts> <tunnels> <seed> <file>
+ *     or: MazeGenerator -corpus <directory>
+ *
+ */
+
+package util;
+
+import global.Globals;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class MazeGenerator {
+
+    // The fixed corpus used for benchmarking: {width, height, seed}.
+    // All use the same density, ghosts and tunnels, so that only the size differs.
+    public static final int[][] CORPUS = {
+        {21, 21, 1},
+        {31, 31, 2},
+        {41, 41, 3},
+        {61, 61, 4},
+        {81, 81, 5},
+        {121, 121, 6},
+        {161, 161, 7},
+        {241, 241, 8},
+        {321, 321, 9}
+    };
+    public static final double CORPUS_DENSITY = 0.3;
+    public static final int CORPUS_GHOSTS = 4;
+    public static final int CORPUS_TUNNELS = 2;
+
+    private final int width;
+    private final int height;
+    private final double density;       // Chance, from 0 to 1, that a wall between two hallways is removed
+    private final int numGhosts;
+    private final int numTunnels;
+    private final Random generator;
+    private short[][] maze;
+    private int spawnX, spawnY;          // Top left position inside the spawn area
+    private int pacX, pacY;
+
+    public MazeGenerator(int width, int height, double density, int numGhosts, int numTunnels, long seed) {
+        if (width < 11 || height < 11) {
+            throw new IllegalArgumentException("A maze should be at least 11 by 11 positions, not " + width + " by " + height);
+        }
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("The corridor density should lie between 0 and 1, not " + density);
+        }
+        if (numGhosts < 1) {
+            throw new IllegalArgumentException("A maze needs at least one ghost");
+        }
+        this.width = width;
+        this.height = height;
+        this.density = density;
+        this.numGhosts = numGhosts;
+        this.numTunnels = numTunnels;
+        this.generator = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("-corpus")) {
+            ArrayList<String> files = writeCorpus(args[1]);
+            for (String file : files) {
+                System.out.println(file);
+            }
+            return;
+        }
+        if (args.length != 7) {
+            System.out.println("Usage: MazeGenerator <width> <height> <density> <ghosts> <tunnels> <seed> <file>");
+            System.out.println("   or: MazeGenerator -corpus <directory>");
+            return;
+        }
+        MazeGenerator g = new MazeGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Double.parseDouble(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Long.parseLong(args[5]));
+        g.write(args[6]);
+    }
+
+    // Writes every maze of the benchmark corpus to the directory, unless it is already there as
+    // this generator makes it, and returns the file names. Files written by an older version of
+    // the generator are replaced.
+    public static ArrayList<String> writeCorpus(String dir) throws IOException {
+        ArrayList<String> files = new ArrayList<String>();
+        new File(dir).mkdirs();
+        for (int i = 0; i < CORPUS.length; i++) {
+            File file = new File(dir, "generated_" + CORPUS[i][0] + "x" + CORPUS[i][1] + "_" + CORPUS[i][2] + ".txt");
+            MazeGenerator g = new MazeGenerator(CORPUS[i][0], CORPUS[i][1], CORPUS_DENSITY, CORPUS_GHOSTS, CORPUS_TUNNELS, CORPUS[i][2]);
+            String text = g.format();
+            if (!file.exists() || !text.equals(read(file))) {
+                write(file.getPath(), text);
+            }
+            files.add(file.getPath());
+        }
+        return files;
+    }
+
+    public void write(String filename) throws IOException {
+        write(filename, format());
+    }
+
+    private static void write(String filename, String text) throws IOException {
+        BufferedWriter out = new BufferedWriter(new FileWriter(filename));
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            char[] buffer = new char[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                text.append(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+        return text.toString();
+    }
+
+    // Generates the maze, and returns it in the format of the maze files
+    private String format() {
+        generate();
+        String newLine = System.getProperty("line.separator");
+        StringBuilder out = new StringBuilder();
+        out.append("[Maze]").append(newLine);
+        out.append(width + "," + height).append(newLine);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    out.append(',');
+                }
+                out.append(maze[x][y]);
+            }
+            out.append(newLine);
+        }
+
+        out.append("[Ghost]").append(newLine);
+        out.append(numGhosts).append(newLine);
+        for (int i = 0; i < numGhosts; i++) {
+            // Speeds relative to Ms. Pac-Man, like in the original mazes
+            out.append(Double.toString(Math.min(80 + 5 * i, 95) / 100.0)).append(newLine);
+        }
+
+        // Every ghost scatters to one of the corners of the maze
+        int[][] corners = {{1, 1}, {lastCell(width), 1}, {1, lastCell(height)}, {lastCell(width), lastCell(height)}};
+        out.append("[Scatter]").append(newLine);
+        for (int i = 0; i < numGhosts; i++) {
+            out.append(corners[i % 4][0] + "," + corners[i % 4][1]).append(newLine);
+        }
+        return out.toString();
+    }
+
+    private int lastCell(int size) {
+        // Returns the last odd position before the outer wall
+        return (size % 2 == 1) ? size - 2 : size - 3;
+    }
+
+    public short[][] generate() {
+        maze = new short[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                maze[x][y] = Globals.MAZE_WALL;
+            }
+        }
+
+        // Hallways run along the odd rows and columns; every odd-odd position is a cell
+        int cellsX = (lastCell(width) + 1) / 2;
+        int cellsY = (lastCell(height) + 1) / 2;
+
+        // Reserve room for the spawn area in the middle: 5 by 3 positions, walled in,
+        // with its entrance on top. Its inside covers 3 by 2 cells.
+        int boxCellX = cellsX / 2 - 1;
+        int boxCellY = cellsY / 2 - 1;
+        spawnX = 2 * boxCellX + 1;
+        spawnY = 2 * boxCellY + 1;
+        boolean[][] reserved = new boolean[cellsX][cellsY];
+        for (int cx = boxCellX; cx < boxCellX + 3; cx++) {
+            for (int cy = boxCellY; cy < boxCellY + 2; cy++) {
+                reserved[cx][cy] = true;
+            }
+        }
+
+        // The hallway above the spawn area runs along its whole width, so that the first stop,
+        // in the middle of it, can be left both ways. It is opened first, so that the hallways
+        // carved next to it are kept narrow enough.
+        open(boxCellX, boxCellY - 1, boxCellX + 1, boxCellY - 1);
+        open(boxCellX + 1, boxCellY - 1, boxCellX + 2, boxCellY - 1);
+
+        carveSpanningTree(cellsX, cellsY, reserved);
+        removeDeadEnds(cellsX, cellsY, reserved);
+        addLoops(cellsX, cellsY, reserved);
+
+        // Pills go on every hallway, Ms. Pac-Man starts below the spawn area
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (maze[x][y] == Globals.MAZE_PATH) {
+                    maze[x][y] = Globals.MAZE_PILL;
+                }
+            }
+        }
+        int[][] corners = {{1, 1}, {lastCell(width), 1}, {1, lastCell(height)}, {lastCell(width), lastCell(height)}};
+        for (int i = 0; i < corners.length; i++) {
+            maze[corners[i][0]][corners[i][1]] = Globals.MAZE_POWER_PILL;
+        }
+
+        addSpawnArea();
+        addTunnels(cellsY, boxCellY);
+        return maze;
+    }
+
+    private void carveSpanningTree(int cellsX, int cellsY, boolean[][] reserved) {
+        // Depth-first walk over the cells, opening the wall towards every new cell.
+        // Cells that could not be reached without a hallway becoming too wide
+        // are connected afterwards, through any wall.
+        boolean[][] visited = new boolean[cellsX][cellsY];
+        int[] stackX = new int[cellsX * cellsY];
+        int[] stackY = new int[cellsX * cellsY];
+        int size = 0;
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+        stackX[size] = 0;
+        stackY[size] = 0;
+        size++;
+        visited[0][0] = true;
+        maze[1][1] = Globals.MAZE_PATH;
+
+        int[] options = new int[4];
+        while (size > 0) {
+            int cx = stackX[size - 1];
+            int cy = stackY[size - 1];
+            int count = 0;
+            for (int i = 0; i < 4; i++) {
+                int nx = cx + steps[i][0];
+                int ny = cy + steps[i][1];
+                if (nx >= 0 && ny >= 0 && nx < cellsX && ny < cellsY && !visited[nx][ny] && !reserved[nx][ny]
+                        && allowed(cx, cy, nx, ny)) {
+                    options[count] = i;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                int step = options[generator.nextInt(count)];
+                int nx = cx + steps[step][0];
+                int ny = cy + steps[step][1];
+                visited[nx][ny] = true;
+                open(cx, cy, nx, ny);
+                stackX[size] = nx;
+                stackY[size] = ny;
+                size++;
+                continue;
+            }
+            size--;
+
+            if (size == 0) {
+                // Continue from any cell that was missed, next to one that was reached
+                for (int x = 0; x < cellsX && size == 0; x++) {
+                    for (int y = 0; y < cellsY && size == 0; y++) {
+                        if (visited[x][y] || reserved[x][y]) {
+                            continue;
+                        }
+                        for (int i = 0; i < 4; i++) {
+                            int nx = x + steps[i][0];
+                            int ny = y + steps[i][1];
+                            if (nx >= 0 && ny >= 0 && nx < cellsX && ny < cellsY && visited[nx][ny]) {
+                                visited[x][y] = true;
+                                open(nx, ny, x, y);
+                                stackX[size] = x;
+                                stackY[size] = y;
+                                size++;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeDeadEnds(int cellsX, int cellsY, boolean[][] reserved) {
+        // A hallway that ends in a dead end has no vertex at its end, which the path finding
+        // cannot handle, so every dead end is opened up towards a random neighbouring cell.
+        // Walls that keep the hallways narrow enough are preferred.
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        int[] options = new int[4];
+        int[] fallback = new int[4];
+        for (int cx = 0; cx < cellsX; cx++) {
+            for (int cy = 0; cy < cellsY; cy++) {
+                if (reserved[cx][cy] || countOpen(cx, cy) != 1) {
+                    continue;
+                }
+                int count = 0;
+                int fallbackCount = 0;
+                for (int i = 0; i < 4; i++) {
+                    int nx = cx + steps[i][0];
+                    int ny = cy + steps[i][1];
+                    if (nx >= 0 && ny >= 0 && nx < cellsX && ny < cellsY && !reserved[nx][ny]
+                            && maze[cx + nx + 1][cy + ny + 1] == Globals.MAZE_WALL) {
+                        if (allowed(cx, cy, nx, ny)) {
+                            options[count] = i;
+                            count++;
+                        } else {
+                            fallback[fallbackCount] = i;
+                            fallbackCount++;
+                        }
+                    }
+                }
+                int step = -1;
+                if (count > 0) {
+                    step = options[generator.nextInt(count)];
+                } else if (fallbackCount > 0) {
+                    step = fallback[generator.nextInt(fallbackCount)];
+                }
+                if (step != -1) {
+                    open(cx, cy, cx + steps[step][0], cy + steps[step][1]);
+                }
+            }
+        }
+    }
+
+    private void addLoops(int cellsX, int cellsY, boolean[][] reserved) {
+        // Remove each remaining wall between two cells with a chance equal to the density
+        for (int cx = 0; cx < cellsX; cx++) {
+            for (int cy = 0; cy < cellsY; cy++) {
+                if (reserved[cx][cy]) {
+                    continue;
+                }
+                if (cx + 1 < cellsX && !reserved[cx + 1][cy] && generator.nextDouble() < density && allowed(cx, cy, cx + 1, cy)) {
+                    open(cx, cy, cx + 1, cy);
+                }
+                if (cy + 1 < cellsY && !reserved[cx][cy + 1] && generator.nextDouble() < density) {
+                    open(cx, cy, cx, cy + 1);
+                }
+            }
+        }
+    }
+
+    private boolean allowed(int cx, int cy, int nx, int ny) {
+        // Returns whether opening the wall between two neighbouring cells keeps every
+        // horizontal hallway within half the maze width.
+        if (cy != ny) {
+            return true;
+        }
+        int y = 2 * cy + 1;
+        int left = 2 * Math.min(cx, nx) + 1;
+        while (left > 0 && maze[left - 1][y] != Globals.MAZE_WALL) {
+            left--;
+        }
+        int right = 2 * Math.max(cx, nx) + 1;
+        while (right < width - 1 && maze[right + 1][y] != Globals.MAZE_WALL) {
+            right++;
+        }
+        return 2 * (right - left) <= width;
+    }
+
+    private void open(int cx, int cy, int nx, int ny) {
+        // Opens two neighbouring cells and the wall between them
+        maze[2 * cx + 1][2 * cy + 1] = Globals.MAZE_PATH;
+        maze[2 * nx + 1][2 * ny + 1] = Globals.MAZE_PATH;
+        maze[cx + nx + 1][cy + ny + 1] = Globals.MAZE_PATH;
+    }
+
+    private int countOpen(int cx, int cy) {
+        int x = 2 * cx + 1;
+        int y = 2 * cy + 1;
+        int count = 0;
+        if (maze[x - 1][y] != Globals.MAZE_WALL) {
+            count++;
+        }
+        if (maze[x + 1][y] != Globals.MAZE_WALL) {
+            count++;
+        }
+        if (maze[x][y - 1] != Globals.MAZE_WALL) {
+            count++;
+        }
+        if (maze[x][y + 1] != Globals.MAZE_WALL) {
+            count++;
+        }
+        return count;
+    }
+
+    private void addSpawnArea() {
+        // The spawn area takes up the reserved cells and the walls between them.
+        // Its entrance connects it to the hallway above, on which the ghosts' first stop lies.
+        for (int x = spawnX; x < spawnX + 5; x++) {
+            for (int y = spawnY; y < spawnY + 3; y++) {
+                maze[x][y] = Globals.MAZE_GHOST_SPAWN_AREA;
+            }
+        }
+        maze[spawnX + 2][spawnY + 1] = Globals.MAZE_GHOST_SPAWN_POINT;
+        maze[spawnX + 2][spawnY - 1] = Globals.MAZE_GHOST_SPAWN_AREA;
+        maze[spawnX + 2][spawnY - 2] = Globals.MAZE_GHOST_FIRST_STOP;
+        checkFirstStop(spawnX + 2, spawnY - 2);
+
+        // Ms. Pac-Man starts on the hallway below the spawn area
+        pacX = spawnX + 2;
+        pacY = spawnY + 4;
+        maze[pacX][pacY] = Globals.MAZE_PACMAN;
+    }
+
+    private void checkFirstStop(int x, int y) {
+        // A ghost on the first stop needs two ways to go besides the spawn area: an afraid ghost
+        // does not turn back the way it came, and would otherwise have nowhere to go.
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        int exits = 0;
+        for (int i = 0; i < 4; i++) {
+            short item = maze[x + steps[i][0]][y + steps[i][1]];
+            if (item != Globals.MAZE_WALL && item != Globals.MAZE_GHOST_SPAWN_AREA && item != Globals.MAZE_GHOST_SPAWN_POINT) {
+                exits++;
+            }
+        }
+        if (exits < 2) {
+            throw new IllegalStateException("The ghosts' first stop at " + x + "," + y + " has " + exits
+                    + " ways to go besides the spawn area, it needs at least two");
+        }
+    }
+
+    private void addTunnels(int cellsY, int boxCellY) {
+        // Tunnels run along odd rows from the outer wall on the left to the one on the right,
+        // avoiding the rows of the spawn area and the top and bottom rows,
+        // and rows where the hallways leading into the tunnel would become too wide.
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        for (int cy = 1; cy < cellsY - 1; cy++) {
+            int y = 2 * cy + 1;
+            int right = 1;
+            while (maze[right + 1][y] != Globals.MAZE_WALL) {
+                right++;
+            }
+            int left = lastCell(width);
+            while (maze[left - 1][y] != Globals.MAZE_WALL) {
+                left--;
+            }
+            if ((cy < boxCellY - 1 || cy > boxCellY + 2) && 2 * right <= width && 2 * (width - 1 - left) <= width) {
+                rows.add(y);
+            }
+        }
+        for (int i = 0; i < numTunnels && !rows.isEmpty(); i++) {
+            int y = rows.remove(generator.nextInt(rows.size()));
+            for (int x = 0; maze[x][y] == Globals.MAZE_WALL; x++) {
+                maze[x][y] = Globals.MAZE_PATH;
+            }
+            for (int x = width - 1; maze[x][y] == Globals.MAZE_WALL; x--) {
+                maze[x][y] = Globals.MAZE_PATH;
+            }
+        }
+    }
+}
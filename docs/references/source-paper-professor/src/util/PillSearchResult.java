@@ -0,0 +1,71 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  PILLSEARCHRESULT
+ *  This class is called to hold the result of a search for the nearest pills.
+ *  For every first move it holds the distance to the nearest pill and power pill,
+ *  and the maze positions (x * mazeHeight + y) of all pills at that distance.
+ *
+ */
+
+package util;
+
+import java.util.Arrays;
+
+public class PillSearchResult {
+
+    public short[] pillDistance = {-1, -1, -1, -1};        // For each first move, the distance to the nearest pill, -1 if none
+    public int[][] pills = new int[4][4];                  // For each first move, the nearest pills
+    public int[] numPills = new int[4];
+    public short[] powerPillDistance = {-1, -1, -1, -1};   // For each first move, the distance to the nearest power pill, -1 if none
+    public int[][] powerPills = new int[4][4];             // For each first move, the nearest power pills
+    public int[] numPowerPills = new int[4];
+
+    // Stores a pill found after the given first move, if it is at least as near as the ones found before.
+    // Pills are found in order of distance, so a nearer pill never follows a farther one.
+    public void addPill(short action, short distance, int position) {
+        if (pillDistance[action] == -1) {
+            pillDistance[action] = distance;
+        }
+        if (distance == pillDistance[action]) {
+            if (numPills[action] == pills[action].length) {
+                pills[action] = Arrays.copyOf(pills[action], 2 * numPills[action]);
+            }
+            pills[action][numPills[action]] = position;
+            numPills[action]++;
+        }
+    }
+
+    public void addPowerPill(short action, short distance, int position) {
+        if (powerPillDistance[action] == -1) {
+            powerPillDistance[action] = distance;
+        }
+        if (distance == powerPillDistance[action]) {
+            if (numPowerPills[action] == powerPills[action].length) {
+                powerPills[action] = Arrays.copyOf(powerPills[action], 2 * numPowerPills[action]);
+            }
+            powerPills[action][numPowerPills[action]] = position;
+            numPowerPills[action]++;
+        }
+    }
+}
@@ -30,9 +30,11 @@ package util;
 
 import global.Globals;
 import util.util;
+import environment.DistanceOracle;
 import environment.Environment;
-import java.util.LinkedList;
-import java.util.Queue;
+import environment.MazeBitboard;
+import environment.PillField;
+import environment.StepContext;
 
 public class Pillfinder {
 
@@ -47,168 +49,77 @@ public class Pillfinder {
     public double toDownPower = -1;
     
     public double totalInput = 0;
-    // Contains the amount of maze locations that were looked up during breadth-first search
-    public int looksNeeded = 0;
     // Contains whether A* was used
     public boolean astarUsed = false;
-    private int foundDistance;
     
     private final short maxVal = Globals.maxVal;
 
     public Pillfinder() {
     }
 
-    // Breath-first search
+    // Looks up the nearest pills in the pill field of the maze
     // Will alter the public result variables,
     // and set them to -1 if no pills were in range.
-    public void findPills(int xPos, int yPos, Environment e) {
+    public void findPills(int xPos, int yPos, Environment e, StepContext context) {
         toLeft = -1;
         toUp = -1;
         toRight = -1;
         toDown = -1;
+        toLeftPower = -1;
+        toUpPower = -1;
+        toRightPower = -1;
+        toDownPower = -1;
         astarUsed = false;
-//
-        // If we can go left, find the nearest pill on the left
-        if (xPos > 0 && e.maze[xPos - 1][yPos] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(xPos - 1, yPos, Globals.ACTION_LEFT);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toLeft = foundDistance;
 
-            // If we are on the far left, try and see if we can teleport to the right,
-            // and then find the nearest pill there.
-        } else if (xPos == 0 && e.maze[e.mazeWidth - 1][yPos] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(e.mazeWidth - 1, yPos, Globals.ACTION_LEFT);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toLeft = foundDistance;
-        }
-        if (yPos > 0 && e.maze[xPos][yPos - 1] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(xPos, yPos - 1, Globals.ACTION_UP);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toUp = foundDistance;
-        }
-        if (xPos < e.mazeWidth - 1 && e.maze[xPos + 1][yPos] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(xPos + 1, yPos, Globals.ACTION_RIGHT);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toRight = foundDistance;
-        } else if (xPos == e.mazeWidth - 1 && e.maze[0][yPos] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(0, yPos, Globals.ACTION_RIGHT);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toRight = foundDistance;
-        }
-        if (yPos < e.mazeHeight - 1 && e.maze[xPos][yPos + 1] != Globals.MAZE_WALL) {
-            Queue listFind = new LinkedList();
-            instanceFind newInstance = new instanceFind(xPos, yPos + 1, Globals.ACTION_DOWN);
-            listFind.offer(newInstance);
-            while (!listFind.isEmpty()) {
-                instanceFind o = (instanceFind) listFind.poll();
-                listFind = rec_BFS(o.xPos, o.yPos, o.direction, o.offset, e, listFind);
-                looksNeeded++;
-            }
-            toDown = foundDistance;
+        // Look up the nearest pill after every first move
+        // Moving past the edge of the maze teleports to the opposite edge
+        int leftX = (xPos == 0) ? e.mazeWidth - 1 : xPos - 1;
+        int rightX = (xPos == e.mazeWidth - 1) ? 0 : xPos + 1;
+        int upY = (yPos == 0) ? e.mazeHeight - 1 : yPos - 1;
+        int downY = (yPos == e.mazeHeight - 1) ? 0 : yPos + 1;
+        int maxDistance = -1;
+        if (Globals.pillRange > -1) {
+            maxDistance = Math.max(Globals.pillRange - 1, 0);
         }
+        long[] pills = e.bitboard.getPills();
+        toLeft = nearestPill(e, e.pillField, pills, maxDistance, xPos, yPos, leftX, yPos);
+        toUp = nearestPill(e, e.pillField, pills, maxDistance, xPos, yPos, xPos, upY);
+        toRight = nearestPill(e, e.pillField, pills, maxDistance, xPos, yPos, rightX, yPos);
+        toDown = nearestPill(e, e.pillField, pills, maxDistance, xPos, yPos, xPos, downY);
 
-        short astar[];
+        // If asked for, the power pills are looked up in their own field, whatever their
+        // distance, though not farther than maxVal, beyond which the input is 0 anyway.
+        // The environment only keeps the field when the Globals ask for it.
+        if (e.powerPillField != null) {
+            long[] powerPills = e.bitboard.getPowerPills();
+            toLeftPower = nearestPill(e, e.powerPillField, powerPills, maxVal - 1, xPos, yPos, leftX, yPos);
+            toUpPower = nearestPill(e, e.powerPillField, powerPills, maxVal - 1, xPos, yPos, xPos, upY);
+            toRightPower = nearestPill(e, e.powerPillField, powerPills, maxVal - 1, xPos, yPos, rightX, yPos);
+            toDownPower = nearestPill(e, e.powerPillField, powerPills, maxVal - 1, xPos, yPos, xPos, downY);
+        }
 
-        // If needed and allowed by settings, try using A*.
+        // If needed and allowed by settings, search the whole maze.
         if (toLeft == -1 && toRight == -1 && toUp == -1 && toDown == -1) {
             astarUsed = true;
         }
 
         if (astarUsed == true) {
-            // Then for each pill currently in the maze...
-            for (int y = 0; y < e.mazeHeight; y++) {
-                for (int x = 0; x < e.mazeWidth; x++) {
-                    if (e.maze[x][y] == Globals.MAZE_PILL || e.maze[x][y] == Globals.MAZE_POWER_PILL) {
-                        // Perform A* to find the shortest path
-                        astar = e.findAllPaths((short) xPos, (short) yPos, (short) x, (short) y);
-                        for (int i = 0; i < 4; i++) {
-                            if (astar[i] != -1) {
-                                double correctedDistance = astar[i] + util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
-                                // If this path is the shortest yet encountered,
-                                // store it according to the starting move.
-                                switch (i) {
-                                    case Globals.ACTION_LEFT:
-                                        if (toLeft == -1 || correctedDistance < toLeft) {
-                                            toLeft = correctedDistance;
-                                        }
-                                        break;
-                                    case Globals.ACTION_UP:
-                                        if (toUp == -1 || correctedDistance < toUp) {
-                                            toUp = correctedDistance;
-                                        }
-                                        break;
-                                    case Globals.ACTION_DOWN:
-                                        if (toDown == -1 || correctedDistance < toDown) {
-                                            toDown = correctedDistance;
-                                        }
-                                        break;
-                                    case Globals.ACTION_RIGHT:
-                                        if (toRight == -1 || correctedDistance < toRight) {
-                                            toRight = correctedDistance;
-                                        }
-                                        break;
-                                }
-                            }
-                        }
-                        if (e.maze[x][y] == Globals.MAZE_POWER_PILL) {
-                            // Perform A* to find the shortest path
-                            if (astar[Globals.ACTION_LEFT] != -1) {
-                                double correctedDistance = astar[Globals.ACTION_LEFT] + util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
-                                if (toLeftPower == -1 || correctedDistance < toLeftPower) {
-                                    toLeftPower = correctedDistance;
-                                }
-                            }
-                            if (astar[Globals.ACTION_UP] != -1) {
-                                double correctedDistance = astar[Globals.ACTION_UP] + util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
-                                if (toUpPower == -1 || correctedDistance < toUpPower) {
-                                    toUpPower = correctedDistance;
-                                }
-                            }
-                            if (astar[Globals.ACTION_DOWN] != -1) {
-                                double correctedDistance = astar[Globals.ACTION_DOWN] + util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
-                                if (toDownPower == -1 || correctedDistance < toDownPower) {
-                                    toDownPower = correctedDistance;
-                                }
-                            }
-                            if (astar[Globals.ACTION_RIGHT] != -1) {
-                                double correctedDistance = astar[Globals.ACTION_RIGHT] + util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
-                                if (toRightPower == -1 || correctedDistance < toRightPower) {
-                                    toRightPower = correctedDistance;
-                                }
-                            }
-                        }
-                    }
-                }
+            // If the maze has a distance oracle, all pills can be looked up directly.
+            // Otherwise, search for them.
+            if (e.distanceOracle != null) {
+                findPillsWithOracle(xPos, yPos, e);
+            } else {
+                // A single search finds the nearest pills after every first move,
+                // which are then corrected for movefloat.
+                PillSearchResult nearest = context.findNearestPills((short) xPos, (short) yPos);
+                toLeft = correctedDistance(e, nearest.pillDistance[Globals.ACTION_LEFT], nearest.pills[Globals.ACTION_LEFT], nearest.numPills[Globals.ACTION_LEFT], toLeft);
+                toUp = correctedDistance(e, nearest.pillDistance[Globals.ACTION_UP], nearest.pills[Globals.ACTION_UP], nearest.numPills[Globals.ACTION_UP], toUp);
+                toDown = correctedDistance(e, nearest.pillDistance[Globals.ACTION_DOWN], nearest.pills[Globals.ACTION_DOWN], nearest.numPills[Globals.ACTION_DOWN], toDown);
+                toRight = correctedDistance(e, nearest.pillDistance[Globals.ACTION_RIGHT], nearest.pills[Globals.ACTION_RIGHT], nearest.numPills[Globals.ACTION_RIGHT], toRight);
+                toLeftPower = correctedDistance(e, nearest.powerPillDistance[Globals.ACTION_LEFT], nearest.powerPills[Globals.ACTION_LEFT], nearest.numPowerPills[Globals.ACTION_LEFT], toLeftPower);
+                toUpPower = correctedDistance(e, nearest.powerPillDistance[Globals.ACTION_UP], nearest.powerPills[Globals.ACTION_UP], nearest.numPowerPills[Globals.ACTION_UP], toUpPower);
+                toDownPower = correctedDistance(e, nearest.powerPillDistance[Globals.ACTION_DOWN], nearest.powerPills[Globals.ACTION_DOWN], nearest.numPowerPills[Globals.ACTION_DOWN], toDownPower);
+                toRightPower = correctedDistance(e, nearest.powerPillDistance[Globals.ACTION_RIGHT], nearest.powerPills[Globals.ACTION_RIGHT], nearest.numPowerPills[Globals.ACTION_RIGHT], toRightPower);
             }
         }
 
@@ -310,44 +221,117 @@ public class Pillfinder {
         totalInput = toRight + toDown + toLeft + toUp;
     }
 
-    // Recursive function used by breath-first search
-    public Queue rec_BFS(int xPos, int yPos, short direction, int offset, Environment e, Queue q) {
-        Queue empty = new LinkedList();
-
-        if (e.maze[xPos][yPos] == Globals.MAZE_PILL || e.maze[xPos][yPos] == Globals.MAZE_POWER_PILL) {
-            foundDistance = offset;
-            return empty;
-        } else if (Globals.pillRange > -1 && offset >= Globals.pillRange) {
-            foundDistance = -1;
-            return empty;
+    // Returns the lowest movefloat-corrected distance to the given pills, which all lie at
+    // the same distance, or 'current' if that is lower. Returns -1 if there is neither.
+    // The correction is at most one step, so no farther pill can do better.
+    private double correctedDistance(Environment e, short distance, int[] pills, int numPills, double current) {
+        double lowest = current;
+        for (int i = 0; i < numPills; i++) {
+            short x = (short) (pills[i] / e.mazeHeight);
+            short y = (short) (pills[i] % e.mazeHeight);
+            double correctedDistance = distance + util.movefloatCorrection(util.towardsObject(e, x, y), false, e.getPacMan().getMovefloat(), 1);
+            if (lowest == -1 || correctedDistance < lowest) {
+                lowest = correctedDistance;
+            }
         }
+        return lowest;
+    }
 
-        if (xPos > 0 && e.maze[xPos - 1][yPos] != Globals.MAZE_WALL && direction != Globals.ACTION_RIGHT) {
-            instanceFind newInstance = new instanceFind(xPos - 1, yPos, Globals.ACTION_LEFT, offset + 1);
-            q.offer(newInstance);
+    // Looks up the distance to the nearest pill for every first move.
+    // Just like the breadth-first search, only pills within Globals.pillRange are considered,
+    // unless there are none. In that case all pills are considered, and the distances are
+    // corrected for movefloat, as is done when falling back to A*.
+    private void findPillsWithOracle(int xPos, int yPos, Environment e) {
+        DistanceOracle oracle = e.distanceOracle;
+        MazeBitboard board = e.bitboard;
+        long[] pills = board.getPills();
+        double[] nearest = {-1, -1, -1, -1};
+        double[] nearestPower = {-1, -1, -1, -1};
+
+        // Only the positions that hold a pill are visited, straight from the pill layer of the bitboard
+        for (int p = board.nextSet(pills, 0); p != -1; p = board.nextSet(pills, p + 1)) {
+            int x = board.indexX(p);
+            int y = board.indexY(p);
+            for (short i = 0; i < 4; i++) {
+                short distance = oracle.distance(xPos, yPos, i, x, y);
+                if (distance != -1 && (nearest[i] == -1 || distance < nearest[i])) {
+                    nearest[i] = distance;
+                }
+            }
         }
-        if (yPos > 0 && e.maze[xPos][yPos - 1] != Globals.MAZE_WALL && direction != Globals.ACTION_DOWN) {
-            instanceFind newInstance = new instanceFind(xPos, yPos - 1, Globals.ACTION_UP, offset + 1);
-            q.offer(newInstance);
+
+        for (int i = 0; i < 4; i++) {
+            if (nearest[i] != -1 && (Globals.pillRange == -1 || nearest[i] <= Globals.pillRange)) {
+                astarUsed = false;
+                break;
+            }
+            astarUsed = true;
         }
-        if (xPos < e.mazeWidth - 1 && e.maze[xPos + 1][yPos] != Globals.MAZE_WALL && direction != Globals.ACTION_LEFT) {
-            instanceFind newInstance = new instanceFind(xPos + 1, yPos, Globals.ACTION_RIGHT, offset + 1);
-            q.offer(newInstance);
+
+        if (astarUsed == true) {
+            // No pills in range, so consider all of them, corrected for movefloat.
+            for (int i = 0; i < 4; i++) {
+                nearest[i] = -1;
+            }
+            for (int p = board.nextSet(pills, 0); p != -1; p = board.nextSet(pills, p + 1)) {
+                int x = board.indexX(p);
+                int y = board.indexY(p);
+                double correction = util.movefloatCorrection(util.towardsObject(e, (short) x, (short) y), false, e.getPacMan().getMovefloat(), 1);
+                for (short i = 0; i < 4; i++) {
+                    short distance = oracle.distance(xPos, yPos, i, x, y);
+                    if (distance == -1) {
+                        continue;
+                    }
+                    double correctedDistance = distance + correction;
+                    if (nearest[i] == -1 || correctedDistance < nearest[i]) {
+                        nearest[i] = correctedDistance;
+                    }
+                    if (e.maze[x][y] == Globals.MAZE_POWER_PILL && (nearestPower[i] == -1 || correctedDistance < nearestPower[i])) {
+                        nearestPower[i] = correctedDistance;
+                    }
+                }
+            }
+            toLeftPower = nearestPower[Globals.ACTION_LEFT];
+            toRightPower = nearestPower[Globals.ACTION_RIGHT];
+            toUpPower = nearestPower[Globals.ACTION_UP];
+            toDownPower = nearestPower[Globals.ACTION_DOWN];
+        } else {
+            // Leave out the directions that have no pills in range.
+            for (int i = 0; i < 4; i++) {
+                if (Globals.pillRange != -1 && nearest[i] > Globals.pillRange) {
+                    nearest[i] = -1;
+                }
+            }
         }
-        if (yPos < e.mazeHeight - 1 && e.maze[xPos][yPos + 1] != Globals.MAZE_WALL && direction != Globals.ACTION_UP) {
-            instanceFind newInstance = new instanceFind(xPos, yPos + 1, Globals.ACTION_DOWN, offset + 1);
-            q.offer(newInstance);
+
+        toLeft = nearest[Globals.ACTION_LEFT];
+        toRight = nearest[Globals.ACTION_RIGHT];
+        toUp = nearest[Globals.ACTION_UP];
+        toDown = nearest[Globals.ACTION_DOWN];
+    }
+
+    // Returns the distance to the nearest of the targets (the pills or the power pills, with their field)
+    // when starting with a step from (xPos,yPos) onto (x,y), or -1 if that is not possible or there is
+    // no target within maxDistance steps of (x,y) (-1 for no limit).
+    // Paths never turn back through the position Ms. Pac-Man stands on. The field gives the answer,
+    // unless a nearest target of (x,y) may lie behind her; only then is the bitboard searched.
+    private int nearestPill(Environment e, PillField field, long[] targets, int maxDistance, int xPos, int yPos, int x, int y) {
+        MazeBitboard board = e.bitboard;
+        if (!board.canStep(xPos, yPos, x, y)) {
+            return -1;
         }
 
-        // Find the possible next moves by means of teleportation, if applicable
-        if (xPos == 0 && e.maze[e.mazeWidth - 1][yPos] != Globals.MAZE_WALL && direction != Globals.ACTION_RIGHT) {
-            instanceFind newInstance = new instanceFind(e.mazeWidth - 1, yPos, Globals.ACTION_LEFT, offset + 1);
-            q.offer(newInstance);
+        int distance = field.getDistance(x, y);
+        int here = field.getDistance(xPos, yPos);
+        if (here != -1 && distance > here) {
+            // A path through (xPos,yPos) may be the shortest, so search with it blocked
+            distance = board.nearestFrom(x, y, targets, xPos, yPos, maxDistance);
+        } else if (maxDistance != -1 && distance > maxDistance) {
+            distance = -1;
         }
-        if (xPos == e.mazeWidth - 1 && e.maze[0][yPos] != Globals.MAZE_WALL && direction != Globals.ACTION_LEFT) {
-            instanceFind newInstance = new instanceFind(0, yPos, Globals.ACTION_RIGHT, offset + 1);
-            q.offer(newInstance);
+        if (distance == -1) {
+            return -1;
         }
-        return q;
+        return distance + 1;
     }
 }
@@ -0,0 +1,145 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  PLANNERBENCHMARK
+ *  This class measures what the planner gains for the time it takes. The same
+ *  seeded games are played by the networks alone (0 simulations) and by the
+ *  planner with every number of simulations and threads asked for, without
+ *  training. For each, the pills eaten, the games lost, the reward and the
+ *  time per decision are reported. The networks are new ones, or are read
+ *  from a file written by PacMan; the planner uses them as the Globals say.
+ *
+ *  Usage: PlannerBenchmark [directory] [games] [simulations, e.g. 0,25,100]
+ *                          [threads, e.g. 1,2] [steps] [network file]
+ *
+ *  The defaults (4 games of at most 500 steps, with 0 and 25 simulations) are
+ *  kept small, so that it ends within minutes on large mazes as well; every
+ *  row is printed as soon as it is done.
+ *
+ */
+
+package util;
+
+import environment.Environment;
+import environment.MazeRepository;
+import global.Globals;
+import java.util.ArrayList;
+import pacman.GameSession;
+import pacman.NeuralNetwork;
+import pacman.PacMan;
+import pacman.Planner;
+
+public class PlannerBenchmark {
+
+    private static long decisions = 0;
+
+    public static void main(String[] args) {
+        String dir = (args.length > 0) ? args[0] : "data/maze/";
+        int numGames = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        String[] simulationCounts = ((args.length > 2) ? args[2] : "0,25").split(",");
+        String[] threadCounts = ((args.length > 3) ? args[3] : "1").split(",");
+        int maxSteps = (args.length > 4) ? Integer.parseInt(args[4]) : 500;
+
+        Globals.showVisualisation = false;
+
+        ArrayList<String> files = PacMan.readMazes(dir);
+        MazeRepository mazes = new MazeRepository();
+        for (String file : files) {
+            mazes.getMaze(file);
+        }
+        ArrayList<NeuralNetwork> netList = PacMan.createNetworks();
+        if (args.length > 5) {
+            netList = PacMan.readNN(args[5]);
+        }
+
+        System.out.println("simulations\tthreads\tgames\tpills eaten %\tlost\tavg reward\tms/decision");
+        System.out.flush();
+        for (String simulations : simulationCounts) {
+            Globals.plannerIterations = Integer.parseInt(simulations.trim());
+            for (String threads : threadCounts) {
+                int numThreads = Integer.parseInt(threads.trim());
+                Planner planner = (Globals.plannerIterations > 0) ? new Planner(numThreads) : null;
+
+                double pillsEaten = 0;
+                double reward = 0;
+                int lost = 0;
+                decisions = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < numGames; i++) {
+                    Environment game = mazes.newGame(files.get(i % files.size()));
+                    GameSession session = new GameSession(game, i);
+                    reward += play(session, planner, netList, maxSteps);
+                    pillsEaten += 100.0 * (game.totalPills - game.pillsLeft) / game.totalPills;
+                    lost += game.gameLost ? 1 : 0;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (planner != null) {
+                    planner.shutdown();
+                }
+
+                System.out.println(Globals.plannerIterations + "\t" + ((planner != null) ? numThreads : 0) + "\t" + numGames
+                        + "\t" + String.format("%.1f", pillsEaten / numGames) + "\t" + lost
+                        + "\t" + String.format("%.1f", reward / numGames)
+                        + "\t" + String.format("%.3f", 1000 * seconds / decisions));
+                System.out.flush();
+                // The networks alone are the same for any number of threads
+                if (planner == null) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // Plays a game as PacMan.playGame does, without training, and returns the total reward
+    private static double play(GameSession session, Planner planner, ArrayList<NeuralNetwork> netList, int maxSteps) {
+        Environment game = session.getGame();
+        short action = decide(session, planner, netList);
+        double reward = 0;
+        for (int step = 0; step < maxSteps && !game.gameEnded; step++) {
+            session.setNextAction(action);
+            reward += session.move(action);
+            if (!game.gameEnded) {
+                action = decide(session, planner, netList);
+            }
+            session.advance();
+        }
+        return reward;
+    }
+
+    private static short decide(GameSession session, Planner planner, ArrayList<NeuralNetwork> netList) {
+        decisions++;
+        if (planner != null) {
+            return planner.decide(session, netList);
+        }
+        Environment game = session.getGame();
+        double[] Qs = PacMan.getQValues(PacMan.getStateRep(session, false), netList);
+        short[] legal = game.getLegalMoves(game.getPacMan().getX1(), game.getPacMan().getY1());
+        short best = legal[0];
+        for (short action : legal) {
+            if (Qs[action] >= Qs[best]) {
+                best = action;
+            }
+        }
+        return best;
+    }
+}
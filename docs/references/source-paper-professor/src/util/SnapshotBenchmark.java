@@ -0,0 +1,215 @@
+/*
+ *  Ms. Pac-Man Framework
+ *
+ *  Created by Luuk Bom & Ruud Henken under supervision by Marco Wiering,
+ *  Department of Artificial Intelligence, University of Groningen.
+ *
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ *  SNAPSHOTBENCHMARK
+ *  This class checks and times the snapshots and forks of a game. Every game
+ *  is played with random actions for a while, after which a snapshot and a
+ *  fork are taken and the game is played on. The game is then restored to the
+ *  snapshot, which must give back the grid, the distance fields and the pill
+ *  counts as they were, and the same actions are played again, both in the
+ *  restored game and in the fork; all three must go the same way.
+ *  The time taken by a snapshot, a restore, a fork and a new game is reported.
+ *
+ *  Usage: SnapshotBenchmark [directory] [games] [steps before] [steps after]
+ *
+ */
+
+package util;
+
+import environment.Environment;
+import environment.EnvironmentSnapshot;
+import environment.MazeRepository;
+import global.Globals;
+import java.util.ArrayList;
+import pacman.Agent;
+import pacman.GameSession;
+import pacman.PacMan;
+
+public class SnapshotBenchmark {
+
+    private static final short[] GHOST_STATES = {Globals.GHOST_CHASE, Globals.GHOST_RANDOM, Globals.GHOST_SCATTER};
+
+    private static long snapshotTime = 0;
+    private static long restoreTime = 0;
+    private static long forkTime = 0;
+    private static long newGameTime = 0;
+
+    public static void main(String[] args) {
+        String dir = (args.length > 0) ? args[0] : "data/maze/";
+        int numGames = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        int before = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int after = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+
+        Globals.showVisualisation = false;
+
+        ArrayList<String> files = PacMan.readMazes(dir);
+        MazeRepository mazes = new MazeRepository();
+        for (String file : files) {
+            mazes.getMaze(file);
+        }
+
+        // Warm up, without counting the time or the failures
+        for (int i = 0; i < numGames; i++) {
+            check(mazes, files.get(i % files.size()), i, before, after);
+        }
+        snapshotTime = restoreTime = forkTime = newGameTime = 0;
+
+        int failures = 0;
+        for (int i = 0; i < numGames; i++) {
+            String failure = check(mazes, files.get(i % files.size()), i, before, after);
+            if (failure != null) {
+                System.out.println("Game " + i + " on " + files.get(i % files.size()) + ": " + failure);
+                failures++;
+            }
+        }
+
+        System.out.println("games\tsnapshot us\trestore us\tfork us\tnew game us\tfailures");
+        System.out.println(numGames + "\t" + String.format("%.1f", snapshotTime / 1e3 / numGames)
+                + "\t" + String.format("%.1f", restoreTime / 1e3 / numGames)
+                + "\t" + String.format("%.1f", forkTime / 1e3 / numGames)
+                + "\t" + String.format("%.1f", newGameTime / 1e3 / numGames) + "\t" + failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Plays a game, and returns what went wrong with its snapshot or fork, or null if nothing did
+    private static String check(MazeRepository mazes, String file, long seed, int before, int after) {
+        long start = System.nanoTime();
+        Environment game = mazes.newGame(file);
+        newGameTime += System.nanoTime() - start;
+        GameSession session = new GameSession(game, seed);
+        CopyableRandom policy = new CopyableRandom(seed);
+
+        int step = 0;
+        while (step < before && !game.gameEnded) {
+            play(session, policy, step++);
+        }
+
+        start = System.nanoTime();
+        EnvironmentSnapshot snapshot = game.snapshot();
+        snapshotTime += System.nanoTime() - start;
+        start = System.nanoTime();
+        Environment fork = game.fork();
+        forkTime += System.nanoTime() - start;
+        long atSnapshot = fingerprintAll(game);
+        int first = step;
+        CopyableRandom policyAtSnapshot = new CopyableRandom(policy);
+
+        long[] played = new long[after];
+        int steps = 0;
+        while (steps < after && !game.gameEnded) {
+            play(session, policy, first + steps);
+            played[steps++] = fingerprint(game);
+        }
+        long atEnd = fingerprintAll(game);
+
+        start = System.nanoTime();
+        game.restore(snapshot);
+        restoreTime += System.nanoTime() - start;
+        if (fingerprintAll(game) != atSnapshot) {
+            return "the restored game differs from the snapshot";
+        }
+
+        String failure = replay(session, new CopyableRandom(policyAtSnapshot), first, played, steps, atEnd);
+        if (failure != null) {
+            return "the restored game " + failure;
+        }
+        failure = replay(new GameSession(fork), new CopyableRandom(policyAtSnapshot), first, played, steps, atEnd);
+        if (failure != null) {
+            return "the fork " + failure;
+        }
+        return null;
+    }
+
+    private static String replay(GameSession session, CopyableRandom policy, int first, long[] played, int steps, long atEnd) {
+        Environment game = session.getGame();
+        for (int i = 0; i < steps; i++) {
+            play(session, policy, first + i);
+            if (fingerprint(game) != played[i]) {
+                return "went another way at step " + (first + i);
+            }
+        }
+        if (fingerprintAll(game) != atEnd) {
+            return "ended differently";
+        }
+        return null;
+    }
+
+    // Performs a random action. The ghost behaviour only depends on the step and the power pills,
+    // so that it is decided by the game, and not by the counters of the session.
+    private static void play(GameSession session, CopyableRandom policy, int step) {
+        Environment game = session.getGame();
+        game.globalGhostState = GHOST_STATES[(step / 20) % GHOST_STATES.length];
+        if (game.justPowerpill) {
+            game.justPowerpill = false;
+            for (Agent ghost : game.getGhosts()) {
+                ghost.state = Globals.GHOST_AFRAID;
+            }
+        }
+        short[] actions = game.getLegalMoves(game.getPacMan().getX1(), game.getPacMan().getY1());
+        session.move(actions[policy.nextInt(actions.length)]);
+    }
+
+    // Folds the agents and the pills left into a number
+    private static long fingerprint(Environment game) {
+        long fingerprint = game.pillsLeft;
+        fingerprint = 31 * fingerprint + game.powerPillsLeft;
+        fingerprint = 31 * fingerprint + (game.gameEnded ? 1 : 0) + (game.gameLost ? 2 : 0);
+        fingerprint = 31 * fingerprint + fingerprint(game.getPacMan());
+        for (Agent ghost : game.getGhosts()) {
+            fingerprint = 31 * fingerprint + fingerprint(ghost);
+        }
+        return fingerprint;
+    }
+
+    private static long fingerprint(Agent agent) {
+        long fingerprint = agent.getX1();
+        fingerprint = 31 * fingerprint + agent.getY1();
+        fingerprint = 31 * fingerprint + agent.getX2();
+        fingerprint = 31 * fingerprint + agent.getY2();
+        fingerprint = 31 * fingerprint + Double.doubleToLongBits(agent.getMovefloat());
+        fingerprint = 31 * fingerprint + agent.getDirection();
+        fingerprint = 31 * fingerprint + agent.getState();
+        fingerprint = 31 * fingerprint + Double.doubleToLongBits(agent.getWaitTime());
+        return fingerprint;
+    }
+
+    // Folds the agents, the grid, the distance fields and the pill counts into a number
+    private static long fingerprintAll(Environment game) {
+        long fingerprint = fingerprint(game);
+        for (int x = 0; x < game.mazeWidth; x++) {
+            for (int y = 0; y < game.mazeHeight; y++) {
+                fingerprint = 31 * fingerprint + game.maze[x][y];
+                fingerprint = 31 * fingerprint + game.pillField.getDistance(x, y);
+                if (game.powerPillField != null) {
+                    fingerprint = 31 * fingerprint + game.powerPillField.getDistance(x, y);
+                }
+                if (game.pillCounts != null && game.segments.getSegment(x, y) != -1) {
+                    fingerprint = 31 * fingerprint + game.pillCounts.getSegmentPills(game.segments.getSegment(x, y));
+                }
+            }
+        }
+        return fingerprint;
+    }
+}